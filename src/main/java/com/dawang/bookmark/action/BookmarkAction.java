@@ -1,5 +1,7 @@
 package com.dawang.bookmark.action;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.UUID;
 
 import org.jetbrains.annotations.NotNull;
@@ -7,18 +9,16 @@ import org.jetbrains.annotations.NotNull;
 import com.dawang.bookmark.model.BookmarkItem;
 import com.dawang.bookmark.service.BookmarkStateService;
 import com.dawang.bookmark.ui.BookmarkInputDialog;
-import com.dawang.bookmark.ui.BookmarkToolWindowFactory;
 import com.dawang.bookmark.util.BookmarkUtil;
 import com.intellij.openapi.actionSystem.AnAction;
 import com.intellij.openapi.actionSystem.AnActionEvent;
 import com.intellij.openapi.actionSystem.CommonDataKeys;
-import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.Task;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.Messages;
 import com.intellij.openapi.util.IconLoader;
 import com.intellij.openapi.vfs.VirtualFile;
-import com.intellij.openapi.wm.ToolWindow;
-import com.intellij.openapi.wm.ToolWindowManager;
 
 /**
  * 收藏操作 Action
@@ -38,9 +38,9 @@ public class BookmarkAction extends AnAction {
             return;
         }
 
-        // 1. 获取选中文本
-        String selectedText = BookmarkUtil.getSelectedText(e);
-        if (selectedText == null || selectedText.trim().isEmpty()) {
+        // 1. 获取选区（文档快照 + 范围），不复制选中的文本
+        BookmarkUtil.Selection selection = BookmarkUtil.getSelection(e);
+        if (selection == null) {
             Messages.showWarningDialog(
                     project,
                     "请先选中要收藏的内容",
@@ -61,8 +61,8 @@ public class BookmarkAction extends AnAction {
             return; // 标签为空
         }
 
-        // 3. 创建收藏项
-        BookmarkItem item = createBookmarkItem(selectedText, label.trim(), note, e);
+        // 3. 创建收藏项（正文稍后流式写入内容仓库，这里只填元数据和预览）
+        BookmarkItem item = createBookmarkItem(selection, label.trim(), note, e);
         if (item == null) {
             Messages.showErrorDialog(
                     project,
@@ -71,7 +71,6 @@ public class BookmarkAction extends AnAction {
             return;
         }
 
-        // 4. 保存到状态
         BookmarkStateService service = BookmarkStateService.getInstance();
         if (service == null) {
             Messages.showErrorDialog(
@@ -81,31 +80,67 @@ public class BookmarkAction extends AnAction {
             return;
         }
 
-        try {
-            service.addBookmark(item);
-        } catch (Exception ex) {
-            Messages.showErrorDialog(
-                    project,
-                    "保存收藏失败: " + ex.getMessage(),
-                    "错误");
-            return;
-        }
+        // 4. 后台分块写入正文，完成后保存到状态
+        // （所有打开的工具窗口通过 BookmarkListener.TOPIC 收到新增事件后增量更新）
+        new Task.Backgroundable(project, "正在保存收藏", true) {
+            private String contentRef;
+
+            @Override
+            public void run(@NotNull ProgressIndicator indicator) {
+                indicator.setIndeterminate(true);
+                indicator.setText("正在写入 " + selection.length() + " 个字符");
+                try {
+                    contentRef = service.storeContent(selection.text, selection.start, selection.end,
+                            indicator::isCanceled);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }
+
+            @Override
+            public void onSuccess() {
+                item.setContentRef(contentRef);
+                try {
+                    service.addBookmark(project, item);
+                } catch (Exception ex) {
+                    Messages.showErrorDialog(
+                            project,
+                            "保存收藏失败: " + ex.getMessage(),
+                            "错误");
+                    return;
+                } finally {
+                    // 收藏已登记自己的引用（或未能加入），释放写入时持有的临时引用
+                    service.releaseStoredContent(contentRef);
+                }
+                // 5. 显示自动关闭的成功提示
+                showAutoCloseNotification(project, "收藏成功！标签: " + label);
+            }
 
-        // 5. 刷新工具窗口（在 UI 线程中异步执行，确保数据已保存）
-        com.intellij.openapi.application.ApplicationManager.getApplication()
-                .invokeLater(() -> refreshToolWindow(project));
+            @Override
+            public void onCancel() {
+                service.releaseStoredContent(contentRef);
+            }
 
-        // 6. 显示自动关闭的成功提示
-        showAutoCloseNotification(project, "收藏成功！标签: " + label);
+            @Override
+            public void onThrowable(@NotNull Throwable error) {
+                service.releaseStoredContent(contentRef);
+                Throwable cause = error instanceof UncheckedIOException ? error.getCause() : error;
+                Messages.showErrorDialog(
+                        project,
+                        "保存收藏失败: " + cause.getMessage(),
+                        "错误");
+            }
+        }.queue();
     }
 
     /**
-     * 创建收藏项
+     * 创建收藏项：只计算元数据和预览，正文由调用方流式写入后设置 contentRef
      */
-    private BookmarkItem createBookmarkItem(String content, String label, String note, AnActionEvent e) {
+    private BookmarkItem createBookmarkItem(BookmarkUtil.Selection selection, String label, String note,
+            AnActionEvent e) {
         BookmarkItem item = new BookmarkItem();
         item.setId(UUID.randomUUID().toString());
-        item.setContent(content);
+        item.setPreview(BookmarkItem.buildPreview(selection.text, selection.start, selection.end));
         item.setLabel(label);
         item.setNote(note);
         item.setTimestamp(System.currentTimeMillis());
@@ -117,35 +152,20 @@ public class BookmarkAction extends AnAction {
             item.setSourceType("EDITOR");
 
             // 收集位置信息
-            Editor editor = e.getData(CommonDataKeys.EDITOR);
-            if (editor != null) {
-                int[] offsets = BookmarkUtil.getSelectionOffsets(e);
-                item.setStartOffset(offsets[0]);
-                item.setEndOffset(offsets[1]);
-            }
+            item.setStartOffset(selection.sourceStart);
+            item.setEndOffset(selection.sourceEnd);
         } else {
             item.setSourceType("CONSOLE");
+            item.setSourceName(BookmarkUtil.getConsoleName(e));
         }
 
         return item;
     }
 
-    /**
-     * 刷新工具窗口
-     */
-    private void refreshToolWindow(Project project) {
-        ToolWindowManager toolWindowManager = ToolWindowManager.getInstance(project);
-        ToolWindow toolWindow = toolWindowManager.getToolWindow(BookmarkToolWindowFactory.TOOL_WINDOW_ID);
-        if (toolWindow != null) {
-            // 通知工具窗口刷新
-            BookmarkToolWindowFactory.refreshToolWindow(project);
-        }
-    }
-
     /**
      * 显示自动关闭的通知
      */
-    private void showAutoCloseNotification(Project project, String message) {
+    static void showAutoCloseNotification(Project project, String message) {
         com.intellij.openapi.application.ApplicationManager.getApplication().invokeLater(() -> {
             try {
                 // 使用通知系统，会自动显示在右下角并自动消失
@@ -0,0 +1,145 @@
+package com.dawang.bookmark.action;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.UUID;
+
+import org.jetbrains.annotations.NotNull;
+
+import com.dawang.bookmark.console.ConsoleTailBuffer;
+import com.dawang.bookmark.console.ConsoleTailService;
+import com.dawang.bookmark.model.BookmarkItem;
+import com.dawang.bookmark.service.BookmarkStateService;
+import com.dawang.bookmark.ui.BookmarkInputDialog;
+import com.dawang.bookmark.util.BookmarkUtil;
+import com.intellij.execution.ui.RunContentDescriptor;
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.Task;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.InputValidator;
+import com.intellij.openapi.ui.Messages;
+
+/**
+ * 收藏控制台最后 N 行
+ * 从运行配置的环形缓冲区取出，不扫描控制台文档
+ */
+public class BookmarkConsoleTailAction extends AnAction {
+
+    private static final int DEFAULT_LINES = 200;
+
+    public BookmarkConsoleTailAction() {
+        super("收藏控制台最后 N 行", "收藏当前控制台最近输出的若干行", null);
+    }
+
+    @Override
+    public void actionPerformed(@NotNull AnActionEvent e) {
+        Project project = e.getProject();
+        if (project == null) {
+            return;
+        }
+        RunContentDescriptor descriptor = BookmarkUtil.getRunContent(e);
+        ConsoleTailBuffer buffer = ConsoleTailService.getInstance(project).findBuffer(descriptor);
+        if (buffer == null || buffer.lineCount() == 0) {
+            Messages.showWarningDialog(project, "当前控制台没有可收藏的输出", "收藏提示");
+            return;
+        }
+
+        // 1. 输入行数
+        int max = buffer.getCapacity();
+        String input = Messages.showInputDialog(project,
+                "收藏最后多少行（最多 " + max + " 行）:", "收藏控制台输出", Messages.getQuestionIcon(),
+                String.valueOf(Math.min(DEFAULT_LINES, max)), new InputValidator() {
+                    @Override
+                    public boolean checkInput(String s) {
+                        int n = parseLines(s);
+                        return n > 0 && n <= max;
+                    }
+
+                    @Override
+                    public boolean canClose(String s) {
+                        return checkInput(s);
+                    }
+                });
+        if (input == null) {
+            return; // 用户取消
+        }
+        // 在输入标签前取出，避免对话框打开期间的新输出混入
+        String text = buffer.tail(parseLines(input));
+
+        // 2. 标签和备注
+        BookmarkInputDialog dialog = new BookmarkInputDialog(project);
+        if (!dialog.showAndGet()) {
+            return;
+        }
+        String label = dialog.getLabel();
+        if (label == null || label.trim().isEmpty()) {
+            return;
+        }
+
+        // 3. 后台写入正文（同 BookmarkAction），完成后保存到状态
+        BookmarkItem item = new BookmarkItem();
+        item.setId(UUID.randomUUID().toString());
+        item.setPreview(BookmarkItem.buildPreview(text, 0, text.length()));
+        item.setLabel(label.trim());
+        item.setNote(dialog.getNote());
+        item.setTimestamp(System.currentTimeMillis());
+        item.setSourceType("CONSOLE");
+        item.setSourceName(descriptor != null ? descriptor.getDisplayName() : null);
+        BookmarkStateService service = BookmarkStateService.getInstance();
+        new Task.Backgroundable(project, "正在保存收藏", true) {
+            private String contentRef;
+
+            @Override
+            public void run(@NotNull ProgressIndicator indicator) {
+                indicator.setIndeterminate(true);
+                try {
+                    contentRef = service.storeContent(text, 0, text.length(), indicator::isCanceled);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }
+
+            @Override
+            public void onSuccess() {
+                item.setContentRef(contentRef);
+                try {
+                    service.addBookmark(project, item);
+                } catch (Exception ex) {
+                    Messages.showErrorDialog(project, "保存收藏失败: " + ex.getMessage(), "错误");
+                    return;
+                } finally {
+                    service.releaseStoredContent(contentRef);
+                }
+                BookmarkAction.showAutoCloseNotification(project, "收藏成功！标签: " + label);
+            }
+
+            @Override
+            public void onCancel() {
+                service.releaseStoredContent(contentRef);
+            }
+
+            @Override
+            public void onThrowable(@NotNull Throwable error) {
+                service.releaseStoredContent(contentRef);
+                Throwable cause = error instanceof UncheckedIOException ? error.getCause() : error;
+                Messages.showErrorDialog(project, "保存收藏失败: " + cause.getMessage(), "错误");
+            }
+        }.queue();
+    }
+
+    private static int parseLines(String s) {
+        try {
+            return s != null ? Integer.parseInt(s.trim()) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public void update(@NotNull AnActionEvent e) {
+        Project project = e.getProject();
+        e.getPresentation().setEnabled(project != null && BookmarkUtil.getRunContent(e) != null);
+    }
+}
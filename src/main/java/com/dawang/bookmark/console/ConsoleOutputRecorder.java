@@ -0,0 +1,27 @@
+package com.dawang.bookmark.console;
+
+import com.intellij.execution.ExecutionListener;
+import com.intellij.execution.process.ProcessHandler;
+import com.intellij.execution.runners.ExecutionEnvironment;
+import com.intellij.openapi.project.Project;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * 运行配置启动时开始记录其控制台输出（在 plugin.xml 中注册为项目级监听器）
+ * 在进程启动前挂上监听，不会漏掉最早的输出
+ */
+public class ConsoleOutputRecorder implements ExecutionListener {
+
+    private final Project project;
+
+    public ConsoleOutputRecorder(Project project) {
+        this.project = project;
+    }
+
+    @Override
+    public void processStarting(@NotNull String executorId, @NotNull ExecutionEnvironment env,
+            @NotNull ProcessHandler handler) {
+        String name = env.getRunProfile() != null ? env.getRunProfile().getName() : null;
+        ConsoleTailService.getInstance(project).attach(name != null ? name : "", handler);
+    }
+}
@@ -0,0 +1,127 @@
+package com.dawang.bookmark.console;
+
+/**
+ * 控制台输出的行环形缓冲区：只保留最近的若干行，行数和总字符数都有上限
+ * 追加是 O(文本长度)，取最后 N 行是 O(N)，与控制台累计输出多少行无关
+ * 超长的行只保留前 MAX_LINE_CHARS 个字符；已保存的行总字符数超过 MAX_CHARS 时丢弃最旧的行，
+ * 每个缓冲区占用的内存不超过约 2 × (MAX_CHARS + MAX_LINE_CHARS) 字节
+ * 进程输出线程写入、EDT 读取，方法均已同步
+ */
+public class ConsoleTailBuffer {
+
+    // 单行保留的最大字符数，可通过 -Dbookmark.console.line.chars 调整
+    public static final int MAX_LINE_CHARS = Integer.getInteger("bookmark.console.line.chars", 16 * 1024);
+    // 每个缓冲区保存的总字符数，可通过 -Dbookmark.console.tail.chars 调整
+    public static final int MAX_CHARS = Integer.getInteger("bookmark.console.tail.chars", 1024 * 1024);
+    private static final String TRUNCATED = " ...";
+
+    private final String[] lines;
+    private final long maxChars;
+    // 最旧一行的位置
+    private int head;
+    private int size;
+    // 已保存的行的总字符数
+    private long chars;
+    // 尚未遇到换行的当前行
+    private final StringBuilder partial = new StringBuilder();
+    private boolean partialTruncated;
+    private long totalLines;
+
+    public ConsoleTailBuffer(int capacity) {
+        this(capacity, MAX_CHARS);
+    }
+
+    public ConsoleTailBuffer(int capacity, long maxChars) {
+        this.lines = new String[Math.max(1, capacity)];
+        this.maxChars = maxChars;
+    }
+
+    public int getCapacity() {
+        return lines.length;
+    }
+
+    /**
+     * 追加一段输出，按 \n 切分行；\r 忽略
+     */
+    public synchronized void append(CharSequence text) {
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c == '\n') {
+                push(partialTruncated ? partial + TRUNCATED : partial.toString());
+                partial.setLength(0);
+                partialTruncated = false;
+            } else if (c != '\r') {
+                if (partial.length() < MAX_LINE_CHARS) {
+                    partial.append(c);
+                } else {
+                    partialTruncated = true;
+                }
+            }
+        }
+    }
+
+    private void push(String line) {
+        // 行数或字符数超出时丢弃最旧的行，至少保留刚写入的这一行
+        while (size > 0 && (size == lines.length || chars + line.length() > maxChars)) {
+            chars -= lines[head].length();
+            lines[head] = null;
+            head = (head + 1) % lines.length;
+            size--;
+        }
+        lines[(head + size) % lines.length] = line;
+        size++;
+        chars += line.length();
+        totalLines++;
+    }
+
+    /**
+     * 缓冲区中的行数（含未结束的当前行）
+     */
+    public synchronized int lineCount() {
+        return size + (partial.length() > 0 ? 1 : 0);
+    }
+
+    /**
+     * 自开始记录以来的总行数
+     */
+    public synchronized long totalLines() {
+        return totalLines;
+    }
+
+    /**
+     * 最后 n 行，以 \n 连接；未结束的当前行算作最后一行
+     */
+    public synchronized String tail(int n) {
+        boolean withPartial = partial.length() > 0;
+        int fromBuffer = Math.min(Math.max(n - (withPartial ? 1 : 0), 0), size);
+        StringBuilder sb = new StringBuilder();
+        for (int i = size - fromBuffer; i < size; i++) {
+            // 按行号判断分隔符，开头的空行不会被吞掉
+            if (i > size - fromBuffer) {
+                sb.append('\n');
+            }
+            sb.append(lines[(head + i) % lines.length]);
+        }
+        if (withPartial && n > 0) {
+            if (fromBuffer > 0) {
+                sb.append('\n');
+            }
+            sb.append(partial);
+            if (partialTruncated) {
+                sb.append(TRUNCATED);
+            }
+        }
+        return sb.toString();
+    }
+
+    public synchronized void clear() {
+        java.util.Arrays.fill(lines, null);
+        head = 0;
+        size = 0;
+        chars = 0;
+        partial.setLength(0);
+        partialTruncated = false;
+        totalLines = 0;
+    }
+}
@@ -0,0 +1,77 @@
+package com.dawang.bookmark.console;
+
+import com.intellij.execution.process.ProcessAdapter;
+import com.intellij.execution.process.ProcessEvent;
+import com.intellij.execution.process.ProcessHandler;
+import com.intellij.execution.ui.RunContentDescriptor;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Key;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 记录控制台最近输出（项目级）
+ * 每个进程一个固定容量的 ConsoleTailBuffer，挂在进程上，同一运行配置并行运行时互不干扰；
+ * 另按运行配置名记录最近一次运行的缓冲区，取不到进程时用于查找
+ * 每个缓冲区的行数和总字符数都有上限（默认约 2 MB），占用随进程结束、配置被挤出而回收
+ */
+public class ConsoleTailService {
+
+    // 每个运行配置保留的行数，可通过 -Dbookmark.console.tail.lines 调整
+    public static final int TAIL_LINES = Integer.getInteger("bookmark.console.tail.lines", 5000);
+    // 最多保留的运行配置数，超出时丢弃最久未运行的
+    private static final int MAX_CONFIGURATIONS = 20;
+
+    private static final Key<ConsoleTailBuffer> BUFFER_KEY = Key.create("bookmark.console.tail");
+
+    // 运行配置名 -> 最近一次运行的缓冲区，按最近运行排序
+    private final Map<String, ConsoleTailBuffer> buffers = new LinkedHashMap<String, ConsoleTailBuffer>(16, 0.75f,
+            true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ConsoleTailBuffer> eldest) {
+            return size() > MAX_CONFIGURATIONS;
+        }
+    };
+
+    public static ConsoleTailService getInstance(Project project) {
+        return project.getService(ConsoleTailService.class);
+    }
+
+    /**
+     * 开始记录一个进程的输出
+     */
+    public void attach(String configurationName, ProcessHandler handler) {
+        ConsoleTailBuffer buffer = new ConsoleTailBuffer(TAIL_LINES);
+        handler.putUserData(BUFFER_KEY, buffer);
+        synchronized (buffers) {
+            buffers.put(configurationName, buffer);
+        }
+        handler.addProcessListener(new ProcessAdapter() {
+            @Override
+            public void onTextAvailable(ProcessEvent event, Key outputType) {
+                String text = event.getText();
+                if (text != null) {
+                    buffer.append(text);
+                }
+            }
+        });
+    }
+
+    /**
+     * 运行内容对应的缓冲区；该进程未被记录时按运行配置名查找最近一次运行的
+     */
+    public ConsoleTailBuffer findBuffer(RunContentDescriptor descriptor) {
+        if (descriptor == null) {
+            return null;
+        }
+        ProcessHandler handler = descriptor.getProcessHandler();
+        ConsoleTailBuffer buffer = handler != null ? handler.getUserData(BUFFER_KEY) : null;
+        if (buffer == null && descriptor.getDisplayName() != null) {
+            synchronized (buffers) {
+                buffer = buffers.get(descriptor.getDisplayName());
+            }
+        }
+        return buffer;
+    }
+}
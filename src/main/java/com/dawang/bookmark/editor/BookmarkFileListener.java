@@ -0,0 +1,22 @@
+package com.dawang.bookmark.editor;
+
+import com.intellij.openapi.fileEditor.FileEditorManager;
+import com.intellij.openapi.fileEditor.FileEditorManagerListener;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * 文件打开和关闭时通知 BookmarkRangeTracker（在 plugin.xml 中注册为项目级监听器）
+ */
+public class BookmarkFileListener implements FileEditorManagerListener {
+
+    @Override
+    public void fileOpened(@NotNull FileEditorManager source, @NotNull VirtualFile file) {
+        BookmarkRangeTracker.getInstance().fileOpened(file);
+    }
+
+    @Override
+    public void fileClosed(@NotNull FileEditorManager source, @NotNull VirtualFile file) {
+        BookmarkRangeTracker.getInstance().fileClosed(file);
+    }
+}
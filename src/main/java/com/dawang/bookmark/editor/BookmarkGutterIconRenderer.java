@@ -0,0 +1,57 @@
+package com.dawang.bookmark.editor;
+
+import com.dawang.bookmark.model.BookmarkItem;
+import com.dawang.bookmark.service.BookmarkStateService;
+import com.intellij.openapi.project.DumbAware;
+import com.intellij.openapi.util.IconLoader;
+import com.intellij.openapi.util.text.StringUtil;
+import org.jetbrains.annotations.NotNull;
+
+import javax.swing.Icon;
+import java.util.Objects;
+
+/**
+ * 收藏在行号栏的图标
+ * 只持有收藏 ID，悬停时才查出标签和备注，修改标签后不需要更新图标
+ */
+class BookmarkGutterIconRenderer extends com.intellij.openapi.editor.markup.GutterIconRenderer implements DumbAware {
+
+    private static final Icon ICON = IconLoader.getIcon("/icons/bookmark.svg", BookmarkGutterIconRenderer.class);
+
+    private final String bookmarkId;
+
+    BookmarkGutterIconRenderer(@NotNull String bookmarkId) {
+        this.bookmarkId = bookmarkId;
+    }
+
+    @Override
+    public @NotNull Icon getIcon() {
+        return ICON;
+    }
+
+    @Override
+    public String getTooltipText() {
+        BookmarkItem item = BookmarkStateService.getInstance().findBookmark(bookmarkId);
+        if (item == null) {
+            return null;
+        }
+        StringBuilder tooltip = new StringBuilder("<html>收藏");
+        if (item.getLabel() != null) {
+            tooltip.append(": ").append(StringUtil.escapeXmlEntities(item.getLabel()));
+        }
+        if (!StringUtil.isEmpty(item.getNote())) {
+            tooltip.append("<br>").append(StringUtil.escapeXmlEntities(item.getNote()).replace("\n", "<br>"));
+        }
+        return tooltip.append("</html>").toString();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof BookmarkGutterIconRenderer && ((BookmarkGutterIconRenderer) o).bookmarkId.equals(bookmarkId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(bookmarkId);
+    }
+}
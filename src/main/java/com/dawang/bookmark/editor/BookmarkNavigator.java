@@ -0,0 +1,128 @@
+package com.dawang.bookmark.editor;
+
+import com.dawang.bookmark.model.BookmarkItem;
+import com.dawang.bookmark.service.BookmarkStateService;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.editor.RangeMarker;
+import com.intellij.openapi.editor.ScrollType;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.fileEditor.FileEditorManager;
+import com.intellij.openapi.fileEditor.OpenFileDescriptor;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.progress.Task;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.Messages;
+import com.intellij.openapi.util.Computable;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collections;
+
+/**
+ * 跳转到收藏的源位置
+ * 先用文件中实时跟踪的位置（没有时用保存的位置）并核对文本，不一致时由 SourceLocator 在当前文件中重新查找；
+ * 查找在后台任务中进行，读操作里只取文档的不可变快照，大文件既不阻塞 EDT 也不长时间占用读锁
+ */
+public final class BookmarkNavigator {
+
+    private static final String TITLE = "跳转到源位置";
+
+    private BookmarkNavigator() {
+    }
+
+    /**
+     * 收藏是否来自文件（控制台收藏没有源文件）
+     */
+    public static boolean canNavigate(BookmarkItem item) {
+        return item != null && item.getFilePath() != null;
+    }
+
+    /**
+     * 在 EDT 调用
+     */
+    public static void navigate(@NotNull Project project, @NotNull BookmarkItem item) {
+        if (!canNavigate(item)) {
+            return;
+        }
+        VirtualFile file = LocalFileSystem.getInstance().refreshAndFindFileByPath(item.getFilePath());
+        if (file == null || !file.isValid()) {
+            Messages.showErrorDialog(project, "源文件不存在: " + item.getFilePath(), TITLE);
+            return;
+        }
+        RangeMarker marker = BookmarkRangeTracker.getInstance().getRangeMarker(item);
+        int hintStart = marker != null ? marker.getStartOffset() : item.getStartOffset();
+        int hintEnd = marker != null ? marker.getEndOffset() : item.getEndOffset();
+        ProgressManager.getInstance().run(new Task.Backgroundable(project, "定位收藏源位置", true) {
+            private SourceLocator.Location location;
+
+            @Override
+            public void run(@NotNull ProgressIndicator indicator) {
+                String snippet = BookmarkStateService.getInstance().readContent(item);
+                CharSequence text = ApplicationManager.getApplication().runReadAction((Computable<CharSequence>) () -> {
+                    Document document = file.isValid() ? FileDocumentManager.getInstance().getDocument(file) : null;
+                    return document != null ? document.getImmutableCharSequence() : null;
+                });
+                if (snippet != null && text != null) {
+                    location = SourceLocator.locate(text, snippet, hintStart, hintEnd);
+                }
+            }
+
+            @Override
+            public void onSuccess() {
+                open(project, file, item, location);
+            }
+
+            @Override
+            public void onThrowable(@NotNull Throwable error) {
+                Messages.showErrorDialog(project, "定位源位置失败: " + error.getMessage(), TITLE);
+            }
+        });
+    }
+
+    private static void open(Project project, VirtualFile file, BookmarkItem item, SourceLocator.Location location) {
+        if (project.isDisposed() || !file.isValid()) {
+            return;
+        }
+        Document document = FileDocumentManager.getInstance().getDocument(file);
+        int length = document != null ? document.getTextLength() : 0;
+        // 查找之后文档可能又被编辑过
+        int start = Math.min(length, Math.max(0, location != null ? location.range.getStartOffset() : item.getStartOffset()));
+        int end = Math.min(length, Math.max(start, location != null ? location.range.getEndOffset() : start));
+        Editor editor = FileEditorManager.getInstance(project)
+                .openTextEditor(new OpenFileDescriptor(project, file, start), true);
+        if (editor != null && end > start) {
+            editor.getSelectionModel().setSelection(start, end);
+            editor.getScrollingModel().scrollToCaret(ScrollType.CENTER);
+        }
+        if (location == null) {
+            notify(project, "文件中已找不到收藏的内容，已打开文件");
+            return;
+        }
+        switch (location.kind) {
+            case EXACT:
+            case WHITESPACE:
+                // 找到的位置写回收藏，行号栏图标也移过去
+                BookmarkStateService.getInstance().updateOffsets(Collections.singletonMap(item, location.range));
+                BookmarkRangeTracker.getInstance().relocated(item);
+                break;
+            case LINE:
+                notify(project, "收藏的内容已被修改，已定位到最接近的位置");
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static void notify(Project project, String message) {
+        com.intellij.notification.NotificationGroup group = com.intellij.notification.NotificationGroupManager
+                .getInstance()
+                .getNotificationGroup("BookmarkPlugin");
+        if (group != null) {
+            group.createNotification(message, com.intellij.notification.NotificationType.WARNING).notify(project);
+        }
+    }
+}
@@ -0,0 +1,285 @@
+package com.dawang.bookmark.editor;
+
+import com.dawang.bookmark.model.BookmarkItem;
+import com.dawang.bookmark.service.BookmarkEvent;
+import com.dawang.bookmark.service.BookmarkListener;
+import com.dawang.bookmark.service.BookmarkStateService;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.EditorFactory;
+import com.intellij.openapi.editor.RangeMarker;
+import com.intellij.openapi.editor.event.DocumentEvent;
+import com.intellij.openapi.editor.event.DocumentListener;
+import com.intellij.openapi.editor.impl.DocumentMarkupModel;
+import com.intellij.openapi.editor.markup.HighlighterLayer;
+import com.intellij.openapi.editor.markup.HighlighterTargetArea;
+import com.intellij.openapi.editor.markup.RangeHighlighter;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.fileEditor.FileEditorManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.project.ProjectManager;
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.Alarm;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 跟踪已打开文件中收藏的位置
+ * 文件打开时按文件路径索引为其中的收藏创建 RangeHighlighter（行号栏显示收藏图标），编辑时由平台移动；
+ * 只处理这个文件的收藏，不扫描全部收藏。按键时只给文档打一个标记，位置变化在延迟后成批写回收藏，
+ * 文件关闭时写回并移除 RangeHighlighter
+ * 所有方法只在 EDT 上调用
+ */
+public class BookmarkRangeTracker implements BookmarkListener, DocumentListener, Disposable {
+
+    // 位置变化写回的延迟，可通过 -Dbookmark.offsets.flush.ms 调整
+    private static final int FLUSH_DELAY_MS = Integer.getInteger("bookmark.offsets.flush.ms", 1000);
+
+    private static final Key<TrackedDocument> TRACKED = Key.create("bookmark.tracked.document");
+
+    private final Set<TrackedDocument> tracked = new LinkedHashSet<>();
+    // 有尚未写回的编辑的文档
+    private final List<TrackedDocument> dirty = new ArrayList<>();
+    private final Alarm flushAlarm = new Alarm(Alarm.ThreadToUse.SWING_THREAD, this);
+
+    /**
+     * 一个已跟踪文档中的收藏（收藏 ID -> RangeMarker）
+     */
+    static class TrackedDocument {
+        final VirtualFile file;
+        final Document document;
+        final Map<String, RangeMarker> markers = new HashMap<>();
+        boolean dirty;
+
+        TrackedDocument(VirtualFile file, Document document) {
+            this.file = file;
+            this.document = document;
+        }
+    }
+
+    public BookmarkRangeTracker() {
+        ApplicationManager.getApplication().getMessageBus().connect(this)
+                .subscribe(BookmarkListener.TOPIC, this);
+        EditorFactory.getInstance().getEventMulticaster().addDocumentListener(this, this);
+    }
+
+    public static BookmarkRangeTracker getInstance() {
+        return ApplicationManager.getApplication().getService(BookmarkRangeTracker.class);
+    }
+
+    /**
+     * 文件在编辑器中打开：为其中的收藏创建 RangeHighlighter 并显示行号栏图标
+     */
+    public void fileOpened(VirtualFile file) {
+        if (!file.isValid()) {
+            return;
+        }
+        Document document = FileDocumentManager.getInstance().getDocument(file);
+        if (document == null || document.getUserData(TRACKED) != null) {
+            return;
+        }
+        for (BookmarkItem item : BookmarkStateService.getInstance().getBookmarksInFile(file.getPath())) {
+            track(file, document, item);
+        }
+    }
+
+    /**
+     * 文件在某个编辑器中关闭：没有项目再打开它时写回位置并移除 RangeHighlighter
+     */
+    public void fileClosed(VirtualFile file) {
+        Document document = FileDocumentManager.getInstance().getCachedDocument(file);
+        TrackedDocument trackedDocument = document != null ? document.getUserData(TRACKED) : null;
+        if (trackedDocument == null || isOpenInAnyProject(file)) {
+            return;
+        }
+        Map<BookmarkItem, RangeMarker> changed = new LinkedHashMap<>();
+        collectChanges(trackedDocument, changed);
+        BookmarkStateService.getInstance().updateOffsets(changed);
+        untrack(trackedDocument);
+    }
+
+    /**
+     * 收藏当前在文档中的位置；文件未打开或位置已失效时返回 null
+     */
+    public RangeMarker getRangeMarker(BookmarkItem item) {
+        if (item.getFilePath() == null) {
+            return null;
+        }
+        VirtualFile file = LocalFileSystem.getInstance().findFileByPath(item.getFilePath());
+        Document document = file != null ? FileDocumentManager.getInstance().getCachedDocument(file) : null;
+        TrackedDocument trackedDocument = document != null ? document.getUserData(TRACKED) : null;
+        RangeMarker marker = trackedDocument != null ? trackedDocument.markers.get(item.getId()) : null;
+        return marker != null && marker.isValid() ? marker : null;
+    }
+
+    /**
+     * 收藏的位置被重新定位后，在打开的文件中按新位置重新跟踪
+     */
+    public void relocated(BookmarkItem item) {
+        bookmarkAdded(item);
+    }
+
+    private static boolean isOpenInAnyProject(VirtualFile file) {
+        for (Project project : ProjectManager.getInstance().getOpenProjects()) {
+            if (!project.isDisposed() && FileEditorManager.getInstance(project).isFileOpen(file)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void track(VirtualFile file, Document document, BookmarkItem item) {
+        int start = item.getStartOffset();
+        int end = item.getEndOffset();
+        // 控制台收藏或位置已超出当前文档（文件在 IDE 外被修改）时不跟踪
+        if (item.getId() == null || start < 0 || end < start || end > document.getTextLength()
+                || (start == 0 && end == 0)) {
+            return;
+        }
+        TrackedDocument trackedDocument = document.getUserData(TRACKED);
+        if (trackedDocument == null) {
+            trackedDocument = new TrackedDocument(file, document);
+            document.putUserData(TRACKED, trackedDocument);
+            tracked.add(trackedDocument);
+        }
+        // 文档级标记模型（不属于任何项目），打开这个文档的所有编辑器都显示
+        RangeHighlighter highlighter = DocumentMarkupModel.forDocument(document, null, true).addRangeHighlighter(
+                start, end, HighlighterLayer.ADDITIONAL_SYNTAX, null, HighlighterTargetArea.LINES_IN_RANGE);
+        highlighter.setGutterIconRenderer(new BookmarkGutterIconRenderer(item.getId()));
+        RangeMarker previous = trackedDocument.markers.put(item.getId(), highlighter);
+        if (previous != null) {
+            previous.dispose();
+        }
+    }
+
+    private void untrack(TrackedDocument trackedDocument) {
+        for (RangeMarker marker : trackedDocument.markers.values()) {
+            marker.dispose();
+        }
+        trackedDocument.markers.clear();
+        trackedDocument.document.putUserData(TRACKED, null);
+        tracked.remove(trackedDocument);
+        dirty.remove(trackedDocument);
+    }
+
+    /**
+     * 每次按键都会调用：只在文档第一次变脏时记录并安排写回，不分配对象
+     */
+    @Override
+    public void documentChanged(@NotNull DocumentEvent event) {
+        TrackedDocument trackedDocument = event.getDocument().getUserData(TRACKED);
+        if (trackedDocument == null || trackedDocument.dirty) {
+            return;
+        }
+        trackedDocument.dirty = true;
+        dirty.add(trackedDocument);
+        if (dirty.size() == 1) {
+            flushAlarm.addRequest(this::flush, FLUSH_DELAY_MS);
+        }
+    }
+
+    /**
+     * 把变脏文档中位置有变化的收藏一次性写回
+     */
+    private void flush() {
+        Map<BookmarkItem, RangeMarker> changed = new LinkedHashMap<>();
+        for (TrackedDocument trackedDocument : dirty) {
+            collectChanges(trackedDocument, changed);
+        }
+        dirty.clear();
+        BookmarkStateService.getInstance().updateOffsets(changed);
+    }
+
+    private static void collectChanges(TrackedDocument trackedDocument, Map<BookmarkItem, RangeMarker> changed) {
+        trackedDocument.dirty = false;
+        BookmarkStateService service = BookmarkStateService.getInstance();
+        trackedDocument.markers.entrySet().removeIf(entry -> {
+            RangeMarker marker = entry.getValue();
+            BookmarkItem item = service.findBookmark(entry.getKey());
+            // 收藏的文本被整体删除后 RangeMarker 失效，保留最后写回的位置
+            if (item == null || !marker.isValid()) {
+                marker.dispose();
+                return true;
+            }
+            if (marker.getStartOffset() != item.getStartOffset() || marker.getEndOffset() != item.getEndOffset()) {
+                changed.put(item, marker);
+            }
+            return false;
+        });
+    }
+
+    @Override
+    public void bookmarksChanged(@NotNull List<BookmarkEvent> events) {
+        for (BookmarkEvent event : events) {
+            switch (event.getType()) {
+                case ADDED:
+                    bookmarkAdded(event.getItem());
+                    break;
+                case REMOVED:
+                    bookmarkRemoved(event.getItem());
+                    break;
+                case CLEARED:
+                    retrackAll();
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * 新收藏（或新加载分片中的收藏）所在文件已打开时立即跟踪
+     */
+    private void bookmarkAdded(BookmarkItem item) {
+        if (item.getFilePath() == null) {
+            return;
+        }
+        VirtualFile file = LocalFileSystem.getInstance().findFileByPath(item.getFilePath());
+        Document document = file != null ? FileDocumentManager.getInstance().getCachedDocument(file) : null;
+        if (document != null && (document.getUserData(TRACKED) != null || isOpenInAnyProject(file))) {
+            track(file, document, item);
+        }
+    }
+
+    private void bookmarkRemoved(BookmarkItem item) {
+        for (TrackedDocument trackedDocument : tracked) {
+            RangeMarker marker = trackedDocument.markers.remove(item.getId());
+            if (marker != null) {
+                marker.dispose();
+                break;
+            }
+        }
+    }
+
+    /**
+     * 状态被整体替换：按新状态重新跟踪已打开的文件
+     */
+    private void retrackAll() {
+        List<TrackedDocument> documents = new ArrayList<>(tracked);
+        for (TrackedDocument trackedDocument : documents) {
+            untrack(trackedDocument);
+        }
+        for (TrackedDocument trackedDocument : documents) {
+            fileOpened(trackedDocument.file);
+        }
+    }
+
+    @Override
+    public void dispose() {
+        // 先于 BookmarkStateService 释放，写回的位置由它关闭时保存
+        flush();
+        for (TrackedDocument trackedDocument : new ArrayList<>(tracked)) {
+            untrack(trackedDocument);
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package com.dawang.bookmark.editor;
+
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.util.TextRange;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 在文件当前文本中找回收藏的内容
+ * 依次尝试：保存的位置、整段精确匹配、忽略空白匹配、按片段中最长的几行定位。
+ * 查找用 Rabin–Karp 滚动哈希，对文件只扫描一遍，哈希相同时再逐字比较；有多处匹配时取离原位置最近的
+ */
+final class SourceLocator {
+
+    // 哈希按 2^64 取模（long 自然溢出），碰撞由逐字比较排除
+    private static final long BASE = 1_000_003L;
+    // 按行定位时只用足够长的行，太短的行（如 "}"）到处都能匹配
+    private static final int MIN_ANCHOR_LENGTH = 8;
+    private static final int MAX_ANCHORS = 3;
+    // 每扫描这么多字符检查一次任务是否被取消
+    private static final int CANCEL_CHECK_MASK = 0xFFFF;
+
+    enum Kind {
+        /** 保存的位置上仍是收藏的内容 */
+        STORED,
+        /** 在其他位置找到完全相同的内容 */
+        EXACT,
+        /** 只有空白（缩进、换行）不同 */
+        WHITESPACE,
+        /** 内容已修改，按其中的一行定位到大致位置 */
+        LINE
+    }
+
+    static final class Location {
+        final Kind kind;
+        final TextRange range;
+
+        Location(Kind kind, int start, int end) {
+            this.kind = kind;
+            this.range = new TextRange(start, end);
+        }
+    }
+
+    private SourceLocator() {
+    }
+
+    /**
+     * 查找收藏内容的位置，找不到时返回 null
+     *
+     * @param text      文件的当前文本（不可变快照）
+     * @param snippet   收藏的内容
+     * @param hintStart 保存的起始位置，也用于在多处匹配中选最近的
+     * @param hintEnd   保存的结束位置
+     */
+    static Location locate(CharSequence text, String snippet, int hintStart, int hintEnd) {
+        int length = snippet.length();
+        if (length == 0) {
+            return null;
+        }
+        if (hintStart >= 0 && hintEnd - hintStart == length && hintEnd <= text.length()
+                && regionMatches(text, hintStart, snippet)) {
+            return new Location(Kind.STORED, hintStart, hintEnd);
+        }
+        int hint = Math.max(0, hintStart);
+        int start = findNearest(text, snippet, hint);
+        if (start >= 0) {
+            return new Location(Kind.EXACT, start, start + length);
+        }
+        Location location = findIgnoringWhitespace(text, snippet, hint);
+        return location != null ? location : findByLine(text, snippet, hint);
+    }
+
+    /**
+     * 整段精确查找，返回离 hint 最近的匹配起点，没有时返回 -1
+     */
+    static int findNearest(CharSequence text, CharSequence pattern, int hint) {
+        int m = pattern.length();
+        int n = text.length();
+        if (m == 0 || m > n) {
+            return -1;
+        }
+        long power = 1;
+        long target = 0;
+        long hash = 0;
+        for (int i = 0; i < m; i++) {
+            if (i > 0) {
+                power *= BASE;
+            }
+            target = target * BASE + pattern.charAt(i);
+            hash = hash * BASE + text.charAt(i);
+        }
+        int best = -1;
+        for (int i = 0; ; i++) {
+            if (hash == target && regionMatches(text, i, pattern)) {
+                if (best < 0 || i - hint < hint - best) {
+                    best = i;
+                }
+                // 之后的匹配只会离得更远
+                if (i >= hint) {
+                    break;
+                }
+            }
+            if (i + m >= n) {
+                break;
+            }
+            if ((i & CANCEL_CHECK_MASK) == 0) {
+                ProgressManager.checkCanceled();
+            }
+            hash = (hash - text.charAt(i) * power) * BASE + text.charAt(i + m);
+        }
+        return best;
+    }
+
+    /**
+     * 忽略空白查找：只对非空白字符计算滚动哈希，环形数组记录窗口内各字符在原文中的位置，
+     * 额外内存只与片段长度有关
+     */
+    private static Location findIgnoringWhitespace(CharSequence text, String snippet, int hint) {
+        StringBuilder compact = new StringBuilder(snippet.length());
+        for (int i = 0; i < snippet.length(); i++) {
+            char c = snippet.charAt(i);
+            if (!Character.isWhitespace(c)) {
+                compact.append(c);
+            }
+        }
+        int m = compact.length();
+        if (m < MIN_ANCHOR_LENGTH) {
+            return null;
+        }
+        long power = 1;
+        long target = 0;
+        for (int i = 0; i < m; i++) {
+            if (i > 0) {
+                power *= BASE;
+            }
+            target = target * BASE + compact.charAt(i);
+        }
+        int[] positions = new int[m];
+        long count = 0;
+        long hash = 0;
+        int bestStart = -1;
+        int bestEnd = -1;
+        for (int i = 0; i < text.length(); i++) {
+            if ((i & CANCEL_CHECK_MASK) == 0) {
+                ProgressManager.checkCanceled();
+            }
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                continue;
+            }
+            // 窗口已满时，即将被覆盖的槽位是最早的字符
+            int slot = (int) (count % m);
+            if (count >= m) {
+                hash -= text.charAt(positions[slot]) * power;
+            }
+            hash = hash * BASE + c;
+            positions[slot] = i;
+            count++;
+            if (count < m || hash != target) {
+                continue;
+            }
+            int start = positions[(int) (count % m)];
+            if (matchesIgnoringWhitespace(text, start, i + 1, compact)) {
+                if (bestStart < 0 || start - hint < hint - bestStart) {
+                    bestStart = start;
+                    bestEnd = i + 1;
+                }
+                if (start >= hint) {
+                    break;
+                }
+            }
+        }
+        return bestStart >= 0 ? new Location(Kind.WHITESPACE, bestStart, bestEnd) : null;
+    }
+
+    /**
+     * 内容被修改过：取片段中最长的几行逐一精确查找，找到后按该行在片段中的位置推算整段的范围
+     */
+    private static Location findByLine(CharSequence text, String snippet, int hint) {
+        List<int[]> lines = new ArrayList<>();
+        int lineStart = 0;
+        while (lineStart <= snippet.length()) {
+            int lineEnd = snippet.indexOf('\n', lineStart);
+            if (lineEnd < 0) {
+                lineEnd = snippet.length();
+            }
+            int start = lineStart;
+            int end = lineEnd;
+            while (start < end && Character.isWhitespace(snippet.charAt(start))) {
+                start++;
+            }
+            while (end > start && Character.isWhitespace(snippet.charAt(end - 1))) {
+                end--;
+            }
+            if (end - start >= MIN_ANCHOR_LENGTH) {
+                lines.add(new int[]{start, end});
+            }
+            lineStart = lineEnd + 1;
+        }
+        lines.sort((a, b) -> (b[1] - b[0]) - (a[1] - a[0]));
+        for (int i = 0; i < Math.min(MAX_ANCHORS, lines.size()); i++) {
+            int[] line = lines.get(i);
+            int position = findNearest(text, snippet.subSequence(line[0], line[1]), hint + line[0]);
+            if (position >= 0) {
+                int start = Math.max(0, position - line[0]);
+                return new Location(Kind.LINE, start, Math.min(text.length(), start + snippet.length()));
+            }
+        }
+        return null;
+    }
+
+    private static boolean regionMatches(CharSequence text, int offset, CharSequence pattern) {
+        for (int i = 0; i < pattern.length(); i++) {
+            if (text.charAt(offset + i) != pattern.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean matchesIgnoringWhitespace(CharSequence text, int start, int end, CharSequence compact) {
+        int j = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                continue;
+            }
+            if (j >= compact.length() || compact.charAt(j++) != c) {
+                return false;
+            }
+        }
+        return j == compact.length();
+    }
+}
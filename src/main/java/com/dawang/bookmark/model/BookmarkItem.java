@@ -1,7 +1,13 @@
 package com.dawang.bookmark.model;
 
 import java.io.Serializable;
+import java.lang.ref.SoftReference;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import com.intellij.util.xmlb.annotations.OptionTag;
+import com.intellij.util.xmlb.annotations.Transient;
 
 /**
  * 收藏项数据模型
@@ -10,7 +16,9 @@ public class BookmarkItem implements Serializable {
     private static final long serialVersionUID = 1L;
 
     private String id; // 唯一标识
-    private String content; // 收藏的内容
+    private String content; // 尚未写入内容仓库的正文（内联保存）
+    private String contentRef; // 内容仓库中的引用（内容哈希）
+    private String preview; // 内容预览，列表展示时无需加载（解压）正文
     private String label; // 标签
     private String note; // 备注
     private long timestamp; // 收藏时间戳
@@ -18,11 +26,32 @@ public class BookmarkItem implements Serializable {
     private int startOffset; // 起始位置（可选）
     private int endOffset; // 结束位置（可选）
     private String sourceType; // 来源类型：EDITOR, CONSOLE
+    private String sourceName; // 来源名称：控制台对应的运行配置名（可选）
+
+    // 根据 contentRef 加载正文，由 BookmarkStateService 设置
+    private static volatile Function<String, String> contentLoader;
+    // 已写入内容仓库的正文按需加载后的缓存，内存紧张时可被回收，回收后再次访问重新加载
+    private transient volatile SoftReference<String> loadedContent;
+    // 全局递增的修改戳，不同实例之间也不会重复
+    private static final AtomicLong STAMPS = new AtomicLong();
+    private transient volatile long modificationStamp = STAMPS.incrementAndGet();
 
     public BookmarkItem() {
         this.timestamp = System.currentTimeMillis();
     }
 
+    /**
+     * 修改戳，展示相关的字段变化时更新，用于界面缓存失效判断
+     */
+    @Transient
+    public long getModificationStamp() {
+        return modificationStamp;
+    }
+
+    private void touch() {
+        modificationStamp = STAMPS.incrementAndGet();
+    }
+
     public String getId() {
         return id;
     }
@@ -31,20 +60,105 @@ public class BookmarkItem implements Serializable {
         this.id = id;
     }
 
+    /**
+     * 获取正文，正文已写入内容仓库时按需加载（可能读盘，不要在 EDT 上对未加载的正文调用）
+     */
+    @Transient
     public String getContent() {
-        return content;
+        if (content != null || contentRef == null) {
+            return content;
+        }
+        String cached = getLoadedContent();
+        Function<String, String> loader = contentLoader;
+        if (cached == null && loader != null) {
+            cached = loader.apply(contentRef);
+            if (cached != null) {
+                loadedContent = new SoftReference<>(cached);
+            }
+        }
+        return cached;
+    }
+
+    /**
+     * 正文是否已在堆上（内联或已加载且未被回收，不触发加载）
+     */
+    @Transient
+    public boolean isContentLoaded() {
+        return content != null || getLoadedContent() != null;
+    }
+
+    private String getLoadedContent() {
+        SoftReference<String> ref = loadedContent;
+        return ref != null ? ref.get() : null;
     }
 
+    /**
+     * 设置正文，原有的内容仓库引用随之失效
+     */
     public void setContent(String content) {
         this.content = content;
+        this.contentRef = null;
+        this.loadedContent = null;
+        this.preview = content != null ? buildPreview(content) : null;
+        touch();
+    }
+
+    /**
+     * 持久化用：正文未写入内容仓库时才内联保存到 XML
+     * 标签名沿用旧版本的 content，旧数据加载后由服务迁移到内容仓库
+     */
+    @OptionTag("content")
+    public String getInlineContent() {
+        return contentRef == null ? content : null;
+    }
+
+    public void setInlineContent(String content) {
+        this.content = content;
+        touch();
+    }
+
+    public String getContentRef() {
+        return contentRef;
+    }
+
+    /**
+     * 设置内容仓库引用；已有的内联正文视为已写入仓库，改为可回收的缓存
+     */
+    public void setContentRef(String contentRef) {
+        if (contentRef != null && content != null) {
+            loadedContent = new SoftReference<>(content);
+            content = null;
+        } else if (!Objects.equals(this.contentRef, contentRef)) {
+            loadedContent = null;
+        }
+        this.contentRef = contentRef;
+    }
+
+    /**
+     * 正文是否仍保存在 XML 中
+     */
+    @Transient
+    public boolean isContentInline() {
+        return contentRef == null && content != null;
+    }
+
+    /**
+     * 设置正文加载器
+     */
+    public static void setContentLoader(Function<String, String> loader) {
+        contentLoader = loader;
     }
 
     public String getLabel() {
         return label;
     }
 
+    /**
+     * 已加入 BookmarkState 的收藏请用 BookmarkState.relabel 修改，否则标签索引不会更新
+     */
     public void setLabel(String label) {
         this.label = label;
+        touch();
     }
 
     public String getNote() {
@@ -53,6 +167,7 @@ public class BookmarkItem implements Serializable {
 
     public void setNote(String note) {
         this.note = note;
+        touch();
     }
 
     public long getTimestamp() {
@@ -61,12 +176,16 @@ public class BookmarkItem implements Serializable {
 
     public void setTimestamp(long timestamp) {
         this.timestamp = timestamp;
+        touch();
     }
 
     public String getFilePath() {
         return filePath;
     }
 
+    /**
+     * 已加入 BookmarkState 的收藏请用 BookmarkState.moveToFile 修改，否则文件路径索引不会更新
+     */
     public void setFilePath(String filePath) {
         this.filePath = filePath;
     }
@@ -95,19 +214,57 @@ public class BookmarkItem implements Serializable {
         this.sourceType = sourceType;
     }
 
+    public String getSourceName() {
+        return sourceName;
+    }
+
+    public void setSourceName(String sourceName) {
+        this.sourceName = sourceName;
+    }
+
+    public String getPreview() {
+        return preview;
+    }
+
+    public void setPreview(String preview) {
+        this.preview = preview;
+        touch();
+    }
+
     /**
      * 获取内容预览（前50个字符）
+     * 优先使用保存的预览，旧数据没有预览时加载一次正文并补上
      */
+    @Transient
     public String getContentPreview() {
+        if (preview != null) {
+            return preview;
+        }
+        String content = getContent();
         if (content == null) {
             return "";
         }
+        preview = buildPreview(content);
+        return preview;
+    }
+
+    private static String buildPreview(String content) {
         if (content.length() <= 50) {
             return content;
         }
         return content.substring(0, 50) + "...";
     }
 
+    /**
+     * 按 text 的 [start, end) 部分生成预览，只复制前 50 个字符
+     */
+    public static String buildPreview(CharSequence text, int start, int end) {
+        if (end - start <= 50) {
+            return text.subSequence(start, end).toString();
+        }
+        return text.subSequence(start, start + 50) + "...";
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o)
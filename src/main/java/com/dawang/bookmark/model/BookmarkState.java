@@ -2,22 +2,76 @@ package com.dawang.bookmark.model;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * 插件状态数据模型
+ * 在 bookmarks 列表之外维护 ID、标签和文件路径三个哈希索引（不参与持久化）
+ * 删除不改变其余收藏的顺序（列表顺序就是显示和保存的顺序）；批量删除用 removeAll，只移动一遍列表
  */
 public class BookmarkState implements Serializable {
     private static final long serialVersionUID = 1L;
 
-    public List<BookmarkItem> bookmarks = new ArrayList<>();
+    // 只通过 getBookmarks/setBookmarks 访问（XML 绑定也走这对访问器），直接修改列表会使索引失效
+    private List<BookmarkItem> bookmarks = new ArrayList<>();
 
+    // ID -> 列表下标
+    private transient Map<String, Integer> idIndex = new HashMap<>();
+    // 标签 -> 收藏项
+    private transient Map<String, Set<BookmarkItem>> labelIndex = new HashMap<>();
+    // 文件路径（统一为 / 分隔）-> 收藏项
+    private transient Map<String, Set<BookmarkItem>> pathIndex = new HashMap<>();
+
+    /**
+     * 所有收藏（只读）；增删请用 addBookmark/putBookmark/removeAndGet/removeAll，整体替换用 setBookmarks
+     */
     public List<BookmarkItem> getBookmarks() {
-        return bookmarks;
+        return Collections.unmodifiableList(bookmarks);
     }
 
     public void setBookmarks(List<BookmarkItem> bookmarks) {
-        this.bookmarks = bookmarks != null ? bookmarks : new ArrayList<>();
+        // 复制一份，调用方之后修改传入的列表不会影响索引
+        this.bookmarks = bookmarks != null ? new ArrayList<>(bookmarks) : new ArrayList<>();
+        reindex();
+    }
+
+    /**
+     * 重建索引
+     * setBookmarks 和 Java 反序列化后调用；重复 ID 只保留第一项
+     */
+    public void reindex() {
+        if (bookmarks == null) {
+            bookmarks = new ArrayList<>();
+        }
+        idIndex = new HashMap<>(bookmarks.size() * 2);
+        labelIndex = new HashMap<>();
+        pathIndex = new HashMap<>();
+        List<BookmarkItem> unique = new ArrayList<>(bookmarks.size());
+        for (BookmarkItem item : bookmarks) {
+            if (item == null) {
+                continue;
+            }
+            if (item.getId() != null) {
+                if (idIndex.containsKey(item.getId())) {
+                    continue;
+                }
+                idIndex.put(item.getId(), unique.size());
+            }
+            unique.add(item);
+            indexLabel(item);
+            indexPath(item);
+        }
+        if (unique.size() != bookmarks.size()) {
+            bookmarks.clear();
+            bookmarks.addAll(unique);
+        }
     }
 
     /**
@@ -27,32 +81,235 @@ public class BookmarkState implements Serializable {
         if (item == null) {
             return;
         }
-        // 确保 bookmarks 列表不为 null
-        if (bookmarks == null) {
-            bookmarks = new ArrayList<>();
-        }
+        ensureIndexes();
         // 检查是否已存在（通过 ID 判断）
-        boolean exists = bookmarks.stream()
-                .anyMatch(existing -> item.getId() != null && item.getId().equals(existing.getId()));
-        if (!exists) {
-            bookmarks.add(item);
+        if (item.getId() != null) {
+            if (idIndex.containsKey(item.getId())) {
+                return;
+            }
+            idIndex.put(item.getId(), bookmarks.size());
+        }
+        bookmarks.add(item);
+        indexLabel(item);
+        indexPath(item);
+    }
+
+    /**
+     * 添加收藏项，已有同 ID 的收藏时在原位置替换（用于重放日志，修改不改变顺序）
+     */
+    public void putBookmark(BookmarkItem item) {
+        if (item == null) {
+            return;
+        }
+        ensureIndexes();
+        Integer index = item.getId() != null ? idIndex.get(item.getId()) : null;
+        if (index == null) {
+            addBookmark(item);
+            return;
         }
+        BookmarkItem previous = bookmarks.set(index, item);
+        unindexLabel(previous);
+        unindexPath(previous);
+        indexLabel(item);
+        indexPath(item);
     }
 
     /**
      * 删除收藏项
      */
     public boolean removeBookmark(String id) {
-        return bookmarks.removeIf(item -> id.equals(item.getId()));
+        return removeAndGet(id) != null;
+    }
+
+    /**
+     * 删除收藏项并返回被删除的对象，不存在时返回 null
+     */
+    public BookmarkItem removeAndGet(String id) {
+        if (id == null) {
+            return null;
+        }
+        ensureIndexes();
+        Integer index = idIndex.remove(id);
+        if (index == null) {
+            return null;
+        }
+        BookmarkItem removed = bookmarks.remove((int) index);
+        // 之后的收藏前移一位
+        for (int i = index; i < bookmarks.size(); i++) {
+            String movedId = bookmarks.get(i).getId();
+            if (movedId != null) {
+                idIndex.put(movedId, i);
+            }
+        }
+        unindexLabel(removed);
+        unindexPath(removed);
+        return removed;
+    }
+
+    /**
+     * 批量删除，返回被删除的对象（按列表顺序）；只移动一遍列表、更新一遍 ID 索引
+     */
+    public List<BookmarkItem> removeAll(Collection<String> ids) {
+        ensureIndexes();
+        int first = bookmarks.size();
+        for (String id : ids) {
+            Integer index = id != null ? idIndex.get(id) : null;
+            if (index != null) {
+                first = Math.min(first, index);
+            }
+        }
+        if (first == bookmarks.size()) {
+            return new ArrayList<>();
+        }
+        Set<String> targets = ids instanceof Set ? (Set<String>) ids : new HashSet<>(ids);
+        List<BookmarkItem> removed = new ArrayList<>();
+        int size = first;
+        for (int i = first; i < bookmarks.size(); i++) {
+            BookmarkItem item = bookmarks.get(i);
+            if (item.getId() != null && targets.contains(item.getId())) {
+                idIndex.remove(item.getId());
+                unindexLabel(item);
+                unindexPath(item);
+                removed.add(item);
+                continue;
+            }
+            bookmarks.set(size, item);
+            if (item.getId() != null) {
+                idIndex.put(item.getId(), size);
+            }
+            size++;
+        }
+        bookmarks.subList(size, bookmarks.size()).clear();
+        return removed;
     }
 
     /**
      * 根据ID查找收藏项
      */
     public BookmarkItem findBookmark(String id) {
-        return bookmarks.stream()
-                .filter(item -> id.equals(item.getId()))
-                .findFirst()
-                .orElse(null);
+        if (id == null) {
+            return null;
+        }
+        ensureIndexes();
+        Integer index = idIndex.get(id);
+        return index != null ? bookmarks.get(index) : null;
+    }
+
+    /**
+     * 修改收藏项标签，同时维护标签索引
+     */
+    public void relabel(BookmarkItem item, String label) {
+        if (item == null) {
+            return;
+        }
+        ensureIndexes();
+        unindexLabel(item);
+        item.setLabel(label);
+        indexLabel(item);
+    }
+
+    /**
+     * 修改收藏项的文件路径，同时维护文件路径索引
+     */
+    public void moveToFile(BookmarkItem item, String filePath) {
+        if (item == null) {
+            return;
+        }
+        ensureIndexes();
+        unindexPath(item);
+        item.setFilePath(filePath);
+        indexPath(item);
+    }
+
+    /**
+     * 获取所有标签（只读）
+     */
+    public Set<String> getLabels() {
+        ensureIndexes();
+        return Collections.unmodifiableSet(labelIndex.keySet());
+    }
+
+    /**
+     * 获取标签下的收藏项（只读）
+     */
+    public Collection<BookmarkItem> getBookmarksByLabel(String label) {
+        ensureIndexes();
+        Set<BookmarkItem> items = label != null ? labelIndex.get(label) : null;
+        return items != null ? Collections.unmodifiableSet(items) : Collections.emptySet();
+    }
+
+    /**
+     * 获取标签下的收藏数量
+     */
+    public int getLabelCount(String label) {
+        ensureIndexes();
+        Set<BookmarkItem> items = label != null ? labelIndex.get(label) : null;
+        return items != null ? items.size() : 0;
+    }
+
+    /**
+     * 获取文件中的收藏项（只读），路径分隔符不敏感
+     */
+    public Collection<BookmarkItem> getBookmarksByPath(String path) {
+        ensureIndexes();
+        Set<BookmarkItem> items = path != null ? pathIndex.get(normalizePath(path)) : null;
+        return items != null ? Collections.unmodifiableSet(items) : Collections.emptySet();
+    }
+
+    /**
+     * 路径统一为 / 分隔，作为文件路径索引的键
+     */
+    public static String normalizePath(String path) {
+        return path.indexOf('\\') >= 0 ? path.replace('\\', '/') : path;
+    }
+
+    private void indexPath(BookmarkItem item) {
+        if (item.getFilePath() == null) {
+            return;
+        }
+        pathIndex.computeIfAbsent(normalizePath(item.getFilePath()), k -> new LinkedHashSet<>()).add(item);
+    }
+
+    private void unindexPath(BookmarkItem item) {
+        if (item.getFilePath() == null) {
+            return;
+        }
+        String path = normalizePath(item.getFilePath());
+        Set<BookmarkItem> items = pathIndex.get(path);
+        if (items != null) {
+            items.remove(item);
+            if (items.isEmpty()) {
+                pathIndex.remove(path);
+            }
+        }
+    }
+
+    private void indexLabel(BookmarkItem item) {
+        if (item.getLabel() == null) {
+            return;
+        }
+        labelIndex.computeIfAbsent(item.getLabel(), k -> new LinkedHashSet<>()).add(item);
+    }
+
+    private void unindexLabel(BookmarkItem item) {
+        if (item.getLabel() == null) {
+            return;
+        }
+        Set<BookmarkItem> items = labelIndex.get(item.getLabel());
+        if (items != null) {
+            items.remove(item);
+            if (items.isEmpty()) {
+                labelIndex.remove(item.getLabel());
+            }
+        }
+    }
+
+    /**
+     * Java 反序列化后 transient 索引为 null，这里按需重建
+     */
+    private void ensureIndexes() {
+        if (bookmarks == null || idIndex == null || labelIndex == null || pathIndex == null) {
+            reindex();
+        }
     }
 }
@@ -0,0 +1,143 @@
+package com.dawang.bookmark.render;
+
+import com.dawang.bookmark.storage.BlobStore;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+/**
+ * 渲染结果缓存（只缓存 body 部分），按正文内容哈希索引
+ * 内存中按最近使用淘汰，同时写入磁盘，重启后再次打开同一正文也无需重新渲染
+ */
+public class HtmlCache {
+
+    private static final com.intellij.openapi.diagnostic.Logger LOG = com.intellij.openapi.diagnostic.Logger
+            .getInstance(HtmlCache.class);
+
+    // 内存缓存上限（字符数），可通过 -Dbookmark.html.cache.chars 调整
+    public static final long MAX_MEMORY_CHARS = Long.getLong("bookmark.html.cache.chars", 8L * 1024 * 1024);
+
+    private final BlobStore diskStore;
+    private final long maxMemoryChars;
+    // 访问顺序的 LinkedHashMap，队首是最久未使用的条目
+    private final LinkedHashMap<String, String> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private long memoryChars;
+
+    private long memoryHits;
+    private long diskHits;
+    private long renders;
+    private long renderNanos;
+
+    public HtmlCache(BlobStore diskStore) {
+        this(diskStore, MAX_MEMORY_CHARS);
+    }
+
+    public HtmlCache(BlobStore diskStore, long maxMemoryChars) {
+        this.diskStore = diskStore;
+        this.maxMemoryChars = maxMemoryChars;
+    }
+
+    /**
+     * 取渲染好的 body；内存和磁盘都未命中时才读取正文并渲染
+     *
+     * @param hash     正文内容哈希
+     * @param markdown 正文，只在需要渲染时调用
+     */
+    public String getBody(String hash, Supplier<String> markdown) {
+        return getBody(hash, markdown, () -> false);
+    }
+
+    /**
+     * 同上，渲染过程中可取消；取消时不写入缓存
+     *
+     * @throws com.intellij.openapi.progress.ProcessCanceledException cancelled 返回 true 时
+     */
+    public String getBody(String hash, Supplier<String> markdown, BooleanSupplier cancelled) {
+        synchronized (this) {
+            String cached = memory.get(hash);
+            if (cached != null) {
+                memoryHits++;
+                return cached;
+            }
+        }
+        try {
+            String stored = diskStore.get(hash);
+            if (stored != null) {
+                synchronized (this) {
+                    diskHits++;
+                }
+                remember(hash, stored);
+                return stored;
+            }
+        } catch (IOException e) {
+            LOG.warn("Failed to read rendered bookmark " + hash, e);
+        }
+
+        long start = System.nanoTime();
+        String body = MarkdownRenderer.renderBody(markdown.get(), cancelled);
+        synchronized (this) {
+            renders++;
+            renderNanos += System.nanoTime() - start;
+        }
+        remember(hash, body);
+        try {
+            diskStore.put(hash, body.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            LOG.warn("Failed to cache rendered bookmark " + hash, e);
+        }
+        return body;
+    }
+
+    /**
+     * 取完整的 HTML 文档
+     */
+    public String getDocument(String hash, Supplier<String> markdown) {
+        return MarkdownRenderer.toDocument(getBody(hash, markdown));
+    }
+
+    /**
+     * 正文被删除时移除对应的缓存
+     */
+    public void evict(String hash) {
+        synchronized (this) {
+            String removed = memory.remove(hash);
+            if (removed != null) {
+                memoryChars -= removed.length();
+            }
+        }
+        try {
+            diskStore.delete(hash);
+        } catch (IOException e) {
+            LOG.warn("Failed to delete rendered bookmark " + hash, e);
+        }
+    }
+
+    private synchronized void remember(String hash, String body) {
+        // 超过整个缓存容量的结果只放磁盘
+        if (body.length() > maxMemoryChars) {
+            return;
+        }
+        String previous = memory.put(hash, body);
+        if (previous != null) {
+            memoryChars -= previous.length();
+        }
+        memoryChars += body.length();
+        Iterator<Map.Entry<String, String>> it = memory.entrySet().iterator();
+        while (memoryChars > maxMemoryChars && it.hasNext()) {
+            memoryChars -= it.next().getValue().length();
+            it.remove();
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("渲染缓存: 内存 %d 份 (%d 字符), 内存命中 %d 次, 磁盘命中 %d 次, 渲染 %d 次 耗时 %.1f ms",
+                memory.size(), memoryChars, memoryHits, diskHits,
+                renders, renderNanos / 1e6);
+    }
+}
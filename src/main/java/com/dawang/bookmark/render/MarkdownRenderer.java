@@ -0,0 +1,404 @@
+package com.dawang.bookmark.render;
+
+import com.intellij.openapi.progress.ProcessCanceledException;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Markdown 转 HTML（单遍扫描，不使用正则）
+ * 支持标题、无序列表、代码块、行内代码、粗体、斜体和链接
+ */
+public final class MarkdownRenderer {
+
+    /**
+     * 渲染规则或样式变化时递增，使磁盘上的旧缓存失效
+     */
+    public static final int VERSION = 1;
+
+    // GitHub 风格样式，只构建一次
+    private static final String DOCUMENT_HEAD = "<!DOCTYPE html>\n" +
+            "<html>\n" +
+            "<head>\n" +
+            "    <meta charset=\"UTF-8\">\n" +
+            "    <meta name=\"viewport\" content=\"width=device-width, initial-scale=1.0\">\n" +
+            "    <style>\n" +
+            "        * { box-sizing: border-box; }\n" +
+            "        body {\n" +
+            "            font-family: -apple-system, BlinkMacSystemFont, 'Segoe UI', 'Helvetica Neue', Arial, 'Noto Sans', sans-serif;\n" +
+            "            font-size: 16px;\n" +
+            "            line-height: 1.6;\n" +
+            "            padding: 20px;\n" +
+            "            color: #24292e;\n" +
+            "            background-color: #ffffff;\n" +
+            "            max-width: 100%;\n" +
+            "        }\n" +
+            "        pre {\n" +
+            "            background-color: #f6f8fa;\n" +
+            "            border: 1px solid #e1e4e8;\n" +
+            "            border-radius: 6px;\n" +
+            "            padding: 16px;\n" +
+            "            overflow-x: auto;\n" +
+            "            margin: 16px 0;\n" +
+            "            font-size: 85%;\n" +
+            "            line-height: 1.45;\n" +
+            "        }\n" +
+            "        code {\n" +
+            "            background-color: rgba(27, 31, 35, 0.05);\n" +
+            "            padding: 0.2em 0.4em;\n" +
+            "            border-radius: 3px;\n" +
+            "            font-family: 'SFMono-Regular', 'Consolas', 'Liberation Mono', 'Menlo', monospace;\n" +
+            "            font-size: 85%;\n" +
+            "        }\n" +
+            "        pre code {\n" +
+            "            background-color: transparent;\n" +
+            "            padding: 0;\n" +
+            "            border-radius: 0;\n" +
+            "            font-size: 100%;\n" +
+            "        }\n" +
+            "        h1 {\n" +
+            "            font-size: 2em;\n" +
+            "            border-bottom: 2px solid #eaecef;\n" +
+            "            padding-bottom: 0.3em;\n" +
+            "            margin-top: 24px;\n" +
+            "            margin-bottom: 16px;\n" +
+            "            font-weight: 600;\n" +
+            "        }\n" +
+            "        h2 {\n" +
+            "            font-size: 1.5em;\n" +
+            "            border-bottom: 1px solid #eaecef;\n" +
+            "            padding-bottom: 0.3em;\n" +
+            "            margin-top: 24px;\n" +
+            "            margin-bottom: 16px;\n" +
+            "            font-weight: 600;\n" +
+            "        }\n" +
+            "        h3 {\n" +
+            "            font-size: 1.25em;\n" +
+            "            margin-top: 24px;\n" +
+            "            margin-bottom: 16px;\n" +
+            "            font-weight: 600;\n" +
+            "        }\n" +
+            "        p {\n" +
+            "            margin: 16px 0;\n" +
+            "        }\n" +
+            "        ul, ol {\n" +
+            "            padding-left: 2em;\n" +
+            "            margin: 16px 0;\n" +
+            "        }\n" +
+            "        li {\n" +
+            "            margin: 4px 0;\n" +
+            "        }\n" +
+            "        a {\n" +
+            "            color: #0366d6;\n" +
+            "            text-decoration: none;\n" +
+            "        }\n" +
+            "        a:hover {\n" +
+            "            text-decoration: underline;\n" +
+            "        }\n" +
+            "        strong {\n" +
+            "            font-weight: 600;\n" +
+            "        }\n" +
+            "        em {\n" +
+            "            font-style: italic;\n" +
+            "        }\n" +
+            "        blockquote {\n" +
+            "            padding: 0 1em;\n" +
+            "            color: #6a737d;\n" +
+            "            border-left: 0.25em solid #dfe2e5;\n" +
+            "            margin: 0;\n" +
+            "        }\n" +
+            "        table {\n" +
+            "            border-collapse: collapse;\n" +
+            "            margin: 16px 0;\n" +
+            "        }\n" +
+            "        table th,\n" +
+            "        table td {\n" +
+            "            border: 1px solid #dfe2e5;\n" +
+            "            padding: 6px 13px;\n" +
+            "        }\n" +
+            "        table th {\n" +
+            "            background-color: #f6f8fa;\n" +
+            "            font-weight: 600;\n" +
+            "        }\n" +
+            "        hr {\n" +
+            "            height: 0.25em;\n" +
+            "            padding: 0;\n" +
+            "            margin: 24px 0;\n" +
+            "            background-color: #e1e4e8;\n" +
+            "            border: 0;\n" +
+            "        }\n" +
+            "    </style>\n" +
+            "</head>\n" +
+            "<body>\n";
+
+    private static final String DOCUMENT_TAIL = "\n</body>\n</html>";
+
+    private MarkdownRenderer() {
+    }
+
+    /**
+     * 渲染为带样式的完整 HTML 文档
+     */
+    public static String render(String markdown) {
+        return toDocument(renderBody(markdown));
+    }
+
+    /**
+     * 为 renderBody 的输出加上文档头和样式
+     */
+    public static String toDocument(String body) {
+        return new StringBuilder(DOCUMENT_HEAD.length() + body.length() + DOCUMENT_TAIL.length())
+                .append(DOCUMENT_HEAD).append(body).append(DOCUMENT_TAIL).toString();
+    }
+
+    /**
+     * 渲染 body 部分，逐行扫描一遍原文
+     */
+    public static String renderBody(String markdown) {
+        return renderBody(markdown, () -> false);
+    }
+
+    /**
+     * 渲染 body 部分，每处理 1024 行检查一次取消标记
+     *
+     * @throws ProcessCanceledException cancelled 返回 true 时
+     */
+    public static String renderBody(String markdown, BooleanSupplier cancelled) {
+        if (markdown == null || markdown.isBlank()) {
+            return "<p>（无内容）</p>";
+        }
+        StringBuilder html = new StringBuilder(markdown.length() + markdown.length() / 8 + 64);
+        boolean inCodeBlock = false;
+        boolean inList = false;
+
+        // 与 split("\n") 一致：忽略末尾的空行
+        int length = markdown.length();
+        while (length > 0 && markdown.charAt(length - 1) == '\n') {
+            length--;
+        }
+        int lineStart = 0;
+        int lines = 0;
+        while (lineStart <= length) {
+            if ((++lines & 1023) == 0 && cancelled.getAsBoolean()) {
+                throw new ProcessCanceledException();
+            }
+            int lineEnd = markdown.indexOf('\n', lineStart);
+            if (lineEnd < 0 || lineEnd > length) {
+                lineEnd = length;
+            }
+            // 去掉首尾空白后的范围
+            int start = lineStart;
+            int end = lineEnd;
+            while (start < end && markdown.charAt(start) <= ' ') {
+                start++;
+            }
+            while (end > start && markdown.charAt(end - 1) <= ' ') {
+                end--;
+            }
+
+            if (markdown.startsWith("```", start) && start + 3 <= end) {
+                // 代码块
+                if (inCodeBlock) {
+                    html.append("</code></pre>");
+                    inCodeBlock = false;
+                } else {
+                    if (inList) {
+                        html.append("</ul>");
+                        inList = false;
+                    }
+                    html.append("<pre><code>");
+                    inCodeBlock = true;
+                }
+            } else if (inCodeBlock) {
+                escape(markdown, lineStart, lineEnd, html);
+                html.append('\n');
+            } else {
+                int level = headingLevel(markdown, start, end);
+                if (level > 0) {
+                    if (inList) {
+                        html.append("</ul>");
+                        inList = false;
+                    }
+                    html.append("<h").append(level).append('>');
+                    escape(markdown, start + level + 1, end, html);
+                    html.append("</h").append(level).append('>');
+                } else if (end - start > 2 && (markdown.charAt(start) == '-' || markdown.charAt(start) == '*')
+                        && markdown.charAt(start + 1) == ' ') {
+                    // 列表项
+                    if (!inList) {
+                        html.append("<ul>");
+                        inList = true;
+                    }
+                    html.append("<li>");
+                    inline(markdown, start + 2, end, html);
+                    html.append("</li>");
+                } else {
+                    if (inList) {
+                        html.append("</ul>");
+                        inList = false;
+                    }
+                    if (start == end) {
+                        html.append("<br>");
+                    } else {
+                        html.append("<p>");
+                        inline(markdown, lineStart, lineEnd, html);
+                        html.append("</p>");
+                    }
+                }
+            }
+            lineStart = lineEnd + 1;
+        }
+
+        // 关闭未关闭的标签
+        if (inCodeBlock) {
+            html.append("</code></pre>");
+        }
+        if (inList) {
+            html.append("</ul>");
+        }
+        return html.toString();
+    }
+
+    /**
+     * 行首的 "# " / "## " / "### " 返回标题级别，否则返回 0
+     */
+    private static int headingLevel(String text, int start, int end) {
+        int level = 0;
+        while (level < 3 && start + level < end && text.charAt(start + level) == '#') {
+            level++;
+        }
+        if (level == 0 || start + level >= end || text.charAt(start + level) != ' ') {
+            return 0;
+        }
+        return level;
+    }
+
+    /**
+     * 行内语法：`代码`、**粗体**、__粗体__、*斜体*、_斜体_、[文本](链接)
+     * 代码内的内容不再解析；下划线在单词中间时（如 snake_case）不作为斜体
+     */
+    private static void inline(String text, int start, int end, StringBuilder html) {
+        int i = start;
+        while (i < end) {
+            char c = text.charAt(i);
+            if (c == '`') {
+                int close = indexOf(text, '`', i + 1, end);
+                if (close > i + 1) {
+                    html.append("<code>");
+                    escape(text, i + 1, close, html);
+                    html.append("</code>");
+                    i = close + 1;
+                    continue;
+                }
+            } else if (c == '*' || c == '_') {
+                int next = emphasis(text, i, end, html);
+                if (next > i) {
+                    i = next;
+                    continue;
+                }
+            } else if (c == '[') {
+                int next = link(text, i, end, html);
+                if (next > i) {
+                    i = next;
+                    continue;
+                }
+            }
+            escape(c, html);
+            i++;
+        }
+    }
+
+    /**
+     * 尝试解析从 i 开始的粗体或斜体，成功时返回结束位置，否则返回 i
+     */
+    private static int emphasis(String text, int i, int end, StringBuilder html) {
+        char marker = text.charAt(i);
+        if (marker == '_' && i > 0 && Character.isLetterOrDigit(text.charAt(i - 1))) {
+            return i;
+        }
+        boolean strong = i + 1 < end && text.charAt(i + 1) == marker;
+        int contentStart = i + (strong ? 2 : 1);
+        int close = indexOf(text, marker, contentStart, end);
+        if (close <= contentStart) {
+            return i;
+        }
+        if (!strong && i > 0 && text.charAt(i - 1) == marker) {
+            return i;
+        }
+        if (strong) {
+            if (close + 1 >= end || text.charAt(close + 1) != marker) {
+                return i;
+            }
+            html.append("<strong>");
+            inline(text, contentStart, close, html);
+            html.append("</strong>");
+            return close + 2;
+        }
+        if (close + 1 < end && text.charAt(close + 1) == marker) {
+            return i;
+        }
+        if (marker == '_' && close + 1 < end && Character.isLetterOrDigit(text.charAt(close + 1))) {
+            return i;
+        }
+        html.append("<em>");
+        inline(text, contentStart, close, html);
+        html.append("</em>");
+        return close + 1;
+    }
+
+    /**
+     * 尝试解析从 i 开始的 [文本](链接)，成功时返回结束位置，否则返回 i
+     */
+    private static int link(String text, int i, int end, StringBuilder html) {
+        int closeBracket = indexOf(text, ']', i + 1, end);
+        if (closeBracket <= i + 1 || closeBracket + 1 >= end || text.charAt(closeBracket + 1) != '(') {
+            return i;
+        }
+        int closeParen = indexOf(text, ')', closeBracket + 2, end);
+        if (closeParen <= closeBracket + 2) {
+            return i;
+        }
+        html.append("<a href=\"");
+        escape(text, closeBracket + 2, closeParen, html);
+        html.append("\">");
+        inline(text, i + 1, closeBracket, html);
+        html.append("</a>");
+        return closeParen + 1;
+    }
+
+    private static int indexOf(String text, char c, int from, int end) {
+        int index = text.indexOf(c, from);
+        return index >= 0 && index < end ? index : -1;
+    }
+
+    private static void escape(String text, int start, int end, StringBuilder html) {
+        for (int i = start; i < end; i++) {
+            escape(text.charAt(i), html);
+        }
+    }
+
+    /**
+     * 转义 HTML 特殊字符
+     */
+    private static void escape(char c, StringBuilder html) {
+        switch (c) {
+            case '&':
+                html.append("&amp;");
+                break;
+            case '<':
+                html.append("&lt;");
+                break;
+            case '>':
+                html.append("&gt;");
+                break;
+            case '"':
+                html.append("&quot;");
+                break;
+            case '\'':
+                html.append("&#39;");
+                break;
+            default:
+                html.append(c);
+                break;
+        }
+    }
+}
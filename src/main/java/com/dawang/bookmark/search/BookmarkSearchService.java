@@ -0,0 +1,293 @@
+package com.dawang.bookmark.search;
+
+import com.dawang.bookmark.model.BookmarkItem;
+import com.dawang.bookmark.service.BookmarkEvent;
+import com.dawang.bookmark.service.BookmarkListener;
+import com.dawang.bookmark.service.BookmarkStateService;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BooleanSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 收藏搜索服务
+ * 首次使用时在后台构建倒排索引和正文三元组索引，之后根据收藏变更事件增量维护
+ */
+public class BookmarkSearchService implements Disposable, BookmarkListener {
+
+    public static final int MAX_RESULTS = 200;
+
+    private final InvertedIndex index = new InvertedIndex();
+    private final TrigramIndex trigrams = new TrigramIndex();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // 单线程顺序执行索引更新，保证与事件顺序一致
+    private final ExecutorService indexer = AppExecutorUtil
+            .createBoundedApplicationPoolExecutor("Bookmark Search Indexer", 1);
+    private volatile boolean ready;
+    // 仅在 EDT 上访问
+    private boolean started;
+
+    public BookmarkSearchService() {
+        ApplicationManager.getApplication().getMessageBus().connect(this)
+                .subscribe(BookmarkListener.TOPIC, this);
+    }
+
+    public static BookmarkSearchService getInstance() {
+        return ApplicationManager.getApplication().getService(BookmarkSearchService.class);
+    }
+
+    /**
+     * 确保索引已开始构建（在 EDT 调用）
+     */
+    public void ensureIndexed() {
+        if (!started) {
+            started = true;
+            rebuild();
+        }
+    }
+
+    /**
+     * 索引是否已构建完成
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * 全文搜索，返回按相关度排序的收藏项（可在任意线程调用）
+     */
+    public List<BookmarkItem> search(String query) {
+        lock.readLock().lock();
+        try {
+            return index.search(query, MAX_RESULTS);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 子串或正则搜索（在后台线程调用）
+     * 先用三元组索引筛出可能匹配的正文，再用 java.util.regex 校验；最新的收藏优先，凑够 MAX_RESULTS 条即停止
+     *
+     * @param regex     true 为正则，false 为精确子串
+     * @param cancelled 返回 true 时中止搜索并抛出 ProcessCanceledException
+     * @throws java.util.regex.PatternSyntaxException 正则语法错误
+     */
+    public PatternSearchResult searchPattern(String query, boolean regex, BooleanSupplier cancelled) {
+        Pattern pattern = Pattern.compile(query, regex ? Pattern.MULTILINE : Pattern.LITERAL);
+        List<String> literals = regex ? RegexLiterals.extract(query) : Collections.singletonList(query);
+
+        List<TrigramIndex.Candidate> candidates;
+        int totalBodies;
+        lock.readLock().lock();
+        try {
+            candidates = trigrams.candidates(literals);
+            totalBodies = trigrams.bodyCount();
+        } finally {
+            lock.readLock().unlock();
+        }
+        candidates.sort(Comparator.comparingLong(BookmarkSearchService::newestTimestamp).reversed());
+
+        // 校验在锁外进行，正文按哈希读取，不会缓存到收藏项上
+        BookmarkStateService stateService = BookmarkStateService.getInstance();
+        List<BookmarkItem> hits = new ArrayList<>();
+        int scanned = 0;
+        for (TrigramIndex.Candidate candidate : candidates) {
+            if (hits.size() >= MAX_RESULTS) {
+                break;
+            }
+            if (cancelled.getAsBoolean()) {
+                throw new ProcessCanceledException();
+            }
+            String content = stateService.readContent(candidate.hash);
+            if (content == null) {
+                content = stateService.readContent(candidate.items.get(0));
+            }
+            scanned++;
+            Matcher matcher = pattern.matcher(new CancellableText(content, cancelled));
+            if (matcher.find()) {
+                hits.addAll(candidate.items);
+            }
+        }
+        hits.sort(Comparator.comparingLong(BookmarkItem::getTimestamp).reversed());
+        if (hits.size() > MAX_RESULTS) {
+            hits = new ArrayList<>(hits.subList(0, MAX_RESULTS));
+        }
+        return new PatternSearchResult(hits, candidates.size(), scanned, totalBodies);
+    }
+
+    private static long newestTimestamp(TrigramIndex.Candidate candidate) {
+        long newest = Long.MIN_VALUE;
+        for (BookmarkItem item : candidate.items) {
+            newest = Math.max(newest, item.getTimestamp());
+        }
+        return newest;
+    }
+
+    /**
+     * 索引规模描述
+     */
+    public String getIndexSummary() {
+        lock.readLock().lock();
+        try {
+            return index.size() + " 条收藏, " + index.termCount() + " 个词元, "
+                    + trigrams.bodyCount() + " 份正文 (" + trigrams.indexedChars() + " 字符), "
+                    + trigrams.trigramCount() + " 个三元组";
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void bookmarksChanged(@NotNull List<BookmarkEvent> events) {
+        if (!started) {
+            // 索引尚未构建，构建时会读取最新状态
+            return;
+        }
+        for (BookmarkEvent event : events) {
+            BookmarkItem item = event.getItem();
+            switch (event.getType()) {
+                case ADDED:
+                case UPDATED:
+                    indexer.execute(() -> index(item));
+                    break;
+                case REMOVED:
+                    indexer.execute(() -> {
+                        lock.writeLock().lock();
+                        try {
+                            index.remove(item.getId());
+                            trigrams.remove(item.getId());
+                        } finally {
+                            lock.writeLock().unlock();
+                        }
+                    });
+                    break;
+                case CLEARED:
+                    rebuild();
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * 在 EDT 上取状态快照，后台逐条建立索引
+     */
+    private void rebuild() {
+        List<BookmarkItem> snapshot = new ArrayList<>(BookmarkStateService.getInstance().getAllBookmarks());
+        ready = false;
+        indexer.execute(() -> {
+            lock.writeLock().lock();
+            try {
+                index.clear();
+                trigrams.clear();
+            } finally {
+                lock.writeLock().unlock();
+            }
+            for (BookmarkItem item : snapshot) {
+                index(item);
+            }
+            ready = true;
+        });
+    }
+
+    /**
+     * 正文读取（可能需要读盘和解压）、分词和三元组计算都在锁外进行，只在写入倒排表时加锁
+     * 索引更新只在 indexer 线程上执行，检查正文是否已索引和写入之间不会有其他写者
+     */
+    private void index(BookmarkItem item) {
+        // 建索引会扫过所有正文，读取时不缓存到收藏项上，避免把全部正文留在堆上
+        String content = BookmarkStateService.getInstance().readContent(item);
+        String hash = TrigramIndex.hashOf(item, content);
+        boolean known;
+        lock.readLock().lock();
+        try {
+            known = trigrams.containsBody(hash);
+        } finally {
+            lock.readLock().unlock();
+        }
+        InvertedIndex.PreparedDoc prepared = InvertedIndex.prepare(item, content);
+        TrigramIndex.PreparedBody body = TrigramIndex.prepare(item, hash, known ? null : content);
+        lock.writeLock().lock();
+        try {
+            index.add(prepared);
+            trigrams.add(body);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 子串/正则搜索结果
+     */
+    public static class PatternSearchResult {
+        public final List<BookmarkItem> items;
+        // 三元组预筛后的候选正文数
+        public final int candidates;
+        // 实际读取并执行正则的正文数
+        public final int scanned;
+        public final int totalBodies;
+
+        PatternSearchResult(List<BookmarkItem> items, int candidates, int scanned, int totalBodies) {
+            this.items = items;
+            this.candidates = candidates;
+            this.scanned = scanned;
+            this.totalBodies = totalBodies;
+        }
+    }
+
+    /**
+     * 定期检查取消标记的字符序列，避免病态正则在大正文上长时间回溯
+     */
+    private static class CancellableText implements CharSequence {
+        private final CharSequence text;
+        private final BooleanSupplier cancelled;
+        private int reads;
+
+        CancellableText(CharSequence text, BooleanSupplier cancelled) {
+            this.text = text != null ? text : "";
+            this.cancelled = cancelled;
+        }
+
+        @Override
+        public int length() {
+            return text.length();
+        }
+
+        @Override
+        public char charAt(int index) {
+            if ((++reads & 0xFFFF) == 0 && cancelled.getAsBoolean()) {
+                throw new ProcessCanceledException();
+            }
+            return text.charAt(index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new CancellableText(text.subSequence(start, end), cancelled);
+        }
+
+        @Override
+        public String toString() {
+            return text.toString();
+        }
+    }
+
+    @Override
+    public void dispose() {
+        // 消息总线连接随本服务一起释放
+    }
+}
@@ -0,0 +1,349 @@
+package com.dawang.bookmark.search;
+
+import com.dawang.bookmark.model.BookmarkItem;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * 收藏全文倒排索引（标签、备注、正文）
+ * 支持增量添加和删除，查询按 BM25 打分排序；非线程安全，由 BookmarkSearchService 加锁访问
+ */
+public class InvertedIndex {
+
+    // 字段权重：标签 > 备注 > 正文
+    private static final int LABEL_WEIGHT = 3;
+    private static final int NOTE_WEIGHT = 2;
+    private static final int CONTENT_WEIGHT = 1;
+    // 输入中的最后一个单词按前缀匹配时最多展开的词元数
+    private static final int MAX_PREFIX_EXPANSIONS = 64;
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    private final TreeMap<String, PostingList> postings = new TreeMap<>();
+    private final Map<String, Doc> docsById = new HashMap<>();
+    // 文档序号 -> 文档，序号单调递增，已删除的位置为 null
+    private final List<Doc> docsByOrdinal = new ArrayList<>();
+    private long totalLength;
+
+    /**
+     * 添加或替换一篇文档
+     */
+    public void add(BookmarkItem item, String content) {
+        add(prepare(item, content));
+    }
+
+    /**
+     * 分词统计词频，不访问索引状态，可以在锁外执行
+     */
+    public static PreparedDoc prepare(BookmarkItem item, String content) {
+        Map<String, int[]> frequencies = new HashMap<>();
+        int[] length = new int[1];
+        if (item != null) {
+            collect(item.getLabel(), LABEL_WEIGHT, frequencies, length);
+            collect(item.getNote(), NOTE_WEIGHT, frequencies, length);
+            collect(content, CONTENT_WEIGHT, frequencies, length);
+        }
+        return new PreparedDoc(item, frequencies, length[0]);
+    }
+
+    /**
+     * 添加或替换一篇已分词的文档
+     */
+    public void add(PreparedDoc prepared) {
+        BookmarkItem item = prepared.item;
+        if (item == null || item.getId() == null) {
+            return;
+        }
+        remove(item.getId());
+
+        Doc doc = new Doc(docsByOrdinal.size(), item,
+                prepared.frequencies.keySet().toArray(new String[0]), prepared.length);
+        docsByOrdinal.add(doc);
+        docsById.put(item.getId(), doc);
+        totalLength += doc.length;
+        for (Map.Entry<String, int[]> entry : prepared.frequencies.entrySet()) {
+            postings.computeIfAbsent(entry.getKey(), k -> new PostingList()).append(doc.ordinal, entry.getValue()[0]);
+        }
+    }
+
+    /**
+     * 删除文档，通过正排的词元列表只更新相关的倒排表
+     */
+    public void remove(String id) {
+        Doc doc = docsById.remove(id);
+        if (doc == null) {
+            return;
+        }
+        docsByOrdinal.set(doc.ordinal, null);
+        totalLength -= doc.length;
+        for (String term : doc.terms) {
+            PostingList list = postings.get(term);
+            if (list != null) {
+                list.remove(doc.ordinal);
+                if (list.size == 0) {
+                    postings.remove(term);
+                }
+            }
+        }
+    }
+
+    public void clear() {
+        postings.clear();
+        docsById.clear();
+        docsByOrdinal.clear();
+        totalLength = 0;
+    }
+
+    public int size() {
+        return docsById.size();
+    }
+
+    public int termCount() {
+        return postings.size();
+    }
+
+    /**
+     * 查询：所有词元都必须命中（AND）；查询末尾的单词按前缀匹配，
+     * 它的驼峰、下划线子词不再单独匹配（整词前缀命中时子词的前缀必然也命中）；
+     * 单个中日韩文字按前缀匹配以它开头的二元组
+     */
+    public List<BookmarkItem> search(String query, int limit) {
+        if (query == null || query.trim().isEmpty() || docsById.isEmpty()) {
+            return Collections.emptyList();
+        }
+        int prefixStart = lastWordStart(query);
+        String prefixTerm = prefixStart < query.length() ? query.substring(prefixStart).toLowerCase() : null;
+        Set<String> terms = new LinkedHashSet<>();
+        Tokenizer.tokenize(query.substring(0, prefixStart), terms::add);
+        if (prefixTerm != null) {
+            terms.add(prefixTerm);
+        }
+        if (terms.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<PostingList> lists = new ArrayList<>(terms.size());
+        for (String term : terms) {
+            PostingList list = term.equals(prefixTerm) || isSingleCjk(term) ? prefixUnion(term) : postings.get(term);
+            if (list == null || list.size == 0) {
+                return Collections.emptyList();
+            }
+            lists.add(list);
+        }
+        // 从最短的倒排表开始求交集
+        lists.sort((a, b) -> Integer.compare(a.size, b.size));
+
+        int docCount = docsById.size();
+        double avgLength = Math.max(1.0, (double) totalLength / docCount);
+        double[] idf = new double[lists.size()];
+        for (int i = 0; i < idf.length; i++) {
+            int df = lists.get(i).size;
+            idf[i] = Math.log(1 + (docCount - df + 0.5) / (df + 0.5));
+        }
+
+        PriorityQueue<ScoredDoc> top = new PriorityQueue<>((a, b) -> Double.compare(a.score, b.score));
+        PostingList shortest = lists.get(0);
+        int[] cursors = new int[lists.size()];
+        outer:
+        for (int p = 0; p < shortest.size; p++) {
+            int ordinal = shortest.docs[p];
+            Doc doc = docsByOrdinal.get(ordinal);
+            double norm = K1 * (1 - B + B * doc.length / avgLength);
+            double score = idf[0] * bm25(shortest.tfs[p], norm);
+            for (int i = 1; i < lists.size(); i++) {
+                PostingList list = lists.get(i);
+                int found = list.seek(ordinal, cursors[i]);
+                if (found < 0) {
+                    cursors[i] = -found - 1;
+                    if (cursors[i] >= list.size) {
+                        break outer;
+                    }
+                    continue outer;
+                }
+                cursors[i] = found;
+                score += idf[i] * bm25(list.tfs[found], norm);
+            }
+            if (top.size() < limit) {
+                top.add(new ScoredDoc(doc, score));
+            } else if (top.peek().score < score) {
+                top.poll();
+                top.add(new ScoredDoc(doc, score));
+            }
+        }
+
+        ScoredDoc[] sorted = top.toArray(new ScoredDoc[0]);
+        Arrays.sort(sorted, (a, b) -> Double.compare(b.score, a.score));
+        List<BookmarkItem> result = new ArrayList<>(sorted.length);
+        for (ScoredDoc scored : sorted) {
+            result.add(scored.doc.item);
+        }
+        return result;
+    }
+
+    private static double bm25(int tf, double norm) {
+        return tf * (K1 + 1) / (tf + norm);
+    }
+
+    private static void collect(String text, int weight, Map<String, int[]> frequencies, int[] length) {
+        Tokenizer.tokenize(text, term -> {
+            frequencies.computeIfAbsent(term, k -> new int[1])[0] += weight;
+            length[0]++;
+        });
+    }
+
+    /**
+     * 查询末尾（非中日韩）单词的起始位置，后面有空白或没有这样的单词时返回查询长度
+     */
+    private static int lastWordStart(String query) {
+        int start = query.length();
+        while (start > 0) {
+            char c = query.charAt(start - 1);
+            if (!(Character.isLetterOrDigit(c) || c == '_') || Tokenizer.isCjk(c)) {
+                break;
+            }
+            start--;
+        }
+        return start;
+    }
+
+    /**
+     * 单个中日韩文字：索引中只有二元组，需要按前缀匹配
+     */
+    private static boolean isSingleCjk(String term) {
+        int cp = term.codePointAt(0);
+        return Character.charCount(cp) == term.length() && Tokenizer.isCjk(cp);
+    }
+
+    /**
+     * 合并所有以 prefix 开头的词元的倒排表
+     */
+    private PostingList prefixUnion(String prefix) {
+        NavigableMap<String, PostingList> range = postings.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+        if (range.isEmpty()) {
+            return null;
+        }
+        if (range.size() == 1) {
+            return range.firstEntry().getValue();
+        }
+        int total = 0;
+        int expanded = 0;
+        for (PostingList list : range.values()) {
+            total += list.size;
+            if (++expanded >= MAX_PREFIX_EXPANSIONS) {
+                break;
+            }
+        }
+        // 高 32 位为文档序号、低 32 位为词频，排序后合并同一文档
+        long[] pairs = new long[total];
+        int n = 0;
+        expanded = 0;
+        for (PostingList list : range.values()) {
+            for (int i = 0; i < list.size; i++) {
+                pairs[n++] = ((long) list.docs[i] << 32) | list.tfs[i];
+            }
+            if (++expanded >= MAX_PREFIX_EXPANSIONS) {
+                break;
+            }
+        }
+        Arrays.sort(pairs);
+        PostingList union = new PostingList();
+        for (long pair : pairs) {
+            int ordinal = (int) (pair >>> 32);
+            int tf = (int) pair;
+            if (union.size > 0 && union.docs[union.size - 1] == ordinal) {
+                union.tfs[union.size - 1] += tf;
+            } else {
+                union.append(ordinal, tf);
+            }
+        }
+        return union;
+    }
+
+    /**
+     * 已分词的文档
+     */
+    public static class PreparedDoc {
+        final BookmarkItem item;
+        final Map<String, int[]> frequencies;
+        final int length;
+
+        PreparedDoc(BookmarkItem item, Map<String, int[]> frequencies, int length) {
+            this.item = item;
+            this.frequencies = frequencies;
+            this.length = length;
+        }
+    }
+
+    private static class Doc {
+        final int ordinal;
+        final BookmarkItem item;
+        final String[] terms;
+        final int length;
+
+        Doc(int ordinal, BookmarkItem item, String[] terms, int length) {
+            this.ordinal = ordinal;
+            this.item = item;
+            this.terms = terms;
+            this.length = length;
+        }
+    }
+
+    private static class ScoredDoc {
+        final Doc doc;
+        final double score;
+
+        ScoredDoc(Doc doc, double score) {
+            this.doc = doc;
+            this.score = score;
+        }
+    }
+
+    /**
+     * 倒排表：按文档序号升序排列的 (序号, 词频)
+     */
+    private static class PostingList {
+        int[] docs = new int[2];
+        int[] tfs = new int[2];
+        int size;
+
+        /**
+         * 文档序号单调递增，新文档直接追加到末尾
+         */
+        void append(int ordinal, int tf) {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+                tfs = Arrays.copyOf(tfs, size * 2);
+            }
+            docs[size] = ordinal;
+            tfs[size] = tf;
+            size++;
+        }
+
+        void remove(int ordinal) {
+            int index = Arrays.binarySearch(docs, 0, size, ordinal);
+            if (index < 0) {
+                return;
+            }
+            System.arraycopy(docs, index + 1, docs, index, size - index - 1);
+            System.arraycopy(tfs, index + 1, tfs, index, size - index - 1);
+            size--;
+        }
+
+        /**
+         * 从 from 开始查找文档序号，找到返回下标，否则返回 -(插入位置) - 1
+         */
+        int seek(int ordinal, int from) {
+            return Arrays.binarySearch(docs, from, size, ordinal);
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package com.dawang.bookmark.search;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 从正则表达式中提取“任何匹配都必须包含”的字面量片段，用于三元组索引预筛
+ * 分析是保守的：无法确定时少提取或不提取，只会让候选变多，不会漏掉匹配
+ */
+public final class RegexLiterals {
+
+    private RegexLiterals() {
+    }
+
+    /**
+     * 提取必需的字面量；顶层含有 | 或启用了注释模式 (?x) 时返回空列表（需要全量扫描）
+     */
+    public static List<String> extract(String regex) {
+        List<String> literals = new ArrayList<>();
+        StringBuilder run = new StringBuilder();
+        int depth = 0;
+        int length = regex.length();
+        int i = 0;
+        while (i < length) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                if (i + 1 >= length) {
+                    break;
+                }
+                char next = regex.charAt(i + 1);
+                if (next == 'Q') {
+                    int end = regex.indexOf("\\E", i + 2);
+                    int stop = end < 0 ? length : end;
+                    if (depth == 0) {
+                        run.append(regex, i + 2, stop);
+                    }
+                    i = end < 0 ? length : end + 2;
+                    continue;
+                }
+                if (Character.isLetterOrDigit(next)) {
+                    // \d \w \b \x41 \1 等：字符类、边界、转义码或反向引用，整个转义都不当作字面量
+                    if (depth == 0) {
+                        flush(run, literals);
+                    }
+                    i = escapeEnd(regex, i);
+                    continue;
+                }
+                if (depth == 0) {
+                    run.append(next);
+                }
+                i += 2;
+                continue;
+            }
+            if (c == '[') {
+                flush(run, literals);
+                i = skipClass(regex, i);
+                continue;
+            }
+            if (c == '(') {
+                flush(run, literals);
+                if (hasCommentsFlag(regex, i)) {
+                    return Collections.emptyList();
+                }
+                depth++;
+                i++;
+                continue;
+            }
+            if (c == ')') {
+                depth = Math.max(0, depth - 1);
+                i++;
+                continue;
+            }
+            if (depth > 0) {
+                // 分组内的内容可能被 | 或量词变成可选，不提取
+                i++;
+                continue;
+            }
+            switch (c) {
+                case '|':
+                    return Collections.emptyList();
+                case '*':
+                case '?':
+                    // 前一个字符可以不出现
+                    dropLast(run);
+                    flush(run, literals);
+                    i++;
+                    break;
+                case '{':
+                    int close = regex.indexOf('}', i);
+                    if (close < 0) {
+                        return Collections.emptyList();
+                    }
+                    if (regex.charAt(i + 1) == '0') {
+                        dropLast(run);
+                    }
+                    flush(run, literals);
+                    i = close + 1;
+                    break;
+                case '+':
+                case '.':
+                case '^':
+                case '$':
+                    flush(run, literals);
+                    i++;
+                    break;
+                default:
+                    run.append(c);
+                    i++;
+                    break;
+            }
+        }
+        flush(run, literals);
+        return literals;
+    }
+
+    private static void flush(StringBuilder run, List<String> literals) {
+        if (run.length() > 0) {
+            literals.add(run.toString());
+            run.setLength(0);
+        }
+    }
+
+    private static void dropLast(StringBuilder run) {
+        if (run.length() > 0) {
+            run.setLength(run.length() - 1);
+        }
+    }
+
+    /**
+     * 字母或数字转义之后的位置，带参数的转义整体跳过：
+     * \xhh、\x{h...h}、u 加四位十六进制、\0ooo、\cX、\k&lt;name&gt;、\p{..}、\N{..} 和反向引用 \12；
+     * 无法确定长度时多跳过几个字符，只会少提取字面量
+     */
+    private static int escapeEnd(String regex, int start) {
+        int length = regex.length();
+        int i = start + 2;
+        switch (regex.charAt(start + 1)) {
+            case 'x':
+                if (i < length && regex.charAt(i) == '{') {
+                    return closing(regex, i, '}');
+                }
+                return skipDigits(regex, i, 2, 16);
+            case 'u':
+                return skipDigits(regex, i, 4, 16);
+            case '0':
+                // \0n、\0nn，首位不超过 3 时是 \0mnn
+                return skipDigits(regex, i, i < length && regex.charAt(i) <= '3' ? 3 : 2, 8);
+            case 'c':
+                return Math.min(length, i + 1);
+            case 'k':
+                return i < length && regex.charAt(i) == '<' ? closing(regex, i, '>') : i;
+            case 'p':
+            case 'P':
+            case 'N':
+                if (i < length && regex.charAt(i) == '{') {
+                    return closing(regex, i, '}');
+                }
+                return Math.min(length, i + 1);
+            default:
+                // 反向引用：Java 会尽量多地读数字
+                return Character.isDigit(regex.charAt(start + 1)) ? skipDigits(regex, i, Integer.MAX_VALUE, 10) : i;
+        }
+    }
+
+    private static int skipDigits(String regex, int start, int max, int radix) {
+        int i = start;
+        while (i < regex.length() && i - start < max && Character.digit(regex.charAt(i), radix) >= 0) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int closing(String regex, int open, char close) {
+        int end = regex.indexOf(close, open);
+        return end < 0 ? regex.length() : end + 1;
+    }
+
+    /**
+     * 跳过字符类 [...]，支持嵌套、转义和首位的 ]，返回类之后的位置
+     */
+    private static int skipClass(String regex, int start) {
+        int i = start + 1;
+        if (i < regex.length() && regex.charAt(i) == '^') {
+            i++;
+        }
+        if (i < regex.length() && regex.charAt(i) == ']') {
+            i++;
+        }
+        int nesting = 1;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i = i + 1 < regex.length() && Character.isLetterOrDigit(regex.charAt(i + 1))
+                        ? escapeEnd(regex, i) : i + 2;
+                continue;
+            }
+            if (c == '[') {
+                nesting++;
+            } else if (c == ']' && --nesting == 0) {
+                return i + 1;
+            }
+            i++;
+        }
+        return regex.length();
+    }
+
+    /**
+     * 判断 (?flags) 或 (?flags:...) 是否开启了注释模式 x（此时空白和 # 之后的内容不参与匹配）
+     */
+    private static boolean hasCommentsFlag(String regex, int open) {
+        int i = open + 1;
+        if (i >= regex.length() || regex.charAt(i) != '?') {
+            return false;
+        }
+        for (i++; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == 'x') {
+                return true;
+            }
+            if (!Character.isLetter(c)) {
+                return false;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,142 @@
+package com.dawang.bookmark.search;
+
+import java.util.function.Consumer;
+
+/**
+ * 分词器
+ * 代码和英文按单词切分（转小写，驼峰和下划线标识符额外拆出子词），中日韩文字按二元组切分
+ */
+public final class Tokenizer {
+
+    private Tokenizer() {
+    }
+
+    /**
+     * 对文本分词，每个词元回调一次（同一词元可能重复出现）
+     */
+    public static void tokenize(CharSequence text, Consumer<String> sink) {
+        if (text == null) {
+            return;
+        }
+        int length = text.length();
+        int wordStart = -1;
+        int cjkStart = -1;
+        int i = 0;
+        while (i < length) {
+            int cp = Character.codePointAt(text, i);
+            int next = i + Character.charCount(cp);
+            if (isCjk(cp)) {
+                if (wordStart >= 0) {
+                    emitWord(text, wordStart, i, sink);
+                    wordStart = -1;
+                }
+                if (cjkStart < 0) {
+                    cjkStart = i;
+                }
+            } else {
+                if (cjkStart >= 0) {
+                    emitCjk(text, cjkStart, i, sink);
+                    cjkStart = -1;
+                }
+                if (Character.isLetterOrDigit(cp) || cp == '_') {
+                    if (wordStart < 0) {
+                        wordStart = i;
+                    }
+                } else if (wordStart >= 0) {
+                    emitWord(text, wordStart, i, sink);
+                    wordStart = -1;
+                }
+            }
+            i = next;
+        }
+        if (wordStart >= 0) {
+            emitWord(text, wordStart, length, sink);
+        }
+        if (cjkStart >= 0) {
+            emitCjk(text, cjkStart, length, sink);
+        }
+    }
+
+    /**
+     * 判断字符是否为中日韩文字
+     */
+    public static boolean isCjk(int cp) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(cp);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL;
+    }
+
+    /**
+     * 单词整体作为词元；驼峰、下划线、字母数字交界处再拆出长度不小于 2 的子词
+     */
+    private static void emitWord(CharSequence text, int start, int end, Consumer<String> sink) {
+        String word = text.subSequence(start, end).toString();
+        sink.accept(word.toLowerCase());
+        boolean split = false;
+        int partStart = 0;
+        for (int i = 1; i < word.length(); i++) {
+            if (isPartBoundary(word, i)) {
+                emitPart(word, partStart, i, sink);
+                partStart = i;
+                split = true;
+            }
+        }
+        if (split) {
+            emitPart(word, partStart, word.length(), sink);
+        }
+    }
+
+    private static void emitPart(String word, int from, int to, Consumer<String> sink) {
+        while (from < to && word.charAt(from) == '_') {
+            from++;
+        }
+        while (to > from && word.charAt(to - 1) == '_') {
+            to--;
+        }
+        if (to - from >= 2) {
+            sink.accept(word.substring(from, to).toLowerCase());
+        }
+    }
+
+    private static boolean isPartBoundary(String word, int i) {
+        char prev = word.charAt(i - 1);
+        char c = word.charAt(i);
+        if (c == '_') {
+            return true;
+        }
+        if (Character.isLowerCase(prev) && Character.isUpperCase(c)) {
+            return true;
+        }
+        // HTTPServer -> HTTP | Server
+        if (Character.isUpperCase(prev) && Character.isUpperCase(c) && i + 1 < word.length()
+                && Character.isLowerCase(word.charAt(i + 1))) {
+            return true;
+        }
+        return Character.isDigit(prev) != Character.isDigit(c) && prev != '_';
+    }
+
+    /**
+     * 连续中日韩文字按二元组切分，单字成词（查询中的单字由 InvertedIndex 按前缀匹配二元组）
+     */
+    private static void emitCjk(CharSequence text, int start, int end, Consumer<String> sink) {
+        int first = Character.codePointAt(text, start);
+        int firstEnd = start + Character.charCount(first);
+        if (firstEnd >= end) {
+            sink.accept(text.subSequence(start, end).toString());
+            return;
+        }
+        int i = start;
+        while (i < end) {
+            int cp = Character.codePointAt(text, i);
+            int next = i + Character.charCount(cp);
+            if (next >= end) {
+                break;
+            }
+            int cp2 = Character.codePointAt(text, next);
+            sink.accept(text.subSequence(i, next + Character.charCount(cp2)).toString());
+            i = next;
+        }
+    }
+}
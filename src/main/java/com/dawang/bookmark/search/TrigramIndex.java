@@ -0,0 +1,337 @@
+package com.dawang.bookmark.search;
+
+import com.dawang.bookmark.model.BookmarkItem;
+import com.dawang.bookmark.storage.BlobStore;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 正文三元组索引，用于子串和正则搜索的候选预筛
+ * 以正文内容哈希为单位建索引（相同正文只索引一次），三元组按小写字符计算，因此对大小写不敏感的查询同样适用
+ * 正文不保存自己的三元组：删除时只把序号置空，已删除正文的字符数累计到一定比例后再遍历一次倒排表清理
+ * 非线程安全，由 BookmarkSearchService 加锁访问
+ */
+public class TrigramIndex {
+
+    // 分块排序去重，避免超大正文一次性分配 (长度 - 2) 个 long
+    private static final int CHUNK = 1 << 20;
+    // 已删除正文的字符数超过这个值且超过现有正文的一半时清理倒排表
+    private static final long PURGE_MIN_CHARS = 1 << 20;
+
+    private final Map<Long, PostingList> postings = new HashMap<>();
+    private final Map<String, Body> bodiesByHash = new HashMap<>();
+    private final Map<String, Body> bodiesByItemId = new HashMap<>();
+    // 正文序号 -> 正文，序号单调递增，已删除的位置为 null
+    private final List<Body> bodiesByOrdinal = new ArrayList<>();
+    private long indexedChars;
+    // 已删除但倒排表中还有残留序号的正文字符数
+    private long deadChars;
+
+    /**
+     * 收藏正文的内容哈希
+     */
+    public static String hashOf(BookmarkItem item, String content) {
+        return item.getContentRef() != null ? item.getContentRef() : BlobStore.fingerprint(content);
+    }
+
+    public boolean containsBody(String hash) {
+        return bodiesByHash.containsKey(hash);
+    }
+
+    /**
+     * 计算三元组，不访问索引状态，可以在锁外执行
+     *
+     * @param content 正文；该正文已建过索引时传 null，只登记引用
+     */
+    public static PreparedBody prepare(BookmarkItem item, String hash, String content) {
+        return new PreparedBody(item, hash, content != null ? trigrams(content) : null,
+                content != null ? content.length() : 0);
+    }
+
+    /**
+     * 添加或替换一条收藏的正文引用
+     */
+    public void add(PreparedBody prepared) {
+        BookmarkItem item = prepared.item;
+        if (item == null || item.getId() == null) {
+            return;
+        }
+        Body current = bodiesByItemId.get(item.getId());
+        if (current != null && current.hash.equals(prepared.hash)) {
+            // 正文未变（如仅修改标签），只更新引用的收藏实例
+            current.items.put(item.getId(), item);
+            return;
+        }
+        remove(item.getId());
+        Body body = bodiesByHash.get(prepared.hash);
+        if (body == null) {
+            if (prepared.trigrams == null) {
+                return;
+            }
+            body = new Body(bodiesByOrdinal.size(), prepared.hash, prepared.length);
+            bodiesByOrdinal.add(body);
+            bodiesByHash.put(body.hash, body);
+            indexedChars += body.length;
+            for (long gram : prepared.trigrams) {
+                postings.computeIfAbsent(gram, k -> new PostingList()).append(body.ordinal);
+            }
+        }
+        body.items.put(item.getId(), item);
+        bodiesByItemId.put(item.getId(), body);
+    }
+
+    /**
+     * 移除一条收藏的引用，正文不再被引用时置空其序号，倒排表中的残留序号留给 purge 成批清理
+     */
+    public void remove(String id) {
+        Body body = bodiesByItemId.remove(id);
+        if (body == null) {
+            return;
+        }
+        body.items.remove(id);
+        if (!body.items.isEmpty()) {
+            return;
+        }
+        bodiesByHash.remove(body.hash);
+        bodiesByOrdinal.set(body.ordinal, null);
+        indexedChars -= body.length;
+        deadChars += body.length;
+        if (deadChars > Math.max(PURGE_MIN_CHARS, indexedChars / 2)) {
+            purge();
+        }
+    }
+
+    /**
+     * 遍历一次倒排表，去掉已删除正文的序号，同时把现有正文重新紧凑编号（保序，倒排表仍然有序）
+     */
+    private void purge() {
+        int[] remap = new int[bodiesByOrdinal.size()];
+        List<Body> live = new ArrayList<>(bodiesByHash.size());
+        for (int i = 0; i < remap.length; i++) {
+            Body body = bodiesByOrdinal.get(i);
+            if (body == null) {
+                remap[i] = -1;
+            } else {
+                remap[i] = live.size();
+                body.ordinal = live.size();
+                live.add(body);
+            }
+        }
+        bodiesByOrdinal.clear();
+        bodiesByOrdinal.addAll(live);
+        for (Iterator<PostingList> it = postings.values().iterator(); it.hasNext(); ) {
+            PostingList list = it.next();
+            list.remap(remap);
+            if (list.size == 0) {
+                it.remove();
+            }
+        }
+        deadChars = 0;
+    }
+
+    public void clear() {
+        postings.clear();
+        bodiesByHash.clear();
+        bodiesByItemId.clear();
+        bodiesByOrdinal.clear();
+        indexedChars = 0;
+        deadChars = 0;
+    }
+
+    public int bodyCount() {
+        return bodiesByHash.size();
+    }
+
+    public int trigramCount() {
+        return postings.size();
+    }
+
+    public long indexedChars() {
+        return indexedChars;
+    }
+
+    /**
+     * 返回包含所有字面量的全部三元组的正文（候选的超集）；没有长度不小于 3 的字面量时返回全部正文
+     * 返回的是快照，可以在锁外校验
+     */
+    public List<Candidate> candidates(List<String> literals) {
+        List<PostingList> lists = new ArrayList<>();
+        for (String literal : literals) {
+            for (long gram : trigrams(literal)) {
+                PostingList list = postings.get(gram);
+                if (list == null) {
+                    return new ArrayList<>();
+                }
+                lists.add(list);
+            }
+        }
+        List<Candidate> result = new ArrayList<>();
+        if (lists.isEmpty()) {
+            for (Body body : bodiesByOrdinal) {
+                if (body != null) {
+                    result.add(body.snapshot());
+                }
+            }
+            return result;
+        }
+        // 从最短的倒排表开始求交集
+        lists.sort((a, b) -> Integer.compare(a.size, b.size));
+        PostingList shortest = lists.get(0);
+        int[] cursors = new int[lists.size()];
+        outer:
+        for (int p = 0; p < shortest.size; p++) {
+            int ordinal = shortest.docs[p];
+            for (int i = 1; i < lists.size(); i++) {
+                PostingList list = lists.get(i);
+                int found = Arrays.binarySearch(list.docs, cursors[i], list.size, ordinal);
+                if (found < 0) {
+                    cursors[i] = -found - 1;
+                    if (cursors[i] >= list.size) {
+                        break outer;
+                    }
+                    continue outer;
+                }
+                cursors[i] = found;
+            }
+            Body body = bodiesByOrdinal.get(ordinal);
+            if (body != null) {
+                result.add(body.snapshot());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 文本中所有不重复的小写三元组（每个 char 16 位，拼成 48 位），升序排列
+     */
+    static long[] trigrams(CharSequence text) {
+        int length = text.length();
+        if (length < 3) {
+            return new long[0];
+        }
+        long[] distinct = new long[0];
+        long[] chunk = new long[Math.min(CHUNK, length - 2)];
+        int filled = 0;
+        long gram = 0;
+        for (int i = 0; i < length; i++) {
+            gram = ((gram << 16) | Character.toLowerCase(text.charAt(i))) & 0xFFFF_FFFF_FFFFL;
+            if (i < 2) {
+                continue;
+            }
+            chunk[filled++] = gram;
+            if (filled == chunk.length) {
+                distinct = mergeDistinct(distinct, chunk, filled);
+                filled = 0;
+            }
+        }
+        return filled > 0 ? mergeDistinct(distinct, chunk, filled) : distinct;
+    }
+
+    /**
+     * 对 chunk 前 n 项排序去重，再与已排序去重的 distinct 合并
+     */
+    private static long[] mergeDistinct(long[] distinct, long[] chunk, int n) {
+        Arrays.sort(chunk, 0, n);
+        long[] merged = new long[distinct.length + n];
+        int a = 0;
+        int b = 0;
+        int m = 0;
+        while (a < distinct.length || b < n) {
+            long next;
+            if (b >= n || (a < distinct.length && distinct[a] <= chunk[b])) {
+                next = distinct[a++];
+            } else {
+                next = chunk[b++];
+            }
+            if (m == 0 || merged[m - 1] != next) {
+                merged[m++] = next;
+            }
+        }
+        return m == merged.length ? merged : Arrays.copyOf(merged, m);
+    }
+
+    /**
+     * 已计算三元组的正文
+     */
+    public static class PreparedBody {
+        final BookmarkItem item;
+        final String hash;
+        final long[] trigrams;
+        final int length;
+
+        PreparedBody(BookmarkItem item, String hash, long[] trigrams, int length) {
+            this.item = item;
+            this.hash = hash;
+            this.trigrams = trigrams;
+            this.length = length;
+        }
+    }
+
+    /**
+     * 候选正文快照：内容哈希和引用它的收藏
+     */
+    public static class Candidate {
+        public final String hash;
+        public final List<BookmarkItem> items;
+
+        Candidate(String hash, List<BookmarkItem> items) {
+            this.hash = hash;
+            this.items = items;
+        }
+    }
+
+    private static class Body {
+        int ordinal;
+        final String hash;
+        final int length;
+        final Map<String, BookmarkItem> items = new LinkedHashMap<>();
+
+        Body(int ordinal, String hash, int length) {
+            this.ordinal = ordinal;
+            this.hash = hash;
+            this.length = length;
+        }
+
+        Candidate snapshot() {
+            return new Candidate(hash, new ArrayList<>(items.values()));
+        }
+    }
+
+    /**
+     * 倒排表：按正文序号升序排列
+     */
+    private static class PostingList {
+        int[] docs = new int[2];
+        int size;
+
+        void append(int ordinal) {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+            }
+            docs[size++] = ordinal;
+        }
+
+        /**
+         * 按 remap 改写序号，映射为 -1 的（已删除）去掉
+         */
+        void remap(int[] remap) {
+            int n = 0;
+            for (int i = 0; i < size; i++) {
+                int ordinal = remap[docs[i]];
+                if (ordinal >= 0) {
+                    docs[n++] = ordinal;
+                }
+            }
+            size = n;
+            if (size < docs.length / 4) {
+                docs = Arrays.copyOf(docs, Math.max(2, size));
+            }
+        }
+    }
+}
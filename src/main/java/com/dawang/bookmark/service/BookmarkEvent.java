@@ -0,0 +1,37 @@
+package com.dawang.bookmark.service;
+
+import com.dawang.bookmark.model.BookmarkItem;
+
+/**
+ * 收藏变更事件
+ */
+public class BookmarkEvent {
+
+    public enum Type {
+        ADDED, REMOVED, UPDATED, CLEARED
+    }
+
+    private final Type type;
+    private final BookmarkItem item;
+
+    public BookmarkEvent(Type type, BookmarkItem item) {
+        this.type = type;
+        this.item = item;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * 变更的收藏项，CLEARED 事件为 null
+     */
+    public BookmarkItem getItem() {
+        return item;
+    }
+
+    @Override
+    public String toString() {
+        return type + (item != null ? " " + item.getId() : "");
+    }
+}
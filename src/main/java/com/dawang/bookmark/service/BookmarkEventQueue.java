@@ -0,0 +1,96 @@
+package com.dawang.bookmark.service;
+
+import com.dawang.bookmark.model.BookmarkItem;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ModalityState;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 收藏变更事件队列
+ * 同一 EDT 周期内的事件按收藏 ID 合并，下一次 EDT 调度时一次性发布到 BookmarkListener.TOPIC
+ */
+class BookmarkEventQueue {
+
+    private final Map<String, BookmarkEvent> pending = new LinkedHashMap<>();
+    private boolean cleared;
+    private boolean scheduled;
+
+    void added(BookmarkItem item) {
+        post(new BookmarkEvent(BookmarkEvent.Type.ADDED, item));
+    }
+
+    void removed(BookmarkItem item) {
+        post(new BookmarkEvent(BookmarkEvent.Type.REMOVED, item));
+    }
+
+    void updated(BookmarkItem item) {
+        post(new BookmarkEvent(BookmarkEvent.Type.UPDATED, item));
+    }
+
+    void cleared() {
+        post(new BookmarkEvent(BookmarkEvent.Type.CLEARED, null));
+    }
+
+    private synchronized void post(BookmarkEvent event) {
+        if (event.getType() == BookmarkEvent.Type.CLEARED) {
+            // 清空之前的变更都不再需要
+            pending.clear();
+            cleared = true;
+        } else {
+            String id = event.getItem().getId();
+            BookmarkEvent previous = pending.get(id);
+            BookmarkEvent.Type previousType = previous != null ? previous.getType() : null;
+            switch (event.getType()) {
+                case ADDED:
+                    // 同一周期内先删后加，视为更新
+                    pending.put(id, previousType == BookmarkEvent.Type.REMOVED
+                            ? new BookmarkEvent(BookmarkEvent.Type.UPDATED, event.getItem())
+                            : event);
+                    break;
+                case UPDATED:
+                    // 新增事件已携带最新的收藏项
+                    if (previousType != BookmarkEvent.Type.ADDED) {
+                        pending.put(id, event);
+                    }
+                    break;
+                case REMOVED:
+                    // 同一周期内先加后删，互相抵消
+                    if (previousType == BookmarkEvent.Type.ADDED) {
+                        pending.remove(id);
+                    } else {
+                        pending.put(id, event);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        if (!scheduled) {
+            scheduled = true;
+            ApplicationManager.getApplication().invokeLater(this::flush, ModalityState.any());
+        }
+    }
+
+    private void flush() {
+        List<BookmarkEvent> events;
+        synchronized (this) {
+            scheduled = false;
+            events = new ArrayList<>(pending.size() + 1);
+            if (cleared) {
+                events.add(new BookmarkEvent(BookmarkEvent.Type.CLEARED, null));
+            }
+            events.addAll(pending.values());
+            pending.clear();
+            cleared = false;
+        }
+        if (!events.isEmpty()) {
+            ApplicationManager.getApplication().getMessageBus()
+                    .syncPublisher(BookmarkListener.TOPIC)
+                    .bookmarksChanged(events);
+        }
+    }
+}
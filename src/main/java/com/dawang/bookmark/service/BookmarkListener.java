@@ -0,0 +1,17 @@
+package com.dawang.bookmark.service;
+
+import com.intellij.util.messages.Topic;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+/**
+ * 收藏变更监听器（应用级消息总线）
+ * 同一 EDT 周期内的变更会合并成一批，在 EDT 上投递
+ */
+public interface BookmarkListener {
+
+    Topic<BookmarkListener> TOPIC = Topic.create("Bookmark changes", BookmarkListener.class);
+
+    void bookmarksChanged(@NotNull List<BookmarkEvent> events);
+}
@@ -2,26 +2,144 @@ package com.dawang.bookmark.service;
 
 import com.dawang.bookmark.model.BookmarkItem;
 import com.dawang.bookmark.model.BookmarkState;
+import com.dawang.bookmark.render.HtmlCache;
+import com.dawang.bookmark.render.MarkdownRenderer;
+import com.dawang.bookmark.storage.BlobStore;
+import com.dawang.bookmark.storage.ContentPool;
+import com.dawang.bookmark.storage.StateJournal;
+import com.dawang.bookmark.storage.StateSnapshot;
+import com.intellij.openapi.Disposable;
 import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ModalityState;
 import com.intellij.openapi.components.PersistentStateComponent;
 import com.intellij.openapi.components.State;
 import com.intellij.openapi.components.Storage;
+import com.intellij.openapi.project.Project;
+import com.intellij.util.concurrency.AppExecutorUtil;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 /**
  * 收藏状态持久化服务
+ * 收藏按项目分片存储（StateShard）：项目打开时在后台加载其分片，关闭时卸载；不属于任何项目的收藏放在全局分片
+ * 每次变更追加一条记录到所属分片的变更日志，由 WriteBehindSaver 批量写盘并 fsync；日志超过阈值时在后台压缩进快照文件
+ * 快照为二进制格式（BinaryStateCodec）；XML 只用于导入导出和迁移旧数据
  */
 @State(name = "BookmarkPluginState", storages = @Storage("bookmark-plugin.xml"))
-public class BookmarkStateService implements PersistentStateComponent<BookmarkState> {
+public class BookmarkStateService implements PersistentStateComponent<BookmarkState>, Disposable {
 
+    private static final com.intellij.openapi.diagnostic.Logger LOG = com.intellij.openapi.diagnostic.Logger
+            .getInstance(BookmarkStateService.class);
+
+    // 删除收藏后延迟多久清理不再被引用的正文（存在未加载的分片时）
+    private static final long SWEEP_DELAY_SECONDS = 30;
+
+    // 已加载分片的收藏
     private BookmarkState state = new BookmarkState();
+    // 修改状态和为写盘复制列表时持有；修改只发生在 EDT，EDT 上的读取不需要加锁
+    private final Object stateLock = new Object();
+
+    private final Path storageRoot = Paths.get(
+            com.intellij.openapi.application.PathManager.getConfigPath(), "bookmark-plugin");
+    // 项目分片目录：projects/{项目 locationHash}
+    private final Path projectsRoot = storageRoot.resolve("projects");
+    // 全局分片沿用原来的 state.bin 和 journal.log
+    private final StateShard globalShard = new StateShard(null, storageRoot, "全局", null, stateLock, this::itemsOf);
+    // 已加载（或正在加载）的项目分片，只在 EDT 上修改
+    private final Map<String, StateShard> projectShards = new ConcurrentHashMap<>();
+    // 已加载收藏所属的项目分片，不在其中的属于全局分片；修改时持有 stateLock
+    private final Map<String, StateShard> shardById = new HashMap<>();
+    // 磁盘上存在但收藏尚未并入状态的项目分片；存在时不能仅凭引用计数删除正文
+    private final Set<String> closedShards = ConcurrentHashMap.newKeySet();
+    // 已打开的项目（locationHash）
+    private final Set<String> openProjects = new HashSet<>();
+    // 工具窗口显示所有项目时额外加载的分片，以及正在这样显示的窗口数
+    private final List<StateShard> pinnedShards = new ArrayList<>();
+    private int allProjectsViewers;
+
+    // 引用计数归零但可能仍被未加载分片引用的正文，由 sweepOrphans 确认后删除
+    private final Set<String> orphanCandidates = new HashSet<>();
+    private boolean sweepScheduled;
+    // 每卸载一个分片加一，清理期间有分片卸载时重新清理
+    private int unloadGeneration;
+
+    // 平台从旧版 bookmark-plugin.xml 加载、尚未迁移到全局分片的状态
+    private volatile BookmarkState legacyState;
+    // 全局分片安装前已加载完成的项目分片，全局分片安装后再并入（只在 EDT 访问）
+    private final Map<StateShard, List<BookmarkItem>> pendingShards = new LinkedHashMap<>();
+    private volatile boolean disposed;
+
+    private final WriteBehindSaver saver = new WriteBehindSaver(this::persist);
+
+    // 变更事件按 EDT 周期合并后发布到 BookmarkListener.TOPIC
+    private final BookmarkEventQueue events = new BookmarkEventQueue();
+
+    // 正文存放在独立的内容仓库中，快照只保存元数据和内容引用；相同正文只存一份（各分片共用）
+    private final ContentPool contentPool = new ContentPool(new BlobStore(storageRoot.resolve("blobs")));
+
+    // Markdown 渲染结果缓存，按正文哈希索引，放在系统缓存目录下（渲染规则变化时换目录）
+    private final HtmlCache htmlCache = new HtmlCache(new BlobStore(Paths.get(
+            com.intellij.openapi.application.PathManager.getSystemPath(), "bookmark-plugin",
+            "html-v" + MarkdownRenderer.VERSION)));
+
+    /**
+     * 全局分片和项目分片一样在后台读取快照、重放日志，再在 EDT 上并入状态，构造时不做磁盘读取
+     */
+    public BookmarkStateService() {
+        BookmarkItem.setContentLoader(this::loadContent);
+        AppExecutorUtil.getAppExecutorService().execute(() -> {
+            closedShards.addAll(listProjectShards());
+            List<BookmarkItem> items = globalShard.load();
+            ApplicationManager.getApplication().invokeLater(() -> installGlobalShard(items), ModalityState.any());
+        });
+    }
+
+    /**
+     * 磁盘上已有的项目分片
+     */
+    private List<String> listProjectShards() {
+        List<String> keys = new ArrayList<>();
+        if (!Files.isDirectory(projectsRoot)) {
+            return keys;
+        }
+        try (Stream<Path> dirs = Files.list(projectsRoot)) {
+            dirs.filter(Files::isDirectory).forEach(dir -> keys.add(dir.getFileName().toString()));
+        } catch (IOException e) {
+            LOG.warn("Failed to list bookmark shards in " + projectsRoot, e);
+        }
+        return keys;
+    }
 
     @Override
     public @Nullable BookmarkState getState() {
+        // 快照可用后交给平台一个空状态，平台不再重写整个收藏列表（旧文件中的数据随之清除）
+        if (globalShard.isSnapshotAvailable()) {
+            return new BookmarkState();
+        }
+        // 尚未迁移时原样交回，全局分片加载完成前不能用不完整的状态覆盖旧文件
+        BookmarkState legacy = legacyState;
+        if (legacy != null) {
+            return legacy;
+        }
         // 确保返回的状态对象不为 null
         if (state == null) {
             state = new BookmarkState();
@@ -29,15 +147,331 @@ public class BookmarkStateService implements PersistentStateComponent<BookmarkSt
         return state;
     }
 
+    /**
+     * 平台从 bookmark-plugin.xml 加载的状态（可能在任意线程、全局分片加载完成前调用）：
+     * 先记下，全局分片安装后若没有快照再迁移进去，写盘交给保存线程
+     */
     @Override
     public void loadState(@NotNull BookmarkState state) {
-        this.state = state;
-        // 确保 bookmarks 列表不为 null
-        if (this.state.getBookmarks() == null) {
-            this.state.setBookmarks(new java.util.ArrayList<>());
+        if (globalShard.isSnapshotAvailable()) {
+            return;
+        }
+        legacyState = state;
+        if (globalShard.isInstalled()) {
+            ApplicationManager.getApplication().invokeLater(this::migrateLegacyState, ModalityState.any());
         }
     }
 
+    /**
+     * 把后台加载好的全局分片并入状态（EDT），再并入等待中的项目分片、加载服务创建前已打开的项目
+     * 加载期间新增到全局分片的收藏没有写进日志（StateShard.journal 会请求压缩），由压缩一并写入
+     */
+    private void installGlobalShard(List<BookmarkItem> items) {
+        if (disposed) {
+            return;
+        }
+        List<BookmarkItem> added = new ArrayList<>(items.size());
+        synchronized (stateLock) {
+            globalShard.markInstalled();
+            for (BookmarkItem item : items) {
+                if (item.getId() == null || state.findBookmark(item.getId()) != null) {
+                    continue;
+                }
+                state.addBookmark(item);
+                added.add(item);
+            }
+        }
+        registerContent(globalShard, added);
+        // 已打开的工具窗口需要全量重新加载
+        events.cleared();
+        migrateLegacyState();
+        if (globalShard.isCompactRequested()) {
+            saver.markDirty();
+        }
+        for (Map.Entry<StateShard, List<BookmarkItem>> entry : pendingShards.entrySet()) {
+            installShard(entry.getKey(), entry.getValue());
+        }
+        pendingShards.clear();
+        // 服务创建前已经打开的项目（之后打开的由 ProjectShardListener 通知）
+        for (Project project : com.intellij.openapi.project.ProjectManager.getInstance().getOpenProjects()) {
+            projectOpened(project);
+        }
+    }
+
+    /**
+     * 旧版 bookmark-plugin.xml 中的收藏并入全局分片（EDT）；全局快照已存在时丢弃
+     */
+    private void migrateLegacyState() {
+        BookmarkState legacy = legacyState;
+        if (legacy == null) {
+            return;
+        }
+        if (globalShard.isSnapshotAvailable()) {
+            legacyState = null;
+            return;
+        }
+        List<BookmarkItem> added = new ArrayList<>();
+        synchronized (stateLock) {
+            for (BookmarkItem item : legacy.getBookmarks()) {
+                if (item.getId() == null || state.findBookmark(item.getId()) != null) {
+                    continue;
+                }
+                state.addBookmark(item);
+                added.add(item);
+            }
+        }
+        registerContent(globalShard, added);
+        for (BookmarkItem item : added) {
+            events.added(item);
+        }
+        legacyState = null;
+        globalShard.requestCompaction();
+        saver.markDirty();
+    }
+
+    /**
+     * 登记新加载收藏的正文引用；旧版本把正文内联保存，加载后迁移到内容仓库
+     */
+    private void registerContent(StateShard shard, List<BookmarkItem> items) {
+        List<BookmarkItem> inline = new ArrayList<>();
+        for (BookmarkItem item : items) {
+            if (item.isContentInline()) {
+                inline.add(item);
+            } else {
+                contentPool.retain(item.getContentRef());
+            }
+        }
+        if (!inline.isEmpty()) {
+            // 迁移后只保存内容引用
+            shard.requestCompaction();
+            migrateInlineContent(inline);
+        }
+    }
+
+    /**
+     * 项目打开：在后台加载其分片（在 EDT 调用）
+     */
+    public void projectOpened(Project project) {
+        if (!ApplicationManager.getApplication().isDispatchThread()) {
+            ApplicationManager.getApplication().invokeLater(() -> projectOpened(project), ModalityState.any());
+            return;
+        }
+        if (project.isDisposed() || project.isDefault() || project.getBasePath() == null
+                || !openProjects.add(project.getLocationHash())) {
+            return;
+        }
+        String key = project.getLocationHash();
+        StateShard shard = projectShards.get(key);
+        if (shard != null) {
+            shard.users++;
+            return;
+        }
+        shard = new StateShard(key, projectsRoot.resolve(key), project.getName(), project.getBasePath(), stateLock,
+                this::itemsOf);
+        shard.users = 1;
+        projectShards.put(key, shard);
+        loadShard(shard);
+    }
+
+    /**
+     * 项目关闭：没有其他使用者时卸载其分片（在 EDT 调用）
+     */
+    public void projectClosed(Project project) {
+        if (!openProjects.remove(project.getLocationHash())) {
+            return;
+        }
+        StateShard shard = projectShards.get(project.getLocationHash());
+        if (shard != null && --shard.users <= 0) {
+            unloadShard(shard);
+        }
+    }
+
+    /**
+     * 工具窗口显示 / 不再显示所有项目的收藏：加载或卸载未打开项目的分片（在 EDT 调用）
+     */
+    public void setShowAllProjects(boolean show) {
+        if (show) {
+            if (allProjectsViewers++ > 0) {
+                return;
+            }
+            for (StateShard shard : projectShards.values()) {
+                shard.users++;
+                pinnedShards.add(shard);
+            }
+            for (String key : new ArrayList<>(closedShards)) {
+                if (projectShards.containsKey(key)) {
+                    continue;
+                }
+                StateShard shard = StateShard.open(key, projectsRoot.resolve(key), stateLock, this::itemsOf);
+                if (shard == null) {
+                    continue;
+                }
+                shard.users = 1;
+                projectShards.put(key, shard);
+                pinnedShards.add(shard);
+                loadShard(shard);
+            }
+        } else {
+            if (allProjectsViewers == 0 || --allProjectsViewers > 0) {
+                return;
+            }
+            for (StateShard shard : pinnedShards) {
+                if (--shard.users <= 0) {
+                    unloadShard(shard);
+                }
+            }
+            pinnedShards.clear();
+        }
+    }
+
+    private void loadShard(StateShard shard) {
+        AppExecutorUtil.getAppExecutorService().execute(() -> {
+            List<BookmarkItem> items = shard.load();
+            ApplicationManager.getApplication().invokeLater(() -> installShard(shard, items), ModalityState.any());
+        });
+    }
+
+    /**
+     * 把加载好的分片并入状态（EDT）；全局分片中位于该项目目录下的收藏（分片之前的旧数据）一并移入
+     */
+    private void installShard(StateShard shard, List<BookmarkItem> items) {
+        if (projectShards.get(shard.getKey()) != shard) {
+            return; // 加载期间已卸载
+        }
+        if (!globalShard.isInstalled()) {
+            // 需要先有全局分片的收藏，才能把其中位于该项目目录下的移过来
+            pendingShards.put(shard, items);
+            return;
+        }
+        List<BookmarkItem> added = new ArrayList<>(items.size());
+        List<BookmarkItem> moved = new ArrayList<>();
+        synchronized (stateLock) {
+            shard.markInstalled();
+            for (BookmarkItem item : items) {
+                // 同一收藏已由其他分片加载时只保留先加载的
+                if (item.getId() == null || state.findBookmark(item.getId()) != null) {
+                    continue;
+                }
+                state.addBookmark(item);
+                shardById.put(item.getId(), shard);
+                added.add(item);
+            }
+            for (BookmarkItem item : state.getBookmarks()) {
+                if (!shardById.containsKey(item.getId()) && shard.contains(item.getFilePath())) {
+                    moved.add(item);
+                }
+            }
+            for (BookmarkItem item : moved) {
+                shardById.put(item.getId(), shard);
+                shard.journal(j -> j.put(item));
+                globalShard.journal(j -> j.remove(item.getId()));
+            }
+        }
+        closedShards.remove(shard.getKey());
+        registerContent(shard, added);
+        for (BookmarkItem item : added) {
+            events.added(item);
+        }
+        if (!moved.isEmpty() || shard.isCompactRequested()) {
+            saver.markDirty();
+        }
+    }
+
+    /**
+     * 卸载分片（EDT）：关闭其日志并从状态中移除其收藏，正文引用随之释放但不删除存储的正文
+     */
+    private void unloadShard(StateShard shard) {
+        projectShards.remove(shard.getKey());
+        List<BookmarkItem> removed;
+        synchronized (stateLock) {
+            // 关闭后保存线程不会再为它写快照，否则可能把移除后的空列表写进快照
+            shard.close();
+            Set<String> ids = new HashSet<>();
+            for (Iterator<Map.Entry<String, StateShard>> it = shardById.entrySet().iterator(); it.hasNext();) {
+                Map.Entry<String, StateShard> entry = it.next();
+                if (entry.getValue() == shard) {
+                    it.remove();
+                    ids.add(entry.getKey());
+                }
+            }
+            removed = state.removeAll(ids);
+            unloadGeneration++;
+        }
+        closedShards.add(shard.getKey());
+        for (BookmarkItem item : removed) {
+            contentPool.release(item.getContentRef());
+            events.removed(item);
+        }
+    }
+
+    /**
+     * 本分片当前的收藏（持有 stateLock 时调用）
+     */
+    private List<BookmarkItem> itemsOf(StateShard shard) {
+        List<BookmarkItem> items = new ArrayList<>();
+        for (BookmarkItem item : state.getBookmarks()) {
+            if (shardOf(item) == shard) {
+                items.add(item);
+            }
+        }
+        return items;
+    }
+
+    private StateShard shardOf(BookmarkItem item) {
+        StateShard shard = shardById.get(item.getId());
+        return shard != null ? shard : globalShard;
+    }
+
+    /**
+     * 新收藏所属的分片：文件在某个已加载项目的目录下时归该项目，否则归收藏时所在的项目，都没有时归全局分片
+     */
+    private StateShard shardFor(@Nullable Project project, BookmarkItem item) {
+        for (StateShard shard : projectShards.values()) {
+            if (shard.isInstalled() && shard.contains(item.getFilePath())) {
+                return shard;
+            }
+        }
+        StateShard shard = project != null ? projectShards.get(project.getLocationHash()) : null;
+        return shard != null && shard.isInstalled() ? shard : globalShard;
+    }
+
+    /**
+     * 写盘（在保存线程执行）：各分片写入并 fsync 积累的日志记录，日志过大时压缩
+     * 项目分片先于全局分片写入：收藏从全局移入项目分片时，中途崩溃最多留下两份，不会丢失
+     */
+    private long persist() throws IOException {
+        long bytes = 0;
+        IOException failure = null;
+        List<StateShard> shards = new ArrayList<>(projectShards.values());
+        shards.add(globalShard);
+        for (StateShard shard : shards) {
+            try {
+                bytes += shard.persist();
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return bytes;
+    }
+
+    /**
+     * IDE 关闭时写入尚未保存的变更
+     */
+    @Override
+    public void dispose() {
+        disposed = true;
+        saver.flushNow();
+        for (StateShard shard : projectShards.values()) {
+            shard.close();
+        }
+        globalShard.close();
+    }
+
     /**
      * 获取服务实例
      */
@@ -57,9 +491,18 @@ public class BookmarkStateService implements PersistentStateComponent<BookmarkSt
     }
 
     /**
-     * 添加收藏项
+     * 添加收藏项，按文件路径归入所在项目的分片
      */
     public void addBookmark(BookmarkItem item) {
+        addBookmark(null, item);
+    }
+
+    /**
+     * 添加收藏项
+     *
+     * @param project 收藏时所在的项目，文件不在任何已打开项目的目录下（如控制台输出）时归入该项目的分片
+     */
+    public void addBookmark(@Nullable Project project, BookmarkItem item) {
         if (item == null) {
             return;
         }
@@ -71,46 +514,70 @@ public class BookmarkStateService implements PersistentStateComponent<BookmarkSt
         if (state == null) {
             state = new BookmarkState();
         }
-        // 确保 bookmarks 列表已初始化
-        if (state.getBookmarks() == null) {
-            state.setBookmarks(new java.util.ArrayList<>());
+        if (state.findBookmark(item.getId()) != null) {
+            return;
         }
-        // 确保 BookmarkState 的 bookmarks 列表不为 null
-        if (state.bookmarks == null) {
-            state.bookmarks = new java.util.ArrayList<>();
+        boolean inline = item.isContentInline();
+        if (!inline) {
+            // 正文已由 storeContent 写入，收藏登记自己的引用（临时引用由调用方释放），不加载到堆上
+            contentPool.retain(item.getContentRef());
         }
-        try {
+        StateShard shard = shardFor(project, item);
+        synchronized (stateLock) {
             state.addBookmark(item);
-        } catch (Exception e) {
-            // 如果 addBookmark 失败，直接添加到列表
-            if (!state.bookmarks.contains(item)) {
-                state.bookmarks.add(item);
+            if (!shard.isGlobal()) {
+                shardById.put(item.getId(), shard);
             }
+            shard.journal(j -> j.put(item));
+        }
+        events.added(item);
+        saver.markDirty();
+        if (inline) {
+            migrateInlineContent(Collections.singletonList(item));
         }
-        // PersistentStateComponent 会在状态改变时自动保存
-        // 确保 getState() 返回最新的状态对象
     }
 
     /**
      * 删除收藏项
      */
     public boolean removeBookmark(String id) {
-        return state.removeBookmark(id);
+        return removeBookmarks(Collections.singletonList(id)) > 0;
     }
 
     /**
-     * 获取所有收藏
+     * 批量删除（在 EDT 调用），返回实际删除的数量
+     * 一次加锁、一次写盘请求，变更事件在下一次 EDT 调度时一起发布
+     */
+    public int removeBookmarks(Collection<String> ids) {
+        List<BookmarkItem> removed;
+        synchronized (stateLock) {
+            removed = state.removeAll(ids);
+            for (BookmarkItem item : removed) {
+                String id = item.getId();
+                StateShard shard = shardOf(item);
+                shardById.remove(id);
+                shard.journal(j -> j.remove(id));
+            }
+        }
+        if (removed.isEmpty()) {
+            return 0;
+        }
+        for (BookmarkItem item : removed) {
+            releaseContent(item);
+            events.removed(item);
+        }
+        saver.markDirty();
+        return removed.size();
+    }
+
+    /**
+     * 获取所有收藏（只读）
      */
     public List<BookmarkItem> getAllBookmarks() {
         if (state == null) {
             state = new BookmarkState();
         }
-        List<BookmarkItem> bookmarks = state.getBookmarks();
-        if (bookmarks == null) {
-            bookmarks = new java.util.ArrayList<>();
-            state.setBookmarks(bookmarks);
-        }
-        return bookmarks;
+        return state.getBookmarks();
     }
 
     /**
@@ -121,19 +588,450 @@ public class BookmarkStateService implements PersistentStateComponent<BookmarkSt
     }
 
     /**
-     * 清空所有收藏
+     * 获取所有标签
+     */
+    public java.util.Set<String> getLabels() {
+        return state.getLabels();
+    }
+
+    /**
+     * 获取标签下的收藏项（只读）
+     */
+    public java.util.Collection<BookmarkItem> getBookmarksByLabel(String label) {
+        return state.getBookmarksByLabel(label);
+    }
+
+    /**
+     * 获取标签下的收藏数量
+     */
+    public int getLabelCount(String label) {
+        return state.getLabelCount(label);
+    }
+
+    /**
+     * 获取文件中的收藏项（只读），按文件路径索引查找
+     */
+    public java.util.Collection<BookmarkItem> getBookmarksInFile(String path) {
+        return state.getBookmarksByPath(path);
+    }
+
+    /**
+     * 批量写回收藏在文件中的最新位置（在 EDT 调用）：一次加锁、每条一个日志记录、一次写盘请求
+     * 位置不在界面上显示，不发布变更事件
+     */
+    public void updateOffsets(Map<BookmarkItem, ? extends com.intellij.openapi.util.Segment> ranges) {
+        if (ranges.isEmpty()) {
+            return;
+        }
+        synchronized (stateLock) {
+            for (Map.Entry<BookmarkItem, ? extends com.intellij.openapi.util.Segment> entry : ranges.entrySet()) {
+                BookmarkItem item = entry.getKey();
+                // 已删除的收藏不再写日志
+                if (state.findBookmark(item.getId()) != item) {
+                    continue;
+                }
+                item.setStartOffset(entry.getValue().getStartOffset());
+                item.setEndOffset(entry.getValue().getEndOffset());
+                shardOf(item).journal(j -> j.put(item));
+            }
+        }
+        saver.markDirty();
+    }
+
+    /**
+     * 修改收藏项标签
+     */
+    public boolean relabelBookmark(String id, String label) {
+        return relabelBookmarks(Collections.singletonList(id), label) > 0;
+    }
+
+    /**
+     * 批量修改标签（在 EDT 调用），返回实际修改的数量；与 removeBookmarks 一样一次加锁、一次写盘请求
+     */
+    public int relabelBookmarks(Collection<String> ids, String label) {
+        if (label == null) {
+            return 0;
+        }
+        List<BookmarkItem> changed = new ArrayList<>(ids.size());
+        synchronized (stateLock) {
+            for (String id : ids) {
+                BookmarkItem item = state.findBookmark(id);
+                if (item != null && !label.equals(item.getLabel())) {
+                    state.relabel(item, label);
+                    shardOf(item).journal(j -> j.put(item));
+                    changed.add(item);
+                }
+            }
+        }
+        if (changed.isEmpty()) {
+            return 0;
+        }
+        for (BookmarkItem item : changed) {
+            events.updated(item);
+        }
+        saver.markDirty();
+        return changed.size();
+    }
+
+    /**
+     * 清空所有收藏（已加载的分片）
      */
     public void clearAll() {
-        state.setBookmarks(new java.util.ArrayList<>());
+        List<BookmarkItem> removed;
+        synchronized (stateLock) {
+            removed = state.getBookmarks();
+            state.setBookmarks(new java.util.ArrayList<>());
+            shardById.clear();
+            globalShard.journal(StateJournal::clear);
+            for (StateShard shard : projectShards.values()) {
+                if (shard.isInstalled()) {
+                    shard.journal(StateJournal::clear);
+                }
+            }
+        }
+        for (BookmarkItem item : removed) {
+            releaseContent(item);
+        }
+        events.cleared();
+        saver.markDirty();
+    }
+
+    /**
+     * 流式写入正文（可在后台线程调用），返回内容指纹
+     * 返回的指纹已持有一份临时引用，写入完成后正文不会被并发的删除或清理回收；
+     * 之后把指纹设置到收藏项的 contentRef（不设置 content）再调用 addBookmark，
+     * 无论是否成功加入（或任务被取消）都要调用 releaseStoredContent 释放这份临时引用
+     *
+     * @param text 需在写入期间保持不变，如 Document.getImmutableCharSequence()
+     */
+    public String storeContent(CharSequence text, int start, int end, java.util.function.BooleanSupplier cancelled)
+            throws IOException {
+        return contentPool.store(text, start, end, cancelled);
+    }
+
+    /**
+     * 释放 storeContent 持有的临时引用（在 EDT 调用）；收藏未加入时正文随之删除
+     */
+    public void releaseStoredContent(String contentRef) {
+        releaseContent(contentRef);
+    }
+
+    /**
+     * 把已加入状态的内联正文写入内容仓库（EDT 调用，写入在后台线程），完成后回到 EDT 改为内容引用并写日志
+     * 写入期间收藏被删除、卸载或正文被替换时释放刚登记的引用；写入失败时保留内联正文，下次加载时重试
+     */
+    private void migrateInlineContent(List<BookmarkItem> items) {
+        // 正文在 EDT 上取出，后台线程不读收藏项的字段
+        Map<BookmarkItem, String> contents = new LinkedHashMap<>();
+        for (BookmarkItem item : items) {
+            contents.put(item, item.getInlineContent());
+        }
+        AppExecutorUtil.getAppExecutorService().execute(() -> {
+            Map<BookmarkItem, String> stored = new LinkedHashMap<>();
+            for (Map.Entry<BookmarkItem, String> entry : contents.entrySet()) {
+                try {
+                    stored.put(entry.getKey(), contentPool.acquire(null, entry.getValue()));
+                } catch (IOException e) {
+                    LOG.warn("Failed to store bookmark content, keeping it inline", e);
+                }
+            }
+            if (!stored.isEmpty()) {
+                ApplicationManager.getApplication().invokeLater(() -> adoptStoredContent(contents, stored),
+                        ModalityState.any());
+            }
+        });
+    }
+
+    private void adoptStoredContent(Map<BookmarkItem, String> contents, Map<BookmarkItem, String> stored) {
+        List<String> unused = new ArrayList<>();
+        synchronized (stateLock) {
+            for (Map.Entry<BookmarkItem, String> entry : stored.entrySet()) {
+                BookmarkItem item = entry.getKey();
+                // 正文未被替换时才改为引用，内联正文转为可回收的缓存
+                if (!disposed && state.findBookmark(item.getId()) == item
+                        && item.getInlineContent() == contents.get(item)) {
+                    item.setContentRef(entry.getValue());
+                    shardOf(item).journal(j -> j.put(item));
+                } else {
+                    unused.add(entry.getValue());
+                }
+            }
+        }
+        for (String hash : unused) {
+            releaseContent(hash);
+        }
+        if (unused.size() < stored.size()) {
+            saver.markDirty();
+        }
+    }
+
+    /**
+     * 释放正文引用，最后一份引用释放时删除正文及其渲染缓存
+     * 存在未加载的分片时它们可能也引用这份正文，改为稍后由 sweepOrphans 确认后删除
+     */
+    private void releaseContent(BookmarkItem item) {
+        releaseContent(item.getContentRef());
+    }
+
+    private void releaseContent(String ref) {
+        if (!contentPool.release(ref)) {
+            return;
+        }
+        // 全局分片加载完成前，它和未列出的项目分片都可能还引用这份正文
+        if (closedShards.isEmpty() && globalShard.isInstalled()) {
+            if (contentPool.deleteIfUnreferenced(ref)) {
+                htmlCache.evict(ref);
+            }
+            return;
+        }
+        synchronized (orphanCandidates) {
+            orphanCandidates.add(ref);
+            if (sweepScheduled) {
+                return;
+            }
+            sweepScheduled = true;
+        }
+        AppExecutorUtil.getAppScheduledExecutorService().schedule(this::sweepOrphans, SWEEP_DELAY_SECONDS,
+                TimeUnit.SECONDS);
+    }
+
+    /**
+     * 删除不再被引用的正文（后台线程）：先读出未加载分片引用的正文，再在状态锁内确认候选仍无引用后删除
+     * 读取期间有分片卸载时，它的引用可能没被统计到，重新安排一次清理
+     */
+    private void sweepOrphans() {
+        if (disposed) {
+            return;
+        }
+        if (!globalShard.isInstalled()) {
+            // 全局分片还在加载，它引用的正文尚不在计数中
+            AppExecutorUtil.getAppScheduledExecutorService().schedule(this::sweepOrphans, SWEEP_DELAY_SECONDS,
+                    TimeUnit.SECONDS);
+            return;
+        }
+        Set<String> candidates;
+        int generation;
+        synchronized (orphanCandidates) {
+            sweepScheduled = false;
+            candidates = new HashSet<>(orphanCandidates);
+        }
+        synchronized (stateLock) {
+            generation = unloadGeneration;
+        }
+        Set<String> referenced = new HashSet<>();
+        for (String key : new ArrayList<>(closedShards)) {
+            StateShard shard = StateShard.open(key, projectsRoot.resolve(key), stateLock, this::itemsOf);
+            if (shard == null) {
+                continue;
+            }
+            try {
+                for (BookmarkItem item : shard.read()) {
+                    referenced.add(item.getContentRef());
+                }
+            } catch (IOException e) {
+                // 无法确认是否仍被引用，保留候选
+                LOG.warn("Failed to read bookmark shard " + key + ", keeping unreferenced content", e);
+                return;
+            }
+        }
+        synchronized (stateLock) {
+            if (generation != unloadGeneration) {
+                synchronized (orphanCandidates) {
+                    sweepScheduled = true;
+                }
+                AppExecutorUtil.getAppScheduledExecutorService().schedule(this::sweepOrphans, SWEEP_DELAY_SECONDS,
+                        TimeUnit.SECONDS);
+                return;
+            }
+            for (String hash : candidates) {
+                if (!referenced.contains(hash) && contentPool.deleteIfUnreferenced(hash)) {
+                    htmlCache.evict(hash);
+                }
+            }
+        }
+        synchronized (orphanCandidates) {
+            orphanCandidates.removeAll(candidates);
+        }
+    }
+
+    /**
+     * 正文大小（已写入内容仓库的按原始字节数，只读取文件头）
+     */
+    public long getContentSize(BookmarkItem item) {
+        if (item.getContentRef() != null) {
+            try {
+                if (contentPool.getBlobStore().exists(item.getContentRef())) {
+                    return contentPool.getBlobStore().rawSize(item.getContentRef());
+                }
+            } catch (IOException e) {
+                LOG.warn("Failed to read bookmark content size " + item.getContentRef(), e);
+            }
+        }
+        String content = item.getContent();
+        return content != null ? content.length() : 0;
+    }
+
+    /**
+     * 以流的方式读取正文，用于分块加载超大正文
+     */
+    public java.io.Reader openContentReader(BookmarkItem item) throws IOException {
+        java.io.Reader reader = item.getContentRef() != null
+                ? contentPool.getBlobStore().openReader(item.getContentRef())
+                : null;
+        if (reader == null) {
+            String content = item.getContent();
+            reader = new java.io.StringReader(content != null ? content : "");
+        }
+        return reader;
+    }
+
+    /**
+     * Markdown 渲染结果缓存
+     */
+    public HtmlCache getHtmlCache() {
+        return htmlCache;
+    }
+
+    /**
+     * 按内容哈希读取正文，不缓存到收藏项上（用于后台批量扫描）
+     */
+    public String readContent(String contentRef) {
+        return loadContent(contentRef);
+    }
+
+    /**
+     * 读取收藏的正文，已在堆上时直接返回，否则从内容仓库读取但不缓存到收藏项上（可能读盘，在后台线程调用）
+     */
+    public String readContent(BookmarkItem item) {
+        if (item.isContentLoaded() || item.getContentRef() == null) {
+            return item.getContent();
+        }
+        return loadContent(item.getContentRef());
+    }
+
+    private String loadContent(String contentRef) {
+        try {
+            return contentPool.get(contentRef);
+        } catch (IOException e) {
+            LOG.warn("Failed to load bookmark content " + contentRef, e);
+            return null;
+        }
+    }
+
+    /**
+     * 导出为 XML，正文逐条读出并内联写入（会读取所有正文，应在后台线程调用），返回导出的数量
+     */
+    public int exportXml(Path file) throws IOException {
+        List<BookmarkItem> items;
+        synchronized (stateLock) {
+            items = new ArrayList<>(state.getBookmarks());
+        }
+        StateSnapshot.writeXml(file, items, this::readContent);
+        return items.size();
+    }
+
+    /**
+     * 读取导出的 XML（也接受旧版本的 bookmark-plugin.xml），可在后台线程调用
+     */
+    public List<BookmarkItem> readXml(Path file) throws IOException {
+        List<BookmarkItem> items = StateSnapshot.readXml(file);
+        return items != null ? items : new ArrayList<>();
+    }
+
+    /**
+     * 导入收藏（在 EDT 调用），已存在的 ID 跳过，返回实际导入的数量
+     * 正文应已在后台用 storeContent 写入（收藏项只带 contentRef），这里与 removeBookmarks 一样一次加锁、一次写盘请求，
+     * 变更事件在下一次 EDT 调度时一起发布；仍带内联正文的收藏项之后在后台写入内容仓库
+     */
+    public int importBookmarks(@Nullable Project project, List<BookmarkItem> items) {
+        List<BookmarkItem> added = new ArrayList<>(items.size());
+        synchronized (stateLock) {
+            for (BookmarkItem item : items) {
+                if (item.getId() == null || item.getId().isEmpty()) {
+                    item.setId(UUID.randomUUID().toString());
+                } else if (state.findBookmark(item.getId()) != null) {
+                    continue;
+                }
+                StateShard shard = shardFor(project, item);
+                state.addBookmark(item);
+                if (!shard.isGlobal()) {
+                    shardById.put(item.getId(), shard);
+                }
+                shard.journal(j -> j.put(item));
+                added.add(item);
+            }
+        }
+        if (added.isEmpty()) {
+            return 0;
+        }
+        List<BookmarkItem> inline = new ArrayList<>();
+        for (BookmarkItem item : added) {
+            if (item.isContentInline()) {
+                inline.add(item);
+            } else {
+                contentPool.retain(item.getContentRef());
+            }
+            events.added(item);
+        }
+        if (!inline.isEmpty()) {
+            migrateInlineContent(inline);
+        }
+        saver.markDirty();
+        return added.size();
     }
 
     /**
-     * 获取数据存储文件路径（用于调试）
-     * 数据实际存储在: {IDEA配置目录}/options/bookmark-plugin.xml
+     * 获取全局分片的存储文件路径（用于调试）
+     * 数据实际存储在: {IDEA配置目录}/bookmark-plugin/state.bin，项目分片在 bookmark-plugin/projects 下
      */
     public String getStoragePath() {
-        // 获取 IDEA 配置目录 - PathManager 是静态工具类
-        String configPath = com.intellij.openapi.application.PathManager.getConfigPath();
-        return configPath + "/options/bookmark-plugin.xml";
+        return globalShard.getSnapshotFile().toString();
+    }
+
+    /**
+     * 获取正文存储目录（用于调试）
+     */
+    public String getBlobStoragePath() {
+        return contentPool.getBlobStore().getRoot().toString();
+    }
+
+    /**
+     * 获取存储统计报告（会读取磁盘，应在后台线程调用）
+     */
+    public String getStorageReport() {
+        BlobStore blobStore = contentPool.getBlobStore();
+        StringBuilder report = new StringBuilder();
+        report.append(contentPool.getStats());
+        report.append(String.format("%n压缩: 阈值 %s, 级别 %d",
+                ContentPool.formatSize(blobStore.getCompressionThreshold()), blobStore.getCompressionLevel()));
+        report.append("\n").append(blobStore.getStats());
+        report.append("\n").append(htmlCache);
+        report.append("\n").append(saver);
+        int total;
+        int loaded = 0;
+        synchronized (stateLock) {
+            List<StateShard> shards = new ArrayList<>(projectShards.values());
+            shards.add(0, globalShard);
+            for (StateShard shard : shards) {
+                report.append(String.format("%n[%d 条] %s", itemsOf(shard).size(), shard));
+            }
+            report.append(String.format("%n未加载的项目分片: %d 个", closedShards.size()));
+            total = state.getBookmarks().size();
+            for (BookmarkItem item : state.getBookmarks()) {
+                if (item.isContentLoaded()) {
+                    loaded++;
+                }
+            }
+        }
+        report.append(String.format("%n正文在堆上: %d / %d 条（其余按需加载）", loaded, total));
+        try {
+            List<String> samples = contentPool.sampleHashes(20, blobStore.getCompressionThreshold());
+            if (!samples.isEmpty()) {
+                report.append("\n").append(blobStore.compareLevels(samples, new int[] { 1, 3, 6, 9 }));
+            }
+        } catch (IOException e) {
+            LOG.warn("Failed to compare compression levels", e);
+        }
+        return report.toString();
     }
 }
@@ -0,0 +1,21 @@
+package com.dawang.bookmark.service;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.project.ProjectManagerListener;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * 项目打开时加载其收藏分片，关闭时卸载（在 plugin.xml 中注册为应用级监听器）
+ */
+public class ProjectShardListener implements ProjectManagerListener {
+
+    @Override
+    public void projectOpened(@NotNull Project project) {
+        BookmarkStateService.getInstance().projectOpened(project);
+    }
+
+    @Override
+    public void projectClosed(@NotNull Project project) {
+        BookmarkStateService.getInstance().projectClosed(project);
+    }
+}
@@ -0,0 +1,321 @@
+package com.dawang.bookmark.service;
+
+import com.dawang.bookmark.model.BookmarkItem;
+import com.dawang.bookmark.model.BookmarkState;
+import com.dawang.bookmark.storage.StateJournal;
+import com.dawang.bookmark.storage.StateSnapshot;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.function.Function;
+
+/**
+ * 收藏存储分片
+ * 每个项目一个分片，另有一个全局分片存放不属于任何已知项目的收藏；各分片有自己的快照和变更日志，
+ * 项目打开时加载、关闭时卸载。已加载分片的收藏统一放在 BookmarkStateService 的 BookmarkState 中
+ */
+class StateShard {
+
+    private static final com.intellij.openapi.diagnostic.Logger LOG = com.intellij.openapi.diagnostic.Logger
+            .getInstance(StateShard.class);
+
+    private static final String PROPERTIES_FILE = "shard.properties";
+
+    private final String key; // 项目的 locationHash，全局分片为 null
+    private final Path snapshotFile;
+    // 上一版本的 XML 快照，只有全局分片可能存在，读取后迁移为二进制快照
+    private final Path xmlSnapshotFile;
+    private final StateJournal journal;
+    private final Object stateLock;
+    // 在 stateLock 内取出本分片当前的收藏
+    private final Function<StateShard, List<BookmarkItem>> itemSource;
+    private final String name;
+    private final String basePath;
+
+    // 日志无法打开时退回到每次写完整快照
+    private boolean journalOpen;
+    // 快照已成功写入或读取
+    private volatile boolean snapshotAvailable;
+    // 下次写盘时压缩（迁移旧数据、上次压缩未完成等）
+    private volatile boolean compactRequested;
+    // 收藏已并入服务的状态；之前不写盘，否则压缩会用不完整的列表覆盖快照
+    private volatile boolean installed;
+    private volatile boolean closed;
+    // 使用者数量：所属项目已打开计 1，工具窗口显示所有项目时各计 1（只在 EDT 访问）
+    int users;
+
+    private long snapshotLoadNanos;
+    private long journalReplayNanos;
+
+    StateShard(String key, Path dir, String name, String basePath, Object stateLock,
+            Function<StateShard, List<BookmarkItem>> itemSource) {
+        this.key = key;
+        this.snapshotFile = dir.resolve("state.bin");
+        this.xmlSnapshotFile = key == null ? dir.resolve("state.xml") : null;
+        this.journal = new StateJournal(dir.resolve("journal.log"));
+        this.name = name;
+        this.basePath = normalize(basePath);
+        this.stateLock = stateLock;
+        this.itemSource = itemSource;
+    }
+
+    /**
+     * 读取未加载分片目录中记录的项目名称和路径，目录不是分片时返回 null
+     */
+    static StateShard open(String key, Path dir, Object stateLock,
+            Function<StateShard, List<BookmarkItem>> itemSource) {
+        Path file = dir.resolve(PROPERTIES_FILE);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            properties.load(in);
+        } catch (IOException e) {
+            LOG.warn("Failed to read bookmark shard properties " + file, e);
+            return null;
+        }
+        return new StateShard(key, dir, properties.getProperty("name", key), properties.getProperty("basePath"),
+                stateLock, itemSource);
+    }
+
+    String getKey() {
+        return key;
+    }
+
+    boolean isGlobal() {
+        return key == null;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    Path getSnapshotFile() {
+        return snapshotFile;
+    }
+
+    boolean isSnapshotAvailable() {
+        return snapshotAvailable;
+    }
+
+    void requestCompaction() {
+        compactRequested = true;
+    }
+
+    boolean isCompactRequested() {
+        return compactRequested;
+    }
+
+    /**
+     * 收藏已并入状态（持有 stateLock 时调用），此后才参与写盘和接收新收藏
+     */
+    void markInstalled() {
+        installed = true;
+    }
+
+    boolean isInstalled() {
+        return installed && !closed;
+    }
+
+    /**
+     * 文件路径是否在本分片所属项目的目录下（全局分片总是返回 false）
+     */
+    boolean contains(String filePath) {
+        return basePath != null && filePath != null && normalize(filePath).startsWith(basePath);
+    }
+
+    /**
+     * 读取快照并重放日志，打开日志用于追加；可在后台线程调用。已关闭的分片返回空列表
+     */
+    synchronized List<BookmarkItem> load() {
+        if (closed) {
+            return new ArrayList<>();
+        }
+        BookmarkState loaded = new BookmarkState();
+        long start = System.nanoTime();
+        try {
+            List<BookmarkItem> items = StateSnapshot.read(snapshotFile);
+            if (items == null && xmlSnapshotFile != null) {
+                items = StateSnapshot.readXml(xmlSnapshotFile);
+                if (items != null) {
+                    compactRequested = true;
+                }
+            }
+            if (items != null) {
+                loaded.setBookmarks(new ArrayList<>(items));
+                snapshotAvailable = true;
+            }
+        } catch (IOException e) {
+            LOG.warn("Failed to read bookmark snapshot " + snapshotFile, e);
+            setAsideCorruptedSnapshot();
+        }
+        snapshotLoadNanos = System.nanoTime() - start;
+        start = System.nanoTime();
+        try {
+            journal.open(replayer(loaded));
+            journalOpen = true;
+            if (journal.hasRotated() || journal.hasSetAside()) {
+                compactRequested = true;
+            }
+        } catch (IOException e) {
+            LOG.warn("Failed to open bookmark journal, falling back to full snapshots", e);
+        }
+        journalReplayNanos = System.nanoTime() - start;
+        if (key != null) {
+            writeProperties();
+        }
+        return loaded.getBookmarks();
+    }
+
+    /**
+     * 只读取内容，不打开日志（用于扫描未加载分片引用的正文）
+     */
+    List<BookmarkItem> read() throws IOException {
+        BookmarkState loaded = new BookmarkState();
+        List<BookmarkItem> items = StateSnapshot.read(snapshotFile);
+        if (items != null) {
+            loaded.setBookmarks(new ArrayList<>(items));
+        }
+        StateJournal.read(journal.getFile(), replayer(loaded));
+        return loaded.getBookmarks();
+    }
+
+    private static StateJournal.Replayer replayer(BookmarkState loaded) {
+        return new StateJournal.Replayer() {
+            @Override
+            public void put(BookmarkItem item) {
+                loaded.putBookmark(item);
+            }
+
+            @Override
+            public void remove(String id) {
+                loaded.removeAndGet(id);
+            }
+
+            @Override
+            public void clear() {
+                loaded.setBookmarks(new ArrayList<>());
+            }
+        };
+    }
+
+    /**
+     * 快照无法读取时改名保留，避免下次压缩覆盖掉可能还能手工恢复的数据
+     */
+    private void setAsideCorruptedSnapshot() {
+        try {
+            Files.move(snapshotFile,
+                    snapshotFile.resolveSibling(snapshotFile.getFileName() + ".corrupted-" + System.currentTimeMillis()));
+        } catch (IOException e) {
+            LOG.warn("Failed to move corrupted bookmark snapshot", e);
+        }
+    }
+
+    private void writeProperties() {
+        Properties properties = new Properties();
+        properties.setProperty("name", name);
+        if (basePath != null) {
+            properties.setProperty("basePath", basePath);
+        }
+        try (OutputStream out = Files.newOutputStream(snapshotFile.resolveSibling(PROPERTIES_FILE))) {
+            properties.store(out, null);
+        } catch (IOException e) {
+            LOG.warn("Failed to write bookmark shard properties for " + name, e);
+        }
+    }
+
+    /**
+     * 记录一条变更（持有 stateLock 时调用）；日志不可用时由下次写盘的完整快照保存
+     * 分片安装前（日志可能还在后台打开）不写日志，改为请求压缩，安装后由完整快照保存
+     */
+    void journal(java.util.function.Consumer<StateJournal> record) {
+        if (!installed) {
+            compactRequested = true;
+            return;
+        }
+        if (journalOpen) {
+            record.accept(journal);
+        }
+    }
+
+    /**
+     * 写盘（在保存线程执行）：写入并 fsync 积累的日志记录，日志过大时压缩
+     */
+    long persist() throws IOException {
+        if (!isInstalled()) {
+            return 0;
+        }
+        if (!journalOpen) {
+            return compact();
+        }
+        long bytes = journal.flush();
+        if (compactRequested || !snapshotAvailable || journal.size() >= StateJournal.COMPACT_THRESHOLD) {
+            compact();
+        }
+        return bytes;
+    }
+
+    /**
+     * 压缩：加锁复制本分片的收藏并轮转日志（两者对应同一时刻），锁外写快照，成功后删除旧日志
+     */
+    private long compact() throws IOException {
+        long start = System.nanoTime();
+        List<BookmarkItem> items;
+        synchronized (stateLock) {
+            // 卸载在 stateLock 内关闭分片，之后状态里已没有它的收藏
+            if (closed) {
+                return 0;
+            }
+            items = itemSource.apply(this);
+            if (journalOpen) {
+                journal.rotate();
+            }
+        }
+        long size = StateSnapshot.write(snapshotFile, items);
+        snapshotAvailable = true;
+        compactRequested = false;
+        if (xmlSnapshotFile != null) {
+            Files.deleteIfExists(xmlSnapshotFile);
+        }
+        if (journalOpen) {
+            journal.completeCompaction(System.nanoTime() - start);
+        }
+        return size;
+    }
+
+    /**
+     * 卸载：写入尚未保存的日志记录并关闭日志，之后的写盘请求被忽略
+     */
+    synchronized void close() {
+        closed = true;
+        if (!journalOpen) {
+            return;
+        }
+        try {
+            journal.close();
+        } catch (IOException e) {
+            LOG.warn("Failed to close bookmark journal for " + name, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: 快照 %.1f ms, 重放日志 %.1f ms, %s",
+                key == null ? "全局" : "项目 " + name, snapshotLoadNanos / 1e6, journalReplayNanos / 1e6, journal);
+    }
+
+    private static String normalize(String path) {
+        if (path == null) {
+            return null;
+        }
+        String normalized = path.replace('\\', '/');
+        return normalized.endsWith("/") ? normalized : normalized + "/";
+    }
+}
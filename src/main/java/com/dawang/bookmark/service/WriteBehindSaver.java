@@ -0,0 +1,166 @@
+package com.dawang.bookmark.service;
+
+import com.dawang.bookmark.storage.ContentPool;
+import com.intellij.util.concurrency.AppExecutorUtil;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 延迟合并写入
+ * 状态变更只标记为脏，在后台单线程上延迟写盘；连续变更会推迟写入（防抖），
+ * 但从第一次变更起不超过最大延迟一定会写一次
+ * 写盘失败后按指数退避重试（有上限），只有第一次失败记为警告，直到写盘成功为止
+ */
+class WriteBehindSaver {
+
+    private static final com.intellij.openapi.diagnostic.Logger LOG = com.intellij.openapi.diagnostic.Logger
+            .getInstance(WriteBehindSaver.class);
+
+    // 防抖窗口和最大延迟，可通过 -Dbookmark.save.debounce.ms / -Dbookmark.save.max.latency.ms 调整
+    // 每次写盘只追加变更日志，窗口可以较短
+    static final long DEBOUNCE_MS = Long.getLong("bookmark.save.debounce.ms", 200);
+    static final long MAX_LATENCY_MS = Long.getLong("bookmark.save.max.latency.ms", 2000);
+    // 连续写盘失败时重试间隔的上限，可通过 -Dbookmark.save.max.backoff.ms 调整
+    static final long MAX_BACKOFF_MS = Long.getLong("bookmark.save.max.backoff.ms", 60_000);
+
+    /**
+     * 实际写盘操作，返回写入的字节数
+     */
+    interface Flusher {
+        long flush() throws Exception;
+    }
+
+    private final Flusher flusher;
+    private final long debounceMs;
+    private final long maxLatencyMs;
+    private final ScheduledExecutorService executor = AppExecutorUtil
+            .createBoundedScheduledExecutorService("Bookmark Saver", 1);
+    // 写盘串行执行（后台线程与关闭时的同步写入之间）
+    private final Object flushLock = new Object();
+
+    private boolean dirty;
+    private long firstDirtyAt;
+    private ScheduledFuture<?> pending;
+    // 连续失败次数和下一次重试的时间，写盘成功后清零；期间的新变更也不早于重试时间写盘
+    private int consecutiveFailures;
+    private long retryAt;
+
+    private long flushes;
+    private long failures;
+    private long requests;
+    private long lastBytes;
+    private long totalBytes;
+    private long totalNanos;
+    private long maxNanos;
+
+    WriteBehindSaver(Flusher flusher) {
+        this(flusher, DEBOUNCE_MS, MAX_LATENCY_MS);
+    }
+
+    WriteBehindSaver(Flusher flusher, long debounceMs, long maxLatencyMs) {
+        this.flusher = flusher;
+        this.debounceMs = debounceMs;
+        this.maxLatencyMs = maxLatencyMs;
+    }
+
+    /**
+     * 标记状态已变更，安排一次延迟写入
+     */
+    synchronized void markDirty() {
+        requests++;
+        long now = System.currentTimeMillis();
+        if (!dirty) {
+            dirty = true;
+            firstDirtyAt = now;
+        }
+        long delay = Math.max(0, Math.min(debounceMs, firstDirtyAt + maxLatencyMs - now));
+        if (consecutiveFailures > 0) {
+            delay = Math.max(delay, retryAt - now);
+        }
+        if (pending != null) {
+            pending.cancel(false);
+        }
+        pending = executor.schedule(this::flushIfDirty, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 立即写入尚未保存的变更（IDE 关闭时调用）
+     */
+    void flushNow() {
+        synchronized (this) {
+            if (pending != null) {
+                pending.cancel(false);
+                pending = null;
+            }
+        }
+        flushIfDirty();
+    }
+
+    private void flushIfDirty() {
+        synchronized (flushLock) {
+            synchronized (this) {
+                if (!dirty) {
+                    return;
+                }
+                // 写盘期间的新变更会重新标记并安排下一次写入
+                dirty = false;
+                pending = null;
+            }
+            long start = System.nanoTime();
+            try {
+                long bytes = flusher.flush();
+                long elapsed = System.nanoTime() - start;
+                int failed;
+                synchronized (this) {
+                    flushes++;
+                    lastBytes = bytes;
+                    totalBytes += bytes;
+                    totalNanos += elapsed;
+                    maxNanos = Math.max(maxNanos, elapsed);
+                    failed = consecutiveFailures;
+                    consecutiveFailures = 0;
+                }
+                if (failed > 0) {
+                    LOG.info("Saved bookmarks after " + failed + " failed attempts");
+                }
+            } catch (Exception e) {
+                int attempt;
+                long backoff;
+                synchronized (this) {
+                    failures++;
+                    attempt = ++consecutiveFailures;
+                    backoff = backoffMs(attempt);
+                    retryAt = System.currentTimeMillis() + backoff;
+                }
+                if (attempt == 1) {
+                    LOG.warn("Failed to save bookmarks, will retry in " + backoff + " ms", e);
+                } else if (LOG.isDebugEnabled()) {
+                    LOG.debug("Failed to save bookmarks (" + attempt + " attempts), will retry in " + backoff + " ms", e);
+                }
+                markDirty();
+            }
+        }
+    }
+
+    /**
+     * 第 attempt 次连续失败后的重试间隔：从防抖窗口开始每次加倍，不超过 MAX_BACKOFF_MS
+     */
+    private long backoffMs(int attempt) {
+        long base = Math.max(debounceMs, 1);
+        return Math.min(MAX_BACKOFF_MS, base << Math.min(attempt, 30));
+    }
+
+    synchronized boolean isDirty() {
+        return dirty;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("保存: 变更 %d 次, 写盘 %d 次 (失败 %d 次), 最近 %s, 累计 %s, 平均 %.1f ms, 最长 %.1f ms"
+                + " (防抖 %d ms, 最大延迟 %d ms)",
+                requests, flushes, failures, ContentPool.formatSize(lastBytes), ContentPool.formatSize(totalBytes),
+                flushes > 0 ? totalNanos / 1e6 / flushes : 0.0, maxNanos / 1e6, debounceMs, maxLatencyMs);
+    }
+}
@@ -0,0 +1,261 @@
+package com.dawang.bookmark.storage;
+
+import com.dawang.bookmark.model.BookmarkItem;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * 收藏列表的二进制快照格式
+ * 文件头（魔数、版本、记录数、字典大小）+ 字符串字典 + 记录偏移表 + 定长前缀的记录 + 整个文件的 CRC32
+ * 标签、文件路径、来源类型和来源名称重复率高，存为字典下标，加载后同一个值只有一个 String 实例
+ * 有偏移表后各记录可独立解码，记录较多时按块并行解码
+ */
+public final class BinaryStateCodec {
+
+    private static final int MAGIC = 0x424B5331; // "BKS1"
+    private static final int VERSION = 1;
+    // 每个并行任务解码的记录数；不足两块时直接顺序解码
+    private static final int PARALLEL_CHUNK = 4096;
+
+    private static final byte REF_NULL = 0;
+    private static final byte REF_SHA256 = 1;
+    private static final byte REF_STRING = 2;
+
+    private BinaryStateCodec() {
+    }
+
+    public static void write(List<BookmarkItem> items, OutputStream out) throws IOException {
+        Map<String, Integer> dictionary = new HashMap<>();
+        List<String> dictionaryValues = new java.util.ArrayList<>();
+        ByteArrayOutputStream records = new ByteArrayOutputStream(items.size() * 256 + 16);
+        DataOutputStream recordOut = new DataOutputStream(records);
+        long[] offsets = new long[items.size() + 1];
+        for (int i = 0; i < items.size(); i++) {
+            offsets[i] = recordOut.size();
+            BookmarkItem item = items.get(i);
+            writeString(recordOut, item.getId());
+            recordOut.writeInt(intern(dictionary, dictionaryValues, item.getLabel()));
+            recordOut.writeInt(intern(dictionary, dictionaryValues, item.getFilePath()));
+            recordOut.writeInt(intern(dictionary, dictionaryValues, item.getSourceType()));
+            recordOut.writeInt(intern(dictionary, dictionaryValues, item.getSourceName()));
+            writeString(recordOut, item.getNote());
+            writeString(recordOut, item.getPreview());
+            writeContentRef(recordOut, item.getContentRef());
+            writeString(recordOut, item.getInlineContent());
+            recordOut.writeLong(item.getTimestamp());
+            recordOut.writeInt(item.getStartOffset());
+            recordOut.writeInt(item.getEndOffset());
+        }
+        recordOut.flush();
+        offsets[items.size()] = records.size();
+
+        CheckedOutputStream checked = new CheckedOutputStream(out, new CRC32());
+        DataOutputStream data = new DataOutputStream(checked);
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(items.size());
+        data.writeInt(dictionaryValues.size());
+        for (String value : dictionaryValues) {
+            writeString(data, value);
+        }
+        for (long offset : offsets) {
+            data.writeLong(offset);
+        }
+        records.writeTo(data);
+        data.flush();
+        // CRC 本身不参与校验
+        new DataOutputStream(out).writeInt((int) checked.getChecksum().getValue());
+        out.flush();
+    }
+
+    /**
+     * 解码快照
+     *
+     * @throws IOException 格式或校验和不对时
+     */
+    public static List<BookmarkItem> read(byte[] bytes) throws IOException {
+        if (bytes.length < 20) {
+            throw new IOException("Bookmark snapshot is truncated");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length - 4);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        if ((int) crc.getValue() != buffer.getInt(bytes.length - 4)) {
+            throw new IOException("Bookmark snapshot checksum mismatch");
+        }
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not a bookmark snapshot");
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported bookmark snapshot version " + version);
+            }
+            int count = buffer.getInt();
+            int dictionarySize = buffer.getInt();
+            if (count < 0 || dictionarySize < 0) {
+                throw new IOException("Corrupted bookmark snapshot header");
+            }
+            String[] dictionary = new String[dictionarySize];
+            for (int i = 0; i < dictionarySize; i++) {
+                dictionary[i] = readString(buffer);
+            }
+            long[] offsets = new long[count + 1];
+            for (int i = 0; i <= count; i++) {
+                offsets[i] = buffer.getLong();
+            }
+            int base = buffer.position();
+            if (base + offsets[count] != bytes.length - 4) {
+                throw new IOException("Corrupted bookmark snapshot offsets");
+            }
+
+            BookmarkItem[] items = new BookmarkItem[count];
+            int chunks = (count + PARALLEL_CHUNK - 1) / PARALLEL_CHUNK;
+            IntStream range = IntStream.range(0, chunks);
+            if (chunks > 1) {
+                range = range.parallel();
+            }
+            range.forEach(chunk -> {
+                // 每个任务使用独立的缓冲区视图（位置互不影响）
+                ByteBuffer view = ByteBuffer.wrap(bytes);
+                int end = Math.min(count, (chunk + 1) * PARALLEL_CHUNK);
+                for (int i = chunk * PARALLEL_CHUNK; i < end; i++) {
+                    view.position((int) (base + offsets[i]));
+                    items[i] = readItem(view, dictionary);
+                }
+            });
+            return Arrays.asList(items);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException("Corrupted bookmark snapshot", e);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static BookmarkItem readItem(ByteBuffer in, String[] dictionary) {
+        BookmarkItem item = new BookmarkItem();
+        item.setId(readString(in));
+        item.setLabel(lookup(dictionary, in.getInt()));
+        item.setFilePath(lookup(dictionary, in.getInt()));
+        item.setSourceType(lookup(dictionary, in.getInt()));
+        item.setSourceName(lookup(dictionary, in.getInt()));
+        item.setNote(readString(in));
+        item.setPreview(readString(in));
+        String contentRef = readContentRef(in);
+        String inline = readString(in);
+        if (inline != null) {
+            item.setInlineContent(inline);
+        }
+        item.setContentRef(contentRef);
+        item.setTimestamp(in.getLong());
+        item.setStartOffset(in.getInt());
+        item.setEndOffset(in.getInt());
+        return item;
+    }
+
+    private static int intern(Map<String, Integer> dictionary, List<String> values, String value) {
+        if (value == null) {
+            return -1;
+        }
+        Integer index = dictionary.get(value);
+        if (index == null) {
+            index = values.size();
+            dictionary.put(value, index);
+            values.add(value);
+        }
+        return index;
+    }
+
+    private static String lookup(String[] dictionary, int index) {
+        return index < 0 ? null : dictionary[index];
+    }
+
+    /**
+     * 内容哈希一般是 64 位小写十六进制，按 32 字节原始值保存
+     */
+    private static void writeContentRef(DataOutputStream out, String ref) throws IOException {
+        if (ref == null) {
+            out.writeByte(REF_NULL);
+            return;
+        }
+        byte[] raw = parseSha256(ref);
+        if (raw != null) {
+            out.writeByte(REF_SHA256);
+            out.write(raw);
+        } else {
+            out.writeByte(REF_STRING);
+            writeString(out, ref);
+        }
+    }
+
+    private static String readContentRef(ByteBuffer in) {
+        byte kind = in.get();
+        switch (kind) {
+            case REF_NULL:
+                return null;
+            case REF_SHA256:
+                byte[] raw = new byte[32];
+                in.get(raw);
+                return BlobStore.toHex(raw);
+            case REF_STRING:
+                return readString(in);
+            default:
+                throw new UncheckedIOException(new IOException("Corrupted content reference kind " + kind));
+        }
+    }
+
+    private static byte[] parseSha256(String hex) {
+        if (hex.length() != 64) {
+            return null;
+        }
+        byte[] raw = new byte[32];
+        for (int i = 0; i < 32; i++) {
+            int high = Character.digit(hex.charAt(i * 2), 16);
+            int low = Character.digit(hex.charAt(i * 2 + 1), 16);
+            // 只接受小写，保证解码后与原字符串一致
+            if (high < 0 || low < 0 || Character.isUpperCase(hex.charAt(i * 2))
+                    || Character.isUpperCase(hex.charAt(i * 2 + 1))) {
+                return null;
+            }
+            raw[i] = (byte) ((high << 4) | low);
+        }
+        return raw;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > in.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        String value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+}
@@ -0,0 +1,527 @@
+package com.dawang.bookmark.storage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * 按内容寻址的正文仓库
+ * 每个正文以 UTF-8 写入一个文件，文件名为内容的 SHA-256（64 位小写十六进制，其他名称一律拒绝）
+ * 读取时一次读入，不使用内存映射：Windows 上映射中的文件在缓冲区被回收前无法删除或替换
+ * 超过阈值的正文以 Deflate 压缩保存（文件名加 .z 后缀，文件头为 8 字节原始长度），读取时才解压
+ * 目录结构: {root}/{哈希前两位}/{哈希}[.z]
+ */
+public class BlobStore {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final String COMPRESSED_SUFFIX = ".z";
+    // 流式写入时每次从 CharSequence 取出的字符数
+    private static final int STREAM_CHUNK_CHARS = 64 * 1024;
+
+    // 压缩阈值和级别可通过 -Dbookmark.compression.threshold / -Dbookmark.compression.level 调整
+    public static final int COMPRESSION_THRESHOLD = Integer.getInteger("bookmark.compression.threshold", 16 * 1024);
+    public static final int COMPRESSION_LEVEL = Integer.getInteger("bookmark.compression.level", 6);
+
+    private final Path root;
+    private final int compressionThreshold;
+    private final int compressionLevel;
+    private final CompressionStats stats = new CompressionStats();
+
+    public BlobStore(Path root) {
+        this(root, COMPRESSION_THRESHOLD, COMPRESSION_LEVEL);
+    }
+
+    public BlobStore(Path root, int compressionThreshold, int compressionLevel) {
+        this.root = root;
+        this.compressionThreshold = compressionThreshold;
+        this.compressionLevel = compressionLevel;
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    public CompressionStats getStats() {
+        return stats;
+    }
+
+    /**
+     * 写入正文，返回内容哈希；相同内容只会存储一份
+     */
+    public String put(String content) throws IOException {
+        byte[] bytes = (content != null ? content : "").getBytes(StandardCharsets.UTF_8);
+        String hash = hash(bytes);
+        put(hash, bytes);
+        return hash;
+    }
+
+    /**
+     * 以已计算好的哈希写入正文
+     */
+    public void put(String hash, byte[] bytes) throws IOException {
+        checkHash(hash);
+        if (exists(hash)) {
+            return;
+        }
+        Path target = pathOf(hash);
+        byte[] data = bytes;
+        if (bytes.length >= compressionThreshold) {
+            long start = System.nanoTime();
+            byte[] compressed = compress(bytes, compressionLevel);
+            stats.recordCompress(bytes.length, compressed.length, System.nanoTime() - start);
+            // 压缩无收益时仍按原文保存
+            if (compressed.length < bytes.length) {
+                data = compressed;
+                target = compressedPathOf(hash);
+            }
+        }
+        stats.recordWrite(data.length);
+        Files.createDirectories(target.getParent());
+        Path temp = Files.createTempFile(target.getParent(), hash, ".tmp");
+        try {
+            Files.write(temp, data);
+            moveAtomically(temp, target);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * 流式写入 text 的 [start, end) 部分，返回内容哈希
+     * 分块读取字符、边编码 UTF-8 边计算哈希并写入临时文件（达到压缩阈值时边写边压缩），
+     * 写完后按哈希改名；不生成完整的 String 或字节数组，内存占用只与块大小有关
+     * 哈希与 put(String) / fingerprint 对同一文本的结果一致；与 put(hash, bytes) 一样，压缩无收益时按原文保存
+     *
+     * @param text 需在调用期间保持不变（如 Document.getImmutableCharSequence()）
+     * @throws com.intellij.openapi.progress.ProcessCanceledException cancelled 返回 true 时
+     */
+    public String put(CharSequence text, int start, int end, BooleanSupplier cancelled) throws IOException {
+        // UTF-8 每个字符至少 1 字节，字符数达到阈值时字节数必然达到
+        boolean compress = end - start >= compressionThreshold;
+        MessageDigest digest = newDigest();
+        Files.createDirectories(root);
+        Path temp = Files.createTempFile(root, "stream", ".tmp");
+        Path rawTemp = null;
+        try {
+            long startNanos = System.nanoTime();
+            long rawSize = writeStream(text, start, end, cancelled, temp, compress, digest);
+            long storedSize = Files.size(temp);
+            Path source = temp;
+            if (compress) {
+                stats.recordCompress(rawSize, storedSize, System.nanoTime() - startNanos);
+                if (storedSize >= rawSize) {
+                    // 压缩无收益：再按原文写一遍（只在难以压缩的大正文上发生）
+                    rawTemp = Files.createTempFile(root, "stream", ".tmp");
+                    writeStream(text, start, end, cancelled, rawTemp, false, newDigest());
+                    source = rawTemp;
+                    storedSize = rawSize;
+                    compress = false;
+                }
+            }
+            String hash = toHex(digest.digest());
+            if (!exists(hash)) {
+                Path target = compress ? compressedPathOf(hash) : pathOf(hash);
+                Files.createDirectories(target.getParent());
+                moveAtomically(source, target);
+                stats.recordWrite(storedSize);
+            }
+            return hash;
+        } finally {
+            Files.deleteIfExists(temp);
+            if (rawTemp != null) {
+                Files.deleteIfExists(rawTemp);
+            }
+        }
+    }
+
+    /**
+     * 把 text 的 [start, end) 按 UTF-8 写入 file，同时用 digest 计算原始字节的哈希，返回原始字节数；
+     * compress 时写成压缩格式（含文件头）
+     */
+    private long writeStream(CharSequence text, int start, int end, BooleanSupplier cancelled, Path file,
+            boolean compress, MessageDigest digest) throws IOException {
+        HashingOutputStream hashing;
+        Deflater deflater = compress ? new Deflater(compressionLevel) : null;
+        try {
+            OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), 64 * 1024);
+            if (compress) {
+                // 原始长度写完后才知道，先占位
+                out.write(new byte[Long.BYTES]);
+                out = new DeflaterOutputStream(out, deflater, 64 * 1024);
+            }
+            hashing = new HashingOutputStream(out, digest);
+            try (Writer writer = new OutputStreamWriter(hashing, StandardCharsets.UTF_8)) {
+                char[] buffer = new char[Math.min(STREAM_CHUNK_CHARS, Math.max(end - start, 1))];
+                for (int pos = start; pos < end;) {
+                    if (cancelled.getAsBoolean()) {
+                        throw new com.intellij.openapi.progress.ProcessCanceledException();
+                    }
+                    int n = Math.min(buffer.length, end - pos);
+                    for (int i = 0; i < n; i++) {
+                        buffer[i] = text.charAt(pos + i);
+                    }
+                    // 块末尾的高位代理由 Writer 保留到下一块，不会被拆开编码
+                    writer.write(buffer, 0, n);
+                    pos += n;
+                }
+            }
+        } finally {
+            if (deflater != null) {
+                deflater.end();
+            }
+        }
+        if (compress) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.write(ByteBuffer.allocate(Long.BYTES).putLong(0, hashing.count), 0);
+            }
+        }
+        return hashing.count;
+    }
+
+    /**
+     * 读取正文，不存在时返回 null
+     */
+    public String get(String hash) throws IOException {
+        byte[] bytes = getBytes(hash);
+        return bytes != null ? new String(bytes, StandardCharsets.UTF_8) : null;
+    }
+
+    /**
+     * 读取正文的原始 UTF-8 字节，不存在时返回 null
+     */
+    public byte[] getBytes(String hash) throws IOException {
+        checkHash(hash);
+        Path compressed = compressedPathOf(hash);
+        if (Files.exists(compressed)) {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(compressed));
+            long start = System.nanoTime();
+            byte[] bytes = decompress(buffer);
+            stats.recordDecompress(System.nanoTime() - start);
+            return bytes;
+        }
+        Path path = pathOf(hash);
+        if (!Files.exists(path)) {
+            return null;
+        }
+        return Files.readAllBytes(path);
+    }
+
+    /**
+     * 以流的方式读取正文（压缩的正文边读边解压），用于分块加载超大正文；不存在时返回 null
+     */
+    public Reader openReader(String hash) throws IOException {
+        checkHash(hash);
+        Path compressed = compressedPathOf(hash);
+        boolean isCompressed = Files.exists(compressed);
+        Path path = isCompressed ? compressed : pathOf(hash);
+        if (!isCompressed && !Files.exists(path)) {
+            return null;
+        }
+        InputStream in = new BufferedInputStream(Files.newInputStream(path), 64 * 1024);
+        if (isCompressed) {
+            // 跳过 8 字节原始长度
+            if (in.readNBytes(Long.BYTES).length != Long.BYTES) {
+                in.close();
+                throw new IOException("Corrupted compressed blob " + hash);
+            }
+            in = new InflaterInputStream(in);
+        }
+        return new InputStreamReader(in, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 删除正文
+     */
+    public void delete(String hash) throws IOException {
+        checkHash(hash);
+        Files.deleteIfExists(pathOf(hash));
+        Files.deleteIfExists(compressedPathOf(hash));
+    }
+
+    public boolean exists(String hash) {
+        return isValidHash(hash) && (Files.exists(pathOf(hash)) || Files.exists(compressedPathOf(hash)));
+    }
+
+    /**
+     * 正文原始大小（字节），压缩文件只读取文件头
+     */
+    public long rawSize(String hash) throws IOException {
+        checkHash(hash);
+        Path compressed = compressedPathOf(hash);
+        if (Files.exists(compressed)) {
+            try (FileChannel channel = FileChannel.open(compressed, StandardOpenOption.READ)) {
+                ByteBuffer header = ByteBuffer.allocate(Long.BYTES);
+                channel.read(header, 0);
+                header.flip();
+                return header.remaining() == Long.BYTES ? header.getLong() : 0;
+            }
+        }
+        return Files.size(pathOf(hash));
+    }
+
+    /**
+     * 正文在磁盘上的实际大小（字节）
+     */
+    public long storedSize(String hash) throws IOException {
+        checkHash(hash);
+        Path compressed = compressedPathOf(hash);
+        return Files.size(Files.exists(compressed) ? compressed : pathOf(hash));
+    }
+
+    /**
+     * 用不同压缩级别压缩样本正文，输出大小和耗时对比，用于选择阈值和级别
+     */
+    public String compareLevels(List<String> sampleHashes, int[] levels) throws IOException {
+        long rawTotal = 0;
+        byte[][] samples = new byte[sampleHashes.size()][];
+        for (int i = 0; i < samples.length; i++) {
+            byte[] bytes = getBytes(sampleHashes.get(i));
+            samples[i] = bytes != null ? bytes : new byte[0];
+            rawTotal += samples[i].length;
+        }
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("级别对比（样本 %d 份，共 %s）:",
+                samples.length, ContentPool.formatSize(rawTotal)));
+        for (int level : levels) {
+            long compressedTotal = 0;
+            long compressNanos = 0;
+            long decompressNanos = 0;
+            for (byte[] sample : samples) {
+                long start = System.nanoTime();
+                byte[] compressed = compress(sample, level);
+                compressNanos += System.nanoTime() - start;
+                compressedTotal += compressed.length;
+                start = System.nanoTime();
+                decompress(ByteBuffer.wrap(compressed));
+                decompressNanos += System.nanoTime() - start;
+            }
+            report.append(String.format("%n  级别 %d: %s (%.1f%%), 压缩 %.1f ms, 解压 %.1f ms",
+                    level, ContentPool.formatSize(compressedTotal),
+                    rawTotal > 0 ? compressedTotal * 100.0 / rawTotal : 100.0,
+                    compressNanos / 1e6, decompressNanos / 1e6));
+        }
+        return report.toString();
+    }
+
+    /**
+     * 内容哈希是否是 64 位小写十六进制；其他值（如导入文件中被篡改的 contentRef）不能用来拼路径，
+     * 否则 "../" 之类的值会指向仓库目录之外
+     */
+    public static boolean isValidHash(String hash) {
+        if (hash == null || hash.length() != 64) {
+            return false;
+        }
+        for (int i = 0; i < hash.length(); i++) {
+            char c = hash.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void checkHash(String hash) throws IOException {
+        if (!isValidHash(hash)) {
+            throw new IOException("Invalid content hash: " + hash);
+        }
+    }
+
+    Path pathOf(String hash) {
+        if (!isValidHash(hash)) {
+            throw new IllegalArgumentException("Invalid content hash: " + hash);
+        }
+        return root.resolve(hash.substring(0, 2)).resolve(hash);
+    }
+
+    private Path compressedPathOf(String hash) {
+        return pathOf(hash).resolveSibling(hash + COMPRESSED_SUFFIX);
+    }
+
+    static void moveAtomically(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * 压缩：8 字节原始长度 + Deflate 数据
+     */
+    static byte[] compress(byte[] bytes, int level) {
+        Deflater deflater = new Deflater(level);
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, bytes.length / 4));
+            out.write(ByteBuffer.allocate(Long.BYTES).putLong(bytes.length).array(), 0, Long.BYTES);
+            byte[] buffer = new byte[64 * 1024];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * 解压 compress 的输出
+     */
+    static byte[] decompress(ByteBuffer buffer) throws IOException {
+        long rawLength = buffer.getLong();
+        if (rawLength < 0 || rawLength > Integer.MAX_VALUE) {
+            throw new IOException("Corrupted compressed blob, length " + rawLength);
+        }
+        byte[] out = new byte[(int) rawLength];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(buffer);
+            int offset = 0;
+            while (offset < out.length) {
+                int n = inflater.inflate(out, offset, out.length - offset);
+                if (n == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Corrupted compressed blob, truncated at " + offset);
+                }
+                offset += n;
+            }
+            return out;
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupted compressed blob", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * 计算 SHA-256 十六进制字符串
+     */
+    public static String hash(byte[] bytes) {
+        return toHex(newDigest().digest(bytes));
+    }
+
+    /**
+     * 计算正文的内容指纹
+     */
+    public static String fingerprint(String content) {
+        return hash((content != null ? content : "").getBytes(StandardCharsets.UTF_8));
+    }
+
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // 所有 JRE 都必须支持 SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String toHex(byte[] digest) {
+        char[] chars = new char[digest.length * 2];
+        for (int i = 0; i < digest.length; i++) {
+            chars[i * 2] = HEX[(digest[i] >> 4) & 0xF];
+            chars[i * 2 + 1] = HEX[digest[i] & 0xF];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * 写入时同时计算哈希和原始字节数
+     */
+    private static class HashingOutputStream extends FilterOutputStream {
+        private final MessageDigest digest;
+        long count;
+
+        HashingOutputStream(OutputStream out, MessageDigest digest) {
+            super(out);
+            this.digest = digest;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            digest.update((byte) b);
+            count++;
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            digest.update(b, off, len);
+            count += len;
+            out.write(b, off, len);
+        }
+    }
+
+    /**
+     * 压缩读写统计
+     */
+    public static class CompressionStats {
+        private long writes;
+        private long writtenBytes;
+        private long compressions;
+        private long compressInBytes;
+        private long compressOutBytes;
+        private long compressNanos;
+        private long decompressions;
+        private long decompressNanos;
+
+        synchronized void recordWrite(long storedBytes) {
+            writes++;
+            writtenBytes += storedBytes;
+        }
+
+        synchronized void recordCompress(long rawBytes, long compressedBytes, long nanos) {
+            compressions++;
+            compressInBytes += rawBytes;
+            compressOutBytes += compressedBytes;
+            compressNanos += nanos;
+        }
+
+        synchronized void recordDecompress(long nanos) {
+            decompressions++;
+            decompressNanos += nanos;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return String.format("本次会话: 写入 %d 份 (%s), 压缩 %d 份 %s -> %s, 压缩耗时 %.1f ms, 解压 %d 次 耗时 %.1f ms",
+                    writes, ContentPool.formatSize(writtenBytes), compressions,
+                    ContentPool.formatSize(compressInBytes), ContentPool.formatSize(compressOutBytes),
+                    compressNanos / 1e6, decompressions, decompressNanos / 1e6);
+        }
+    }
+}
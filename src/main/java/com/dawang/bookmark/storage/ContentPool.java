@@ -0,0 +1,317 @@
+package com.dawang.bookmark.storage;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 正文共享池
+ * 相同内容的收藏共享同一份存储和同一个堆上的 String，按引用计数回收
+ */
+public class ContentPool {
+
+    private final BlobStore blobStore;
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    public ContentPool(BlobStore blobStore) {
+        this.blobStore = blobStore;
+    }
+
+    public BlobStore getBlobStore() {
+        return blobStore;
+    }
+
+    /**
+     * 登记一份正文引用；正文首次出现时写入内容仓库
+     * 与 store 一样在锁外计算哈希、压缩和写文件，只有登记在锁内；会读写磁盘，应在后台线程调用
+     *
+     * @param hash    内容指纹，为 null 时现场计算
+     * @param content 正文
+     * @return 内容指纹
+     */
+    public String acquire(String hash, String content) throws IOException {
+        String text = content != null ? content : "";
+        byte[] bytes = null;
+        if (hash == null) {
+            bytes = text.getBytes(StandardCharsets.UTF_8);
+            hash = BlobStore.hash(bytes);
+        }
+        while (true) {
+            synchronized (this) {
+                Entry entry = entries.get(hash);
+                // 加载时登记的条目尚未确认文件存在，这里顺便检查
+                if (entry != null && (entry.rawSize >= 0 || blobStore.exists(hash))) {
+                    register(entry, text);
+                    return hash;
+                }
+            }
+            if (bytes == null) {
+                bytes = text.getBytes(StandardCharsets.UTF_8);
+            }
+            blobStore.put(hash, bytes);
+            // 写入完成到加锁之间同一正文恰好被删除时重新写入
+            synchronized (this) {
+                if (blobStore.exists(hash)) {
+                    Entry entry = entries.computeIfAbsent(hash, k -> new Entry());
+                    if (entry.rawSize < 0) {
+                        entry.rawSize = bytes.length;
+                    }
+                    register(entry, text);
+                    return hash;
+                }
+            }
+        }
+    }
+
+    private static void register(Entry entry, String text) {
+        entry.refCount++;
+        if (entry.cached() == null) {
+            entry.content = new WeakReference<>(text);
+        }
+    }
+
+    /**
+     * 流式写入正文并登记一份引用（写入时不持有锁，可在后台线程执行），返回内容指纹
+     * 引用在锁内确认文件仍存在后登记，之后 deleteIfUnreferenced 不会再删除它；
+     * 写入完成到加锁之间同一正文恰好被删除时重新写入。调用方用完后需 release 这份引用
+     */
+    public String store(CharSequence text, int start, int end, BooleanSupplier cancelled) throws IOException {
+        while (true) {
+            String hash = blobStore.put(text, start, end, cancelled);
+            synchronized (this) {
+                if (blobStore.exists(hash)) {
+                    retain(hash);
+                    return hash;
+                }
+            }
+        }
+    }
+
+    /**
+     * 登记一份已存储正文的引用（加载状态或流式写入后使用）
+     */
+    public synchronized void retain(String hash) {
+        if (hash == null) {
+            return;
+        }
+        entries.computeIfAbsent(hash, k -> new Entry()).refCount++;
+    }
+
+    /**
+     * 释放一份引用；存储的正文不在这里删除（未加载的分片可能仍引用它），由调用方决定是否 deleteIfUnreferenced
+     *
+     * @return 是否已是最后一份引用
+     */
+    public synchronized boolean release(String hash) {
+        if (hash == null) {
+            return false;
+        }
+        Entry entry = entries.get(hash);
+        if (entry == null) {
+            return false;
+        }
+        if (--entry.refCount <= 0) {
+            entries.remove(hash);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 正文没有已登记的引用时删除存储的正文
+     *
+     * @return 是否已删除
+     */
+    public synchronized boolean deleteIfUnreferenced(String hash) {
+        if (hash == null || entries.containsKey(hash)) {
+            return false;
+        }
+        try {
+            blobStore.delete(hash);
+            return true;
+        } catch (IOException e) {
+            com.intellij.openapi.diagnostic.Logger.getInstance(ContentPool.class)
+                    .warn("Failed to delete bookmark content " + hash, e);
+            return false;
+        }
+    }
+
+    /**
+     * 读取正文；已在堆上的正文直接复用同一个实例
+     */
+    public String get(String hash) throws IOException {
+        synchronized (this) {
+            Entry entry = entries.get(hash);
+            String cached = entry != null ? entry.cached() : null;
+            if (cached != null) {
+                return cached;
+            }
+        }
+        String loaded = blobStore.get(hash);
+        if (loaded == null) {
+            return null;
+        }
+        synchronized (this) {
+            Entry entry = entries.get(hash);
+            if (entry == null) {
+                return loaded;
+            }
+            // 并发加载时以先放入的实例为准
+            String cached = entry.cached();
+            if (cached != null) {
+                return cached;
+            }
+            entry.content = new WeakReference<>(loaded);
+            return loaded;
+        }
+    }
+
+    /**
+     * 统计去重效果
+     * 条目在锁内复制，未知的大小在锁外读取文件得到，扫描期间不阻塞 acquire/retain/release
+     */
+    public Stats getStats() {
+        Stats stats = new Stats();
+        for (Measured measured : snapshot()) {
+            measure(measured);
+            stats.uniqueBodies++;
+            stats.references += measured.refCount;
+            stats.uniqueBytes += measured.rawSize;
+            stats.storedBytes += measured.storedSize;
+            stats.logicalBytes += measured.rawSize * measured.refCount;
+        }
+        return stats;
+    }
+
+    /**
+     * 选取原始大小不低于 minRawSize 的正文作为样本
+     */
+    public List<String> sampleHashes(int max, long minRawSize) {
+        List<String> samples = new ArrayList<>();
+        for (Measured measured : snapshot()) {
+            if (samples.size() >= max) {
+                break;
+            }
+            measure(measured);
+            if (measured.rawSize >= minRawSize) {
+                samples.add(measured.hash);
+            }
+        }
+        return samples;
+    }
+
+    private synchronized List<Measured> snapshot() {
+        List<Measured> snapshot = new ArrayList<>(entries.size());
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            Entry entry = e.getValue();
+            snapshot.add(new Measured(e.getKey(), entry.refCount, entry.rawSize, entry.storedSize));
+        }
+        return snapshot;
+    }
+
+    /**
+     * 在锁外读取未知的大小，再把结果记回仍存在的条目
+     */
+    private void measure(Measured measured) {
+        if (measured.rawSize >= 0 && measured.storedSize >= 0) {
+            return;
+        }
+        try {
+            if (measured.rawSize < 0) {
+                measured.rawSize = blobStore.rawSize(measured.hash);
+            }
+            if (measured.storedSize < 0) {
+                measured.storedSize = blobStore.storedSize(measured.hash);
+            }
+        } catch (IOException ex) {
+            measured.rawSize = Math.max(measured.rawSize, 0);
+            measured.storedSize = Math.max(measured.storedSize, 0);
+        }
+        synchronized (this) {
+            Entry entry = entries.get(measured.hash);
+            if (entry != null) {
+                if (entry.rawSize < 0) {
+                    entry.rawSize = measured.rawSize;
+                }
+                if (entry.storedSize < 0) {
+                    entry.storedSize = measured.storedSize;
+                }
+            }
+        }
+    }
+
+    /**
+     * 统计时复制出的条目
+     */
+    private static class Measured {
+        final String hash;
+        final int refCount;
+        long rawSize;
+        long storedSize;
+
+        Measured(String hash, int refCount, long rawSize, long storedSize) {
+            this.hash = hash;
+            this.refCount = refCount;
+            this.rawSize = rawSize;
+            this.storedSize = storedSize;
+        }
+    }
+
+    private static class Entry {
+        int refCount;
+        long rawSize = -1;
+        long storedSize = -1;
+        WeakReference<String> content;
+
+        String cached() {
+            return content != null ? content.get() : null;
+        }
+    }
+
+    /**
+     * 去重统计数据
+     */
+    public static class Stats {
+        public int uniqueBodies;
+        public long references;
+        public long uniqueBytes;
+        public long storedBytes;
+        public long logicalBytes;
+
+        /**
+         * 去重比例：逻辑大小 / 去重后大小
+         */
+        public double getDedupRatio() {
+            return uniqueBytes > 0 ? (double) logicalBytes / uniqueBytes : 1.0;
+        }
+
+        /**
+         * 压缩比例：去重后大小 / 磁盘大小
+         */
+        public double getCompressionRatio() {
+            return storedBytes > 0 ? (double) uniqueBytes / storedBytes : 1.0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("正文: %d 份引用 / %d 份实际存储, 逻辑大小 %s, 去重后 %s, 磁盘 %s, 去重比 %.2f, 压缩比 %.2f",
+                    references, uniqueBodies, formatSize(logicalBytes), formatSize(uniqueBytes),
+                    formatSize(storedBytes), getDedupRatio(), getCompressionRatio());
+        }
+    }
+
+    public static String formatSize(long bytes) {
+        if (bytes < 1024) {
+            return bytes + " B";
+        }
+        if (bytes < 1024 * 1024) {
+            return String.format("%.1f KB", bytes / 1024.0);
+        }
+        return String.format("%.1f MB", bytes / (1024.0 * 1024));
+    }
+}
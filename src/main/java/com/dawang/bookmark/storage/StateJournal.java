@@ -0,0 +1,433 @@
+package com.dawang.bookmark.storage;
+
+import com.dawang.bookmark.model.BookmarkItem;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * 收藏变更日志（只追加）
+ * 每次新增、修改、删除、清空记录一条，写盘成本只与该收藏的大小有关；写入先缓存在内存，由保存线程批量写入并 fsync
+ * 记录格式: 4 字节载荷长度 + 4 字节 CRC32 + 载荷（1 字节操作类型 + 数据），崩溃造成的不完整尾部在打开时截掉；
+ * 文件中间的记录损坏或文件头无法识别（如更新版本写入）时，重放到损坏处为止，原文件改名保留（.corrupted-时间戳）而不是截断
+ * 压缩时把当前日志轮转为 .old，快照写成功后删除；启动时依次重放 .old 和当前日志
+ * 重放是幂等的（按 ID 覆盖、删除、清空），快照已包含的记录再重放一遍结果不变
+ */
+public class StateJournal implements Closeable {
+
+    // 日志超过此大小（字节）时压缩进快照，可通过 -Dbookmark.journal.compact.bytes 调整
+    public static final long COMPACT_THRESHOLD = Long.getLong("bookmark.journal.compact.bytes", 4L * 1024 * 1024);
+
+    private static final int MAGIC = 0x424B4A31; // "BKJ1"
+    private static final int HEADER_SIZE = 8;
+    private static final int VERSION = 1;
+    private static final byte OP_PUT = 1;
+    private static final byte OP_REMOVE = 2;
+    private static final byte OP_CLEAR = 3;
+
+    /**
+     * 重放回调
+     */
+    public interface Replayer {
+        /** 新增或覆盖同 ID 的收藏 */
+        void put(BookmarkItem item);
+
+        void remove(String id);
+
+        void clear();
+    }
+
+    private final Path file;
+    private final Path rotatedFile;
+    private FileChannel channel;
+    // 写盘和轮转时持有（先于对象锁获取），追加记录只需对象锁，不会被 fsync 阻塞
+    private final Object writeLock = new Object();
+    // 尚未写盘的记录
+    private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private int pendingRecords;
+
+    // 打开时把损坏的日志移到了一边，已重放的记录只在内存中，需要尽快压缩进快照
+    private boolean setAside;
+
+    private long appendedRecords;
+    private long syncs;
+    private long compactions;
+    private long lastCompactionNanos;
+
+    public StateJournal(Path file) {
+        this.file = file;
+        this.rotatedFile = file.resolveSibling(file.getFileName() + ".old");
+    }
+
+    /**
+     * 重放 .old 和当前日志，然后打开当前日志用于追加
+     * 只截掉崩溃留下的不完整尾部；其他损坏的日志改名保留，当前日志改为新建
+     */
+    public synchronized void open(Replayer replayer) throws IOException {
+        Files.createDirectories(file.getParent());
+        // .old 在压缩完成后会被删除，损坏时先保留一份
+        if (Files.exists(rotatedFile) && !replay(rotatedFile, replayer).tornTail) {
+            setAside(rotatedFile);
+        }
+        Replayed current = Files.exists(file) ? replay(file, replayer) : null;
+        if (current != null && !current.tornTail) {
+            setAside(file);
+            current = null;
+        }
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        if (current == null || current.valid < HEADER_SIZE) {
+            channel.truncate(0);
+            writeHeader(channel);
+        } else if (channel.size() > current.valid) {
+            com.intellij.openapi.diagnostic.Logger.getInstance(StateJournal.class).info("Truncating incomplete tail of "
+                    + file + " (" + (channel.size() - current.valid) + " bytes)");
+            channel.truncate(current.valid);
+        }
+        channel.position(channel.size());
+    }
+
+    private void setAside(Path path) throws IOException {
+        Path target = path.resolveSibling(path.getFileName() + ".corrupted-" + System.currentTimeMillis());
+        Files.move(path, target);
+        setAside = true;
+        com.intellij.openapi.diagnostic.Logger.getInstance(StateJournal.class)
+                .warn("Moved corrupted bookmark journal to " + target);
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * 只读重放 .old 和当前日志，不打开日志也不截断（用于读取未加载分片的内容）
+     */
+    public static void read(Path file, Replayer replayer) throws IOException {
+        Path rotated = file.resolveSibling(file.getFileName() + ".old");
+        if (Files.exists(rotated)) {
+            replay(rotated, replayer);
+        }
+        if (Files.exists(file)) {
+            replay(file, replayer);
+        }
+    }
+
+    /**
+     * 上次压缩未完成（还有 .old 日志），需要尽快重新压缩
+     */
+    public boolean hasRotated() {
+        return Files.exists(rotatedFile);
+    }
+
+    /**
+     * 打开时有损坏的日志被移到一边，其中已重放的记录需要压缩进快照
+     */
+    public synchronized boolean hasSetAside() {
+        return setAside;
+    }
+
+    public synchronized void put(BookmarkItem item) {
+        append(OP_PUT, out -> writeItem(out, item));
+    }
+
+    public synchronized void remove(String id) {
+        append(OP_REMOVE, out -> writeString(out, id));
+    }
+
+    public synchronized void clear() {
+        append(OP_CLEAR, out -> {
+        });
+    }
+
+    private interface PayloadWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private void append(byte op, PayloadWriter writer) {
+        try {
+            ByteArrayOutputStream payload = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(payload);
+            out.writeByte(op);
+            writer.write(out);
+            out.flush();
+            byte[] bytes = payload.toByteArray();
+            CRC32 crc = new CRC32();
+            crc.update(bytes);
+            DataOutputStream record = new DataOutputStream(pending);
+            record.writeInt(bytes.length);
+            record.writeInt((int) crc.getValue());
+            record.write(bytes);
+            pendingRecords++;
+            appendedRecords++;
+        } catch (IOException e) {
+            // 写入内存不会失败
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 把缓存的记录写入日志并 fsync，返回写入的字节数
+     */
+    public long flush() throws IOException {
+        synchronized (writeLock) {
+            byte[] bytes;
+            synchronized (this) {
+                if (pendingRecords == 0) {
+                    return 0;
+                }
+                bytes = pending.toByteArray();
+                pending = new ByteArrayOutputStream();
+                pendingRecords = 0;
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+            synchronized (this) {
+                syncs++;
+            }
+            return bytes.length;
+        }
+    }
+
+    /**
+     * 当前日志大小（含尚未写盘的记录）
+     */
+    public synchronized long size() throws IOException {
+        return channel.size() + pending.size();
+    }
+
+    /**
+     * 开始压缩：当前日志（连同缓存的记录）转为 .old，之后的记录写入新日志
+     * 调用方须保证轮转时刻与快照内容一致（持有状态锁）；上次压缩失败留下的 .old 会被追加而不是覆盖
+     */
+    public void rotate() throws IOException {
+        synchronized (writeLock) {
+            flush();
+            synchronized (this) {
+                rotateLocked();
+            }
+        }
+    }
+
+    private void rotateLocked() throws IOException {
+        if (Files.exists(rotatedFile)) {
+            try (FileChannel rotated = FileChannel.open(rotatedFile, StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND)) {
+                long position = HEADER_SIZE;
+                long end = channel.size();
+                while (position < end) {
+                    position += channel.transferTo(position, end - position, rotated);
+                }
+                rotated.force(false);
+            }
+            channel.truncate(HEADER_SIZE);
+            channel.position(HEADER_SIZE);
+            channel.force(false);
+            return;
+        }
+        channel.close();
+        BlobStore.moveAtomically(file, rotatedFile);
+        channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        writeHeader(channel);
+        channel.force(true);
+    }
+
+    /**
+     * 快照写入成功，删除轮转出的日志
+     */
+    public synchronized void completeCompaction(long nanos) throws IOException {
+        Files.deleteIfExists(rotatedFile);
+        compactions++;
+        lastCompactionNanos = nanos;
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (writeLock) {
+            if (channel != null && channel.isOpen()) {
+                flush();
+                channel.close();
+            }
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        long size;
+        try {
+            size = channel != null && channel.isOpen() ? channel.size() : 0;
+        } catch (IOException e) {
+            size = -1;
+        }
+        return String.format("变更日志: %s (压缩阈值 %s), 本次会话记录 %d 条, fsync %d 次, 压缩 %d 次 (最近 %.1f ms)",
+                ContentPool.formatSize(size), ContentPool.formatSize(COMPACT_THRESHOLD), appendedRecords, syncs,
+                compactions, lastCompactionNanos / 1e6);
+    }
+
+    private static void writeHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION);
+        header.flip();
+        channel.write(header, 0);
+        channel.position(HEADER_SIZE);
+    }
+
+    /**
+     * 重放结果：最后一条完整记录的结束位置，以及之后的内容是否只是崩溃留下的不完整尾部（可以截掉）
+     */
+    private static final class Replayed {
+        final long valid;
+        final boolean tornTail;
+
+        Replayed(long valid, boolean tornTail) {
+            this.valid = valid;
+            this.tornTail = tornTail;
+        }
+    }
+
+    /**
+     * 重放一个日志文件直到第一条无效记录
+     * 无效记录一直延伸到文件末尾（没写完，或最后一条的内容没落盘）时视为不完整尾部，否则视为损坏并记录日志
+     */
+    private static Replayed replay(Path path, Replayer replayer) throws IOException {
+        long fileSize = Files.size(path);
+        try (InputStream stream = Files.newInputStream(path);
+                DataInputStream in = new DataInputStream(new BufferedInputStream(stream, 64 * 1024))) {
+            try {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                    return corrupted(path, "unknown header", 0);
+                }
+            } catch (EOFException e) {
+                // 文件头还没写完
+                return new Replayed(0, true);
+            }
+            long valid = HEADER_SIZE;
+            while (true) {
+                byte[] payload;
+                try {
+                    int length = in.readInt();
+                    int expected = in.readInt();
+                    if (length <= 0) {
+                        return corrupted(path, "invalid record length " + length, valid);
+                    }
+                    // 长度超出文件时不按它分配内存
+                    long end = valid + 8 + length;
+                    if (end > fileSize) {
+                        return new Replayed(valid, true);
+                    }
+                    payload = new byte[length];
+                    in.readFully(payload);
+                    CRC32 crc = new CRC32();
+                    crc.update(payload);
+                    if ((int) crc.getValue() != expected) {
+                        return end == fileSize ? new Replayed(valid, true)
+                                : corrupted(path, "checksum mismatch", valid);
+                    }
+                } catch (EOFException e) {
+                    return new Replayed(valid, true);
+                }
+                apply(payload, replayer);
+                valid += 8 + payload.length;
+            }
+        }
+    }
+
+    private static Replayed corrupted(Path path, String reason, long position) {
+        com.intellij.openapi.diagnostic.Logger.getInstance(StateJournal.class)
+                .warn("Bookmark journal " + path + " is corrupted at byte " + position + " (" + reason
+                        + "), later records are not replayed");
+        return new Replayed(position, false);
+    }
+
+    private static void apply(byte[] payload, Replayer replayer) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        switch (in.readByte()) {
+            case OP_PUT:
+                replayer.put(readItem(in));
+                break;
+            case OP_REMOVE:
+                replayer.remove(readString(in));
+                break;
+            case OP_CLEAR:
+                replayer.clear();
+                break;
+            default:
+                // 未知操作（更新版本写入），跳过
+                break;
+        }
+    }
+
+    static void writeItem(DataOutputStream out, BookmarkItem item) throws IOException {
+        writeString(out, item.getId());
+        writeString(out, item.getInlineContent());
+        writeString(out, item.getContentRef());
+        writeString(out, item.getPreview());
+        writeString(out, item.getLabel());
+        writeString(out, item.getNote());
+        out.writeLong(item.getTimestamp());
+        writeString(out, item.getFilePath());
+        out.writeInt(item.getStartOffset());
+        out.writeInt(item.getEndOffset());
+        writeString(out, item.getSourceType());
+        writeString(out, item.getSourceName());
+    }
+
+    static BookmarkItem readItem(DataInputStream in) throws IOException {
+        BookmarkItem item = new BookmarkItem();
+        item.setId(readString(in));
+        String inline = readString(in);
+        if (inline != null) {
+            item.setInlineContent(inline);
+        }
+        item.setContentRef(readString(in));
+        item.setPreview(readString(in));
+        item.setLabel(readString(in));
+        item.setNote(readString(in));
+        item.setTimestamp(in.readLong());
+        item.setFilePath(readString(in));
+        item.setStartOffset(in.readInt());
+        item.setEndOffset(in.readInt());
+        item.setSourceType(readString(in));
+        item.setSourceName(readString(in));
+        return item;
+    }
+
+    /**
+     * 可为 null 的字符串：4 字节 UTF-8 长度（null 为 -1）+ 内容；不受 writeUTF 的 64KB 限制
+     */
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
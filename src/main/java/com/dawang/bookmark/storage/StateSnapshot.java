@@ -0,0 +1,88 @@
+package com.dawang.bookmark.storage;
+
+import com.dawang.bookmark.model.BookmarkItem;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * 收藏列表快照文件
+ * 快照使用 BinaryStateCodec 的二进制格式；XML 格式用于导入导出和迁移旧快照
+ * 先写临时文件并刷到磁盘，再原子改名替换，写到一半崩溃时旧文件仍然完整
+ */
+public final class StateSnapshot {
+
+    private StateSnapshot() {
+    }
+
+    private interface Encoder {
+        void write(OutputStream out) throws IOException;
+    }
+
+    /**
+     * 写入二进制快照，返回文件大小（字节）
+     */
+    public static long write(Path file, List<BookmarkItem> items) throws IOException {
+        return writeAtomically(file, out -> BinaryStateCodec.write(items, out));
+    }
+
+    /**
+     * 读取二进制快照，文件不存在时返回 null
+     */
+    public static List<BookmarkItem> read(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        return BinaryStateCodec.read(Files.readAllBytes(file));
+    }
+
+    /**
+     * 导出为 XML
+     *
+     * @param contentSource 取正文写入文件（导出文件不依赖内容仓库）；为 null 时只写内联正文
+     */
+    public static long writeXml(Path file, List<BookmarkItem> items, Function<BookmarkItem, String> contentSource)
+            throws IOException {
+        return writeAtomically(file, out -> XmlStateCodec.write(items, out, contentSource));
+    }
+
+    /**
+     * 读取 XML（导入文件、旧版本快照或平台的 bookmark-plugin.xml），文件不存在时返回 null
+     */
+    public static List<BookmarkItem> readXml(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file), 64 * 1024)) {
+            return XmlStateCodec.read(in);
+        }
+    }
+
+    private static long writeAtomically(Path file, Encoder encoder) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024);
+                encoder.write(out);
+                out.flush();
+                channel.force(true);
+            }
+            long size = Files.size(temp);
+            BlobStore.moveAtomically(temp, file);
+            return size;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+}
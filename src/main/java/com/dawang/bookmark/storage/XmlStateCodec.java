@@ -0,0 +1,215 @@
+package com.dawang.bookmark.storage;
+
+import com.dawang.bookmark.model.BookmarkItem;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * 收藏列表的 XML 读写，用于导入导出和迁移旧数据
+ * 格式与平台保存 BookmarkPluginState 组件时一致（component / option name="bookmarks" / list / BookmarkItem），
+ * 因此也能直接读取旧版本的 bookmark-plugin.xml
+ */
+public final class XmlStateCodec {
+
+    private static final String COMPONENT = "BookmarkPluginState";
+
+    private XmlStateCodec() {
+    }
+
+    /**
+     * 写入收藏列表（只写元数据和内联正文，不加载内容仓库中的正文）
+     */
+    public static void write(List<BookmarkItem> items, OutputStream out) throws IOException {
+        write(items, out, null);
+    }
+
+    /**
+     * 写入收藏列表
+     *
+     * @param contentSource 不为 null 时每条收藏的正文都由它取出并内联写入（逐条读取，不在收藏项上缓存）
+     */
+    public static void write(List<BookmarkItem> items, OutputStream out, Function<BookmarkItem, String> contentSource)
+            throws IOException {
+        Writer xml = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+        xml.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<application>\n  <component name=\"");
+        xml.write(COMPONENT);
+        xml.write("\">\n    <option name=\"bookmarks\">\n      <list>\n");
+        for (BookmarkItem item : items) {
+            xml.write("        <BookmarkItem>\n");
+            if (contentSource != null) {
+                writeOption(xml, "content", contentSource.apply(item));
+            } else {
+                writeOption(xml, "content", item.getInlineContent());
+                writeOption(xml, "contentRef", item.getContentRef());
+            }
+            writeOption(xml, "endOffset", item.getEndOffset() != 0 ? String.valueOf(item.getEndOffset()) : null);
+            writeOption(xml, "filePath", item.getFilePath());
+            writeOption(xml, "id", item.getId());
+            writeOption(xml, "label", item.getLabel());
+            writeOption(xml, "note", item.getNote());
+            writeOption(xml, "preview", item.getPreview());
+            writeOption(xml, "sourceName", item.getSourceName());
+            writeOption(xml, "sourceType", item.getSourceType());
+            writeOption(xml, "startOffset", item.getStartOffset() != 0 ? String.valueOf(item.getStartOffset()) : null);
+            writeOption(xml, "timestamp", String.valueOf(item.getTimestamp()));
+            xml.write("        </BookmarkItem>\n");
+        }
+        xml.write("      </list>\n    </option>\n  </component>\n</application>\n");
+        xml.flush();
+    }
+
+    private static void writeOption(Writer xml, String name, String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        xml.write("          <option name=\"");
+        xml.write(name);
+        xml.write("\" value=\"");
+        writeEscaped(xml, value);
+        xml.write("\" />\n");
+    }
+
+    /**
+     * 属性值转义；换行和制表符写成字符引用，否则读取时会被规范化为空格
+     * XML 1.0 不允许出现的字符（如控制台输出中的 ESC）直接去掉
+     */
+    private static void writeEscaped(Writer xml, String value) throws IOException {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '&':
+                    xml.write("&amp;");
+                    break;
+                case '<':
+                    xml.write("&lt;");
+                    break;
+                case '>':
+                    xml.write("&gt;");
+                    break;
+                case '"':
+                    xml.write("&quot;");
+                    break;
+                case '\n':
+                    xml.write("&#10;");
+                    break;
+                case '\r':
+                    xml.write("&#13;");
+                    break;
+                case '\t':
+                    xml.write("&#9;");
+                    break;
+                default:
+                    if (c >= 0x20 && c != 0xFFFE && c != 0xFFFF) {
+                        xml.write(c);
+                    }
+                    break;
+            }
+        }
+    }
+
+    /**
+     * 读取收藏列表；文件中的其他组件和未知选项被忽略
+     */
+    public static List<BookmarkItem> read(InputStream in) throws IOException {
+        List<BookmarkItem> items = new ArrayList<>();
+        try {
+            XMLInputFactory factory = XMLInputFactory.newInstance();
+            factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+            factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+            XMLStreamReader xml = factory.createXMLStreamReader(in);
+            BookmarkItem item = null;
+            while (xml.hasNext()) {
+                int event = xml.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    String element = xml.getLocalName();
+                    if ("BookmarkItem".equals(element)) {
+                        item = new BookmarkItem();
+                    } else if (item != null && "option".equals(element)) {
+                        readOption(item, xml.getAttributeValue(null, "name"), xml.getAttributeValue(null, "value"));
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT && "BookmarkItem".equals(xml.getLocalName())) {
+                    items.add(item);
+                    item = null;
+                }
+            }
+            xml.close();
+        } catch (XMLStreamException e) {
+            throw new IOException("Failed to read bookmark state", e);
+        }
+        return items;
+    }
+
+    private static void readOption(BookmarkItem item, String name, String value) {
+        if (name == null || value == null) {
+            return;
+        }
+        switch (name) {
+            case "content":
+                item.setInlineContent(value);
+                break;
+            case "contentRef":
+                // 导入的文件不可信，不是内容哈希的引用直接丢弃
+                if (BlobStore.isValidHash(value)) {
+                    item.setContentRef(value);
+                }
+                break;
+            case "endOffset":
+                item.setEndOffset(parseInt(value));
+                break;
+            case "filePath":
+                item.setFilePath(value);
+                break;
+            case "id":
+                item.setId(value);
+                break;
+            case "label":
+                item.setLabel(value);
+                break;
+            case "note":
+                item.setNote(value);
+                break;
+            case "preview":
+                item.setPreview(value);
+                break;
+            case "sourceName":
+                item.setSourceName(value);
+                break;
+            case "sourceType":
+                item.setSourceType(value);
+                break;
+            case "startOffset":
+                item.setStartOffset(parseInt(value));
+                break;
+            case "timestamp":
+                try {
+                    item.setTimestamp(Long.parseLong(value));
+                } catch (NumberFormatException ignored) {
+                    // 保留默认时间
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static int parseInt(String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -39,10 +39,8 @@ public class BookmarkInputDialog extends DialogWrapper {
         if (service == null) {
             return java.util.Collections.emptyList();
         }
-        return service.getAllBookmarks().stream()
-                .map(item -> item.getLabel())
-                .filter(label -> label != null && !label.trim().isEmpty())
-                .distinct()
+        return service.getLabels().stream()
+                .filter(label -> !label.trim().isEmpty())
                 .sorted()
                 .collect(Collectors.toList());
     }
@@ -1,41 +1,180 @@
 package com.dawang.bookmark.ui;
 
+import com.dawang.bookmark.editor.BookmarkNavigator;
 import com.dawang.bookmark.model.BookmarkItem;
+import com.dawang.bookmark.search.BookmarkSearchService;
+import com.dawang.bookmark.service.BookmarkEvent;
+import com.dawang.bookmark.service.BookmarkListener;
 import com.dawang.bookmark.service.BookmarkStateService;
 import com.intellij.icons.AllIcons;
+import com.intellij.openapi.Disposable;
 import com.intellij.openapi.actionSystem.ActionManager;
 import com.intellij.openapi.actionSystem.ActionToolbar;
 import com.intellij.openapi.actionSystem.DefaultActionGroup;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ModalityState;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.Messages;
+import com.intellij.ui.ColoredListCellRenderer;
+import com.intellij.ui.DocumentAdapter;
+import com.intellij.ui.SearchTextField;
+import com.intellij.ui.SimpleTextAttributes;
+import com.intellij.ui.components.JBList;
 import com.intellij.ui.components.JBScrollPane;
 import com.intellij.ui.treeStructure.Tree;
+import com.intellij.util.Alarm;
+import org.jetbrains.annotations.NotNull;
 
 import javax.swing.*;
+import javax.swing.event.TreeExpansionEvent;
+import javax.swing.event.TreeWillExpandListener;
 import javax.swing.tree.DefaultMutableTreeNode;
 import javax.swing.tree.DefaultTreeModel;
 import javax.swing.tree.TreePath;
+import javax.swing.tree.TreeSelectionModel;
 import java.awt.*;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.PriorityQueue;
+import java.util.Set;
 
 /**
  * 收藏工具窗口
+ * 通过 BookmarkListener.TOPIC 接收变更事件并增量更新树
  */
-public class BookmarkToolWindow {
+public class BookmarkToolWindow implements Disposable, BookmarkListener {
     private JPanel contentPanel;
     private Tree bookmarkTree;
     private DefaultTreeModel treeModel;
     private Project project;
 
+    private static final String TREE_CARD = "tree";
+    private static final String SEARCH_CARD = "search";
+    private static final int SEARCH_DELAY_MS = 150;
+    private static final int INDEX_POLL_MS = 300;
+    private static final String MODE_WORDS = "全文";
+    private static final String MODE_SUBSTRING = "子串";
+    private static final String MODE_REGEX = "正则";
+
+    private SearchTextField searchField;
+    private JComboBox<String> searchModeComboBox;
+    // 每次发起查询递增，后台正在执行的旧查询据此中止
+    private volatile int searchGeneration;
+    private Alarm searchAlarm;
+    private JPanel centerCards;
+    private JPanel searchPanel;
+    private JLabel searchStatusLabel;
+    private JBList<BookmarkItem> searchResultList;
+    private DefaultListModel<BookmarkItem> searchResultModel;
+    // 是否同时显示未打开项目的收藏
+    private boolean showAllProjects;
+
+    // 时间相同时按 ID 排序，保证顺序唯一，分页时已加载部分始终是完整顺序的前缀
+    private static final Comparator<BookmarkItem> NEWEST_FIRST = Comparator
+            .comparingLong(BookmarkItem::getTimestamp).reversed()
+            .thenComparing(BookmarkItem::getId, Comparator.nullsFirst(Comparator.naturalOrder()));
+    // 标签展开时每页加载的收藏数
+    private static final int PAGE_SIZE = 200;
+
+    // 标签 -> 标签树节点、收藏 ID -> 已加载的收藏树节点，用于增量更新时定位节点
+    private final Map<String, DefaultMutableTreeNode> labelTreeNodes = new HashMap<>();
+    private final Map<String, DefaultMutableTreeNode> itemTreeNodes = new HashMap<>();
+
     public BookmarkToolWindow(Project project) {
         this.project = project;
         initUI();
         loadBookmarks();
+        ApplicationManager.getApplication().getMessageBus().connect(this)
+                .subscribe(BookmarkListener.TOPIC, this);
+        // 预热一个浏览器，首次打开收藏时不必等待 JCEF 启动
+        ApplicationManager.getApplication().invokeLater(() -> BrowserPool.getInstance().prewarm(), ModalityState.any());
+        com.intellij.openapi.util.LowMemoryWatcher.register(() -> ApplicationManager.getApplication()
+                .invokeLater(this::dropCollapsedPages, ModalityState.any()), this);
+    }
+
+    /**
+     * 一次发布的变更按标签合并处理：每个标签的节点只删除、插入各一次，计数只更新一次
+     */
+    @Override
+    public void bookmarksChanged(@NotNull List<BookmarkEvent> events) {
+        Map<DefaultMutableTreeNode, Set<DefaultMutableTreeNode>> removedNodes = new LinkedHashMap<>();
+        Map<String, List<BookmarkItem>> addedItems = new LinkedHashMap<>();
+        Set<DefaultMutableTreeNode> changedLabels = new LinkedHashSet<>();
+        boolean recountAll = false;
+        for (BookmarkEvent event : events) {
+            BookmarkItem item = event.getItem();
+            switch (event.getType()) {
+                case ADDED:
+                    collectAdded(item, addedItems);
+                    break;
+                case REMOVED:
+                    collectRemoved(item, removedNodes, changedLabels);
+                    break;
+                case UPDATED:
+                    DefaultMutableTreeNode itemNode = itemTreeNodes.get(item.getId());
+                    if (itemNode == null) {
+                        // 节点未加载时不知道原标签，按标签索引刷新各标签计数
+                        recountAll = true;
+                        collectAdded(item, addedItems);
+                    } else if (((LabelNode) ((DefaultMutableTreeNode) itemNode.getParent()).getUserObject())
+                            .getLabel().equals(item.getLabel())) {
+                        itemNode.setUserObject(item);
+                        treeModel.nodeChanged(itemNode);
+                    } else {
+                        collectRemoved(item, removedNodes, changedLabels);
+                        collectAdded(item, addedItems);
+                    }
+                    break;
+                case CLEARED:
+                    // 队列把清空放在最前面，之后的变更已包含在重建的树中
+                    loadBookmarks();
+                    break;
+                default:
+                    break;
+            }
+        }
+        for (Map.Entry<DefaultMutableTreeNode, Set<DefaultMutableTreeNode>> entry : removedNodes.entrySet()) {
+            removeItemNodes(entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<String, List<BookmarkItem>> entry : addedItems.entrySet()) {
+            DefaultMutableTreeNode labelTreeNode = insertItemNodes(entry.getKey(), entry.getValue());
+            if (labelTreeNode != null) {
+                changedLabels.add(labelTreeNode);
+            }
+        }
+        if (recountAll) {
+            changedLabels.addAll(labelTreeNodes.values());
+        }
+        for (DefaultMutableTreeNode labelTreeNode : changedLabels) {
+            // 跳过已被移除的标签节点
+            if (labelTreeNode.getParent() != null) {
+                removeLabelIfEmptyOrUpdateCount(labelTreeNode);
+            }
+        }
+        // 搜索模式下刷新结果
+        if (!searchField.getText().trim().isEmpty()) {
+            scheduleSearch();
+        }
+    }
+
+    @Override
+    public void dispose() {
+        // 消息总线连接随本对象一起释放
+        if (showAllProjects) {
+            showAllProjects = false;
+            BookmarkStateService.getInstance().setShowAllProjects(false);
+        }
     }
 
     private void initUI() {
@@ -44,7 +183,11 @@ public class BookmarkToolWindow {
         // 创建工具栏
         DefaultActionGroup actionGroup = new DefaultActionGroup();
         actionGroup.add(new RefreshAction());
+        actionGroup.add(new ShowAllProjectsAction());
         actionGroup.add(new ClearAllAction());
+        actionGroup.add(new StorageStatsAction());
+        actionGroup.add(new ExportAction());
+        actionGroup.add(new ImportAction());
 
         ActionToolbar toolbar = ActionManager.getInstance().createActionToolbar(
                 "BookmarkToolbar", actionGroup, true);
@@ -53,10 +196,28 @@ public class BookmarkToolWindow {
         // 创建树形结构
         DefaultMutableTreeNode root = new DefaultMutableTreeNode("收藏");
         treeModel = new DefaultTreeModel(root);
+        // 标签节点在子节点加载前也显示为可展开
+        treeModel.setAsksAllowsChildren(true);
         bookmarkTree = new Tree(treeModel);
         bookmarkTree.setCellRenderer(new BookmarkTreeCellRenderer());
         bookmarkTree.setRootVisible(true);
         bookmarkTree.setShowsRootHandles(true);
+        // 支持多选，选中标签节点表示其下全部收藏
+        bookmarkTree.getSelectionModel().setSelectionMode(TreeSelectionModel.DISCONTIGUOUS_TREE_SELECTION);
+        // 标签展开时才加载第一页收藏节点
+        bookmarkTree.addTreeWillExpandListener(new TreeWillExpandListener() {
+            @Override
+            public void treeWillExpand(TreeExpansionEvent event) {
+                DefaultMutableTreeNode node = (DefaultMutableTreeNode) event.getPath().getLastPathComponent();
+                if (node.getUserObject() instanceof LabelNode && node.getChildCount() == 0) {
+                    loadNextPage(node);
+                }
+            }
+
+            @Override
+            public void treeWillCollapse(TreeExpansionEvent event) {
+            }
+        });
 
         // 添加右键菜单
         addContextMenu();
@@ -65,6 +226,14 @@ public class BookmarkToolWindow {
         bookmarkTree.addMouseListener(new MouseAdapter() {
             @Override
             public void mouseClicked(MouseEvent e) {
+                TreePath clicked = bookmarkTree.getPathForLocation(e.getX(), e.getY());
+                if (clicked != null) {
+                    DefaultMutableTreeNode node = (DefaultMutableTreeNode) clicked.getLastPathComponent();
+                    if (node.getUserObject() instanceof LoadMoreNode) {
+                        loadNextPage((DefaultMutableTreeNode) node.getParent());
+                        return;
+                    }
+                }
                 if (e.getClickCount() == 2) {
                     // 检查双击位置是否在有效节点上
                     TreePath path = bookmarkTree.getPathForLocation(e.getX(), e.getY());
@@ -75,20 +244,148 @@ public class BookmarkToolWindow {
             }
         });
 
+        // 搜索框和搜索结果列表
+        searchField = new SearchTextField(false);
+        searchField.addDocumentListener(new DocumentAdapter() {
+            @Override
+            protected void textChanged(@NotNull javax.swing.event.DocumentEvent e) {
+                scheduleSearch();
+            }
+        });
+        searchModeComboBox = new JComboBox<>(new String[]{MODE_WORDS, MODE_SUBSTRING, MODE_REGEX});
+        searchModeComboBox.setToolTipText("全文: 按词匹配并按相关度排序；子串: 精确匹配正文片段；正则: java.util.regex 语法");
+        searchModeComboBox.addActionListener(e -> scheduleSearch());
+        searchAlarm = new Alarm(Alarm.ThreadToUse.POOLED_THREAD, this);
+        initSearchResults();
+
         // 布局
         JPanel topPanel = new JPanel(new BorderLayout());
         topPanel.add(toolbar.getComponent(), BorderLayout.WEST);
+        topPanel.add(searchField, BorderLayout.CENTER);
+        topPanel.add(searchModeComboBox, BorderLayout.EAST);
         contentPanel.add(topPanel, BorderLayout.NORTH);
-        contentPanel.add(new JBScrollPane(bookmarkTree), BorderLayout.CENTER);
+        centerCards = new JPanel(new CardLayout());
+        centerCards.add(new JBScrollPane(bookmarkTree), TREE_CARD);
+        centerCards.add(searchPanel, SEARCH_CARD);
+        contentPanel.add(centerCards, BorderLayout.CENTER);
+    }
+
+    private void initSearchResults() {
+        searchResultModel = new DefaultListModel<>();
+        searchResultList = new JBList<>(searchResultModel);
+        searchResultList.setCellRenderer(new ColoredListCellRenderer<BookmarkItem>() {
+            @Override
+            protected void customizeCellRenderer(@NotNull JList<? extends BookmarkItem> list, BookmarkItem item,
+                    int index, boolean selected, boolean hasFocus) {
+                append(item.getContentPreview());
+                append("  [" + item.getLabel() + "]", SimpleTextAttributes.GRAYED_ATTRIBUTES);
+                if (item.getNote() != null && !item.getNote().trim().isEmpty()) {
+                    append("  " + item.getNote(), SimpleTextAttributes.GRAYED_ITALIC_ATTRIBUTES);
+                }
+            }
+        });
+        searchResultList.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2) {
+                    BookmarkItem item = searchResultList.getSelectedValue();
+                    if (item != null) {
+                        openBookmark(item);
+                    }
+                }
+            }
+        });
+        searchStatusLabel = new JLabel();
+        searchStatusLabel.setBorder(BorderFactory.createEmptyBorder(2, 6, 2, 6));
+        searchPanel = new JPanel(new BorderLayout());
+        searchPanel.add(searchStatusLabel, BorderLayout.NORTH);
+        searchPanel.add(new JBScrollPane(searchResultList), BorderLayout.CENTER);
+    }
+
+    /**
+     * 输入停顿后在后台线程查询索引，结果回到 EDT 展示
+     */
+    private void scheduleSearch() {
+        searchAlarm.cancelAllRequests();
+        int generation = ++searchGeneration;
+        String mode = (String) searchModeComboBox.getSelectedItem();
+        // 子串和正则中的空白有意义，不裁剪
+        String query = MODE_WORDS.equals(mode) ? searchField.getText().trim() : searchField.getText();
+        CardLayout cards = (CardLayout) centerCards.getLayout();
+        if (query.isEmpty()) {
+            cards.show(centerCards, TREE_CARD);
+            return;
+        }
+        cards.show(centerCards, SEARCH_CARD);
+        BookmarkSearchService searchService = BookmarkSearchService.getInstance();
+        searchService.ensureIndexed();
+        searchAlarm.addRequest(() -> {
+            if (!searchService.isReady()) {
+                ApplicationManager.getApplication().invokeLater(() -> {
+                    searchStatusLabel.setText("正在构建索引...");
+                    scheduleSearch();
+                }, ModalityState.any());
+                return;
+            }
+            long start = System.nanoTime();
+            if (MODE_WORDS.equals(mode)) {
+                List<BookmarkItem> hits = searchService.search(query);
+                long elapsed = (System.nanoTime() - start) / 1_000_000;
+                ApplicationManager.getApplication().invokeLater(
+                        () -> showSearchResults(generation, hits, "", elapsed), ModalityState.any());
+                return;
+            }
+            try {
+                BookmarkSearchService.PatternSearchResult result = searchService.searchPattern(
+                        query, MODE_REGEX.equals(mode), () -> generation != searchGeneration);
+                long elapsed = (System.nanoTime() - start) / 1_000_000;
+                String detail = "，预筛 " + result.candidates + "/" + result.totalBodies
+                        + " 份正文，校验 " + result.scanned + " 份";
+                ApplicationManager.getApplication().invokeLater(
+                        () -> showSearchResults(generation, result.items, detail, elapsed), ModalityState.any());
+            } catch (java.util.regex.PatternSyntaxException e) {
+                ApplicationManager.getApplication().invokeLater(() -> {
+                    if (generation == searchGeneration) {
+                        searchResultModel.clear();
+                        searchStatusLabel.setText("正则语法错误: " + e.getDescription());
+                    }
+                }, ModalityState.any());
+            } catch (com.intellij.openapi.progress.ProcessCanceledException e) {
+                // 已有更新的查询
+            }
+        }, searchService.isReady() ? SEARCH_DELAY_MS : INDEX_POLL_MS);
+    }
+
+    private void showSearchResults(int generation, List<BookmarkItem> hits, String detail, long elapsedMs) {
+        if (generation != searchGeneration) {
+            return; // 已有更新的查询
+        }
+        searchResultModel.clear();
+        for (BookmarkItem hit : hits) {
+            searchResultModel.addElement(hit);
+        }
+        String status = hits.isEmpty() ? "没有匹配的收藏" : "找到 " + hits.size() + " 条";
+        if (hits.size() >= BookmarkSearchService.MAX_RESULTS) {
+            status += "（仅显示前 " + BookmarkSearchService.MAX_RESULTS + " 条）";
+        }
+        searchStatusLabel.setText(status + detail + "，耗时 " + elapsedMs + " ms");
     }
 
     private void addContextMenu() {
         JPopupMenu popupMenu = new JPopupMenu();
 
+        JMenuItem sourceItem = new JMenuItem("跳转到源位置", AllIcons.Actions.EditSource);
+        sourceItem.addActionListener(e -> jumpToSource());
+        popupMenu.add(sourceItem);
+
         JMenuItem deleteItem = new JMenuItem("删除", AllIcons.General.Remove);
         deleteItem.addActionListener(e -> deleteSelectedBookmark());
         popupMenu.add(deleteItem);
 
+        JMenuItem relabelItem = new JMenuItem("修改标签", AllIcons.Actions.Edit);
+        relabelItem.addActionListener(e -> relabelSelectedBookmark());
+        popupMenu.add(relabelItem);
+
         JMenuItem copyItem = new JMenuItem("复制内容", AllIcons.Actions.Copy);
         copyItem.addActionListener(e -> copyBookmarkContent());
         popupMenu.add(copyItem);
@@ -111,9 +408,15 @@ public class BookmarkToolWindow {
             private void showPopupMenu(MouseEvent e) {
                 TreePath path = bookmarkTree.getPathForLocation(e.getX(), e.getY());
                 if (path != null) {
-                    bookmarkTree.setSelectionPath(path);
-                    DefaultMutableTreeNode node = (DefaultMutableTreeNode) path.getLastPathComponent();
-                    if (node.getUserObject() instanceof BookmarkItem) {
+                    // 在已选中的节点上右键时保留多选
+                    if (!bookmarkTree.isPathSelected(path)) {
+                        bookmarkTree.setSelectionPath(path);
+                    }
+                    Object userObject = ((DefaultMutableTreeNode) path.getLastPathComponent()).getUserObject();
+                    if (userObject instanceof BookmarkItem || userObject instanceof LabelNode) {
+                        // 只能跳转单个收藏，控制台收藏没有源文件
+                        BookmarkItem single = getSingleSelectedItem();
+                        sourceItem.setEnabled(single != null && BookmarkNavigator.canNavigate(single));
                         popupMenu.show(bookmarkTree, e.getX(), e.getY());
                     }
                 }
@@ -121,57 +424,321 @@ public class BookmarkToolWindow {
         });
     }
 
+    /**
+     * 全量重建树（首次加载、刷新、清空时使用），保留标签节点的展开状态
+     * 只创建标签节点，收藏节点在标签展开时分页加载；标签计数来自标签索引
+     */
     public void loadBookmarks() {
+        DefaultMutableTreeNode root = (DefaultMutableTreeNode) treeModel.getRoot();
+        Set<String> expandedLabels = collectExpandedLabels();
+        boolean firstLoad = labelTreeNodes.isEmpty() && root.getChildCount() == 0;
+
+        root.removeAllChildren();
+        labelTreeNodes.clear();
+        itemTreeNodes.clear();
+
         // 从状态服务加载收藏
         BookmarkStateService service = BookmarkStateService.getInstance();
         if (service == null) {
             // 如果服务未初始化，清空显示
-            DefaultMutableTreeNode root = (DefaultMutableTreeNode) treeModel.getRoot();
-            root.removeAllChildren();
             treeModel.reload();
             return;
         }
 
-        List<BookmarkItem> bookmarks = service.getAllBookmarks();
-        if (bookmarks == null || bookmarks.isEmpty()) {
-            // 如果没有收藏，清空树
-            DefaultMutableTreeNode root = (DefaultMutableTreeNode) treeModel.getRoot();
-            root.removeAllChildren();
-            treeModel.reload();
+        // 按标签索引构建树形结构，标签按名称排序
+        List<String> labels = new ArrayList<>(service.getLabels());
+        Collections.sort(labels);
+        for (String label : labels) {
+            DefaultMutableTreeNode labelTreeNode = new DefaultMutableTreeNode(
+                    new LabelNode(label, service.getLabelCount(label)));
+            root.add(labelTreeNode);
+            labelTreeNodes.put(label, labelTreeNode);
+        }
+
+        treeModel.reload();
+        if (firstLoad) {
+            expandAllNodes();
+        } else {
+            restoreExpandedLabels(expandedLabels);
+        }
+    }
+
+    private void collectAdded(BookmarkItem item, Map<String, List<BookmarkItem>> addedItems) {
+        if (item != null && item.getLabel() != null && !itemTreeNodes.containsKey(item.getId())) {
+            addedItems.computeIfAbsent(item.getLabel(), label -> new ArrayList<>()).add(item);
+        }
+    }
+
+    private void collectRemoved(BookmarkItem item, Map<DefaultMutableTreeNode, Set<DefaultMutableTreeNode>> removedNodes,
+            Set<DefaultMutableTreeNode> changedLabels) {
+        DefaultMutableTreeNode itemNode = itemTreeNodes.remove(item.getId());
+        DefaultMutableTreeNode labelTreeNode = itemNode != null
+                ? (DefaultMutableTreeNode) itemNode.getParent()
+                : labelTreeNodes.get(item.getLabel()); // 收藏节点尚未加载
+        if (labelTreeNode == null) {
             return;
         }
+        if (itemNode != null) {
+            removedNodes.computeIfAbsent(labelTreeNode, node -> new HashSet<>()).add(itemNode);
+        }
+        changedLabels.add(labelTreeNode);
+    }
 
-        // 按标签分组
-        Map<String, List<BookmarkItem>> grouped = bookmarks.stream()
-                .filter(item -> item.getLabel() != null) // 过滤掉标签为 null 的项
-                .collect(Collectors.groupingBy(BookmarkItem::getLabel));
+    /**
+     * 增量添加：标签已加载时把排在已加载范围内的新收藏合并进去（一次插入事件），否则只更新计数；
+     * 标签不存在时创建并展开，展开时加载的第一页包含新收藏。返回需要更新计数的标签节点
+     */
+    private DefaultMutableTreeNode insertItemNodes(String label, List<BookmarkItem> items) {
+        DefaultMutableTreeNode root = (DefaultMutableTreeNode) treeModel.getRoot();
+        DefaultMutableTreeNode labelTreeNode = labelTreeNodes.get(label);
+        if (labelTreeNode == null) {
+            labelTreeNode = new DefaultMutableTreeNode(new LabelNode(label, 0));
+            int labelIndex = findLabelInsertIndex(root, label);
+            root.insert(labelTreeNode, labelIndex);
+            labelTreeNodes.put(label, labelTreeNode);
+            treeModel.nodesWereInserted(root, new int[] { labelIndex });
+            updateLabelCount(labelTreeNode);
+            bookmarkTree.expandPath(new TreePath(labelTreeNode.getPath()));
+            return null;
+        }
+        int loaded = loadedCount(labelTreeNode);
+        if (loaded == 0) {
+            return labelTreeNode;
+        }
+        boolean hasLoadMore = hasLoadMoreNode(labelTreeNode);
+        items.sort(NEWEST_FIRST);
+        List<DefaultMutableTreeNode> children = new ArrayList<>(labelTreeNode.getChildCount() + items.size());
+        int[] inserted = new int[items.size()];
+        int count = 0;
+        int next = 0;
+        for (BookmarkItem item : items) {
+            int index = findItemInsertIndex(labelTreeNode, loaded, item);
+            // 排在已加载部分之后的收藏留给“加载更多”（items 已排序，后面的也一样）
+            if (index == loaded && hasLoadMore) {
+                break;
+            }
+            while (next < index) {
+                children.add((DefaultMutableTreeNode) labelTreeNode.getChildAt(next++));
+            }
+            DefaultMutableTreeNode itemNode = new DefaultMutableTreeNode(item, false);
+            itemTreeNodes.put(item.getId(), itemNode);
+            inserted[count++] = children.size();
+            children.add(itemNode);
+        }
+        if (count > 0) {
+            while (next < labelTreeNode.getChildCount()) {
+                children.add((DefaultMutableTreeNode) labelTreeNode.getChildAt(next++));
+            }
+            labelTreeNode.removeAllChildren();
+            for (DefaultMutableTreeNode child : children) {
+                labelTreeNode.add(child);
+            }
+            treeModel.nodesWereInserted(labelTreeNode, Arrays.copyOf(inserted, count));
+        }
+        return labelTreeNode;
+    }
 
-        // 构建树形结构
+    /**
+     * 增量删除：一次遍历移除标签下的多个节点，发出一次删除事件
+     */
+    private void removeItemNodes(DefaultMutableTreeNode labelTreeNode, Set<DefaultMutableTreeNode> itemNodes) {
+        int[] indices = new int[itemNodes.size()];
+        Object[] removed = new Object[itemNodes.size()];
+        List<DefaultMutableTreeNode> kept = new ArrayList<>(labelTreeNode.getChildCount());
+        int count = 0;
+        for (int i = 0; i < labelTreeNode.getChildCount(); i++) {
+            DefaultMutableTreeNode child = (DefaultMutableTreeNode) labelTreeNode.getChildAt(i);
+            if (itemNodes.contains(child)) {
+                indices[count] = i;
+                removed[count++] = child;
+            } else {
+                kept.add(child);
+            }
+        }
+        if (count == 0) {
+            return;
+        }
+        labelTreeNode.removeAllChildren();
+        for (DefaultMutableTreeNode child : kept) {
+            labelTreeNode.add(child);
+        }
+        treeModel.nodesWereRemoved(labelTreeNode, Arrays.copyOf(indices, count), Arrays.copyOf(removed, count));
+    }
+
+    private void removeLabelIfEmptyOrUpdateCount(DefaultMutableTreeNode labelTreeNode) {
+        LabelNode labelNode = (LabelNode) labelTreeNode.getUserObject();
+        if (BookmarkStateService.getInstance().getLabelCount(labelNode.getLabel()) > 0) {
+            updateLabelCount(labelTreeNode);
+            return;
+        }
+        for (int i = 0; i < labelTreeNode.getChildCount(); i++) {
+            Object userObject = ((DefaultMutableTreeNode) labelTreeNode.getChildAt(i)).getUserObject();
+            if (userObject instanceof BookmarkItem) {
+                itemTreeNodes.remove(((BookmarkItem) userObject).getId());
+            }
+        }
         DefaultMutableTreeNode root = (DefaultMutableTreeNode) treeModel.getRoot();
-        root.removeAllChildren();
+        int labelIndex = root.getIndex(labelTreeNode);
+        root.remove(labelIndex);
+        labelTreeNodes.remove(labelNode.getLabel());
+        treeModel.nodesWereRemoved(root, new int[] { labelIndex }, new Object[] { labelTreeNode });
+    }
 
-        grouped.entrySet().stream()
-                .sorted(Map.Entry.comparingByKey()) // 按标签名排序
-                .forEach(entry -> {
-                    String label = entry.getKey();
-                    List<BookmarkItem> items = entry.getValue();
+    /**
+     * 按标签索引更新计数，同时更新“加载更多”节点的剩余数
+     */
+    private void updateLabelCount(DefaultMutableTreeNode labelTreeNode) {
+        LabelNode labelNode = (LabelNode) labelTreeNode.getUserObject();
+        labelNode.setCount(BookmarkStateService.getInstance().getLabelCount(labelNode.getLabel()));
+        treeModel.nodeChanged(labelTreeNode);
+        if (hasLoadMoreNode(labelTreeNode)) {
+            DefaultMutableTreeNode loadMore = (DefaultMutableTreeNode) labelTreeNode.getLastChild();
+            int remaining = labelNode.getCount() - loadedCount(labelTreeNode);
+            if (remaining > 0) {
+                ((LoadMoreNode) loadMore.getUserObject()).setRemaining(remaining);
+                treeModel.nodeChanged(loadMore);
+            } else {
+                int index = labelTreeNode.getIndex(loadMore);
+                labelTreeNode.remove(index);
+                treeModel.nodesWereRemoved(labelTreeNode, new int[] { index }, new Object[] { loadMore });
+            }
+        }
+    }
 
-                    // 按时间倒序排序（最新的在前）
-                    items.sort(Comparator.comparingLong(BookmarkItem::getTimestamp).reversed());
+    /**
+     * 加载下一页收藏节点：从标签索引中选出排在已加载部分之后的最新 PAGE_SIZE 条（部分排序，不对整个标签排序）
+     */
+    private void loadNextPage(DefaultMutableTreeNode labelTreeNode) {
+        LabelNode labelNode = (LabelNode) labelTreeNode.getUserObject();
+        int loaded = loadedCount(labelTreeNode);
+        BookmarkItem last = loaded > 0
+                ? (BookmarkItem) ((DefaultMutableTreeNode) labelTreeNode.getChildAt(loaded - 1)).getUserObject()
+                : null;
+        // 堆顶是最旧的一条，超出页大小时淘汰
+        PriorityQueue<BookmarkItem> page = new PriorityQueue<>(NEWEST_FIRST.reversed());
+        Collection<BookmarkItem> items = BookmarkStateService.getInstance().getBookmarksByLabel(labelNode.getLabel());
+        for (BookmarkItem item : items) {
+            if (last != null && NEWEST_FIRST.compare(item, last) <= 0) {
+                continue;
+            }
+            page.add(item);
+            if (page.size() > PAGE_SIZE) {
+                page.poll();
+            }
+        }
+        List<BookmarkItem> sorted = new ArrayList<>(page);
+        sorted.sort(NEWEST_FIRST);
 
-                    LabelNode labelNode = new LabelNode(label, items.size());
-                    DefaultMutableTreeNode labelTreeNode = new DefaultMutableTreeNode(labelNode);
+        if (hasLoadMoreNode(labelTreeNode)) {
+            DefaultMutableTreeNode loadMore = (DefaultMutableTreeNode) labelTreeNode.getLastChild();
+            labelTreeNode.remove(loaded);
+            treeModel.nodesWereRemoved(labelTreeNode, new int[] { loaded }, new Object[] { loadMore });
+        }
+        int remaining = items.size() - loaded - sorted.size();
+        int[] inserted = new int[sorted.size() + (remaining > 0 ? 1 : 0)];
+        for (int i = 0; i < sorted.size(); i++) {
+            BookmarkItem item = sorted.get(i);
+            DefaultMutableTreeNode itemNode = new DefaultMutableTreeNode(item, false);
+            labelTreeNode.add(itemNode);
+            itemTreeNodes.put(item.getId(), itemNode);
+            inserted[i] = loaded + i;
+        }
+        if (remaining > 0) {
+            labelTreeNode.add(new DefaultMutableTreeNode(new LoadMoreNode(remaining), false));
+            inserted[sorted.size()] = loaded + sorted.size();
+        }
+        if (inserted.length > 0) {
+            treeModel.nodesWereInserted(labelTreeNode, inserted);
+        }
+    }
 
-                    items.forEach(item -> {
-                        DefaultMutableTreeNode itemNode = new DefaultMutableTreeNode(item);
-                        labelTreeNode.add(itemNode);
-                    });
+    /**
+     * 内存不足时卸载折叠标签下已加载的收藏节点，再次展开时重新分页加载
+     */
+    private void dropCollapsedPages() {
+        for (DefaultMutableTreeNode labelTreeNode : labelTreeNodes.values()) {
+            if (labelTreeNode.getChildCount() == 0
+                    || bookmarkTree.isExpanded(new TreePath(labelTreeNode.getPath()))) {
+                continue;
+            }
+            for (int i = 0; i < labelTreeNode.getChildCount(); i++) {
+                Object userObject = ((DefaultMutableTreeNode) labelTreeNode.getChildAt(i)).getUserObject();
+                if (userObject instanceof BookmarkItem) {
+                    itemTreeNodes.remove(((BookmarkItem) userObject).getId());
+                }
+            }
+            labelTreeNode.removeAllChildren();
+            treeModel.nodeStructureChanged(labelTreeNode);
+        }
+    }
 
-                    root.add(labelTreeNode);
-                });
+    private static boolean hasLoadMoreNode(DefaultMutableTreeNode labelTreeNode) {
+        return labelTreeNode.getChildCount() > 0
+                && ((DefaultMutableTreeNode) labelTreeNode.getLastChild()).getUserObject() instanceof LoadMoreNode;
+    }
 
-        treeModel.reload();
-        expandAllNodes();
+    /**
+     * 已加载的收藏节点数（不含“加载更多”节点）
+     */
+    private static int loadedCount(DefaultMutableTreeNode labelTreeNode) {
+        int count = labelTreeNode.getChildCount();
+        return hasLoadMoreNode(labelTreeNode) ? count - 1 : count;
+    }
+
+    /**
+     * 二分查找标签节点的插入位置（标签按名称排序）
+     */
+    private static int findLabelInsertIndex(DefaultMutableTreeNode root, String label) {
+        int low = 0;
+        int high = root.getChildCount();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            LabelNode labelNode = (LabelNode) ((DefaultMutableTreeNode) root.getChildAt(mid)).getUserObject();
+            if (labelNode.getLabel().compareTo(label) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * 在前 loaded 个收藏节点中二分查找插入位置（按时间倒序）
+     */
+    private static int findItemInsertIndex(DefaultMutableTreeNode labelTreeNode, int loaded, BookmarkItem item) {
+        int low = 0;
+        int high = loaded;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            BookmarkItem other = (BookmarkItem) ((DefaultMutableTreeNode) labelTreeNode.getChildAt(mid)).getUserObject();
+            if (NEWEST_FIRST.compare(other, item) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private Set<String> collectExpandedLabels() {
+        Set<String> expanded = new HashSet<>();
+        for (Map.Entry<String, DefaultMutableTreeNode> entry : labelTreeNodes.entrySet()) {
+            if (bookmarkTree.isExpanded(new TreePath(entry.getValue().getPath()))) {
+                expanded.add(entry.getKey());
+            }
+        }
+        return expanded;
+    }
+
+    private void restoreExpandedLabels(Set<String> expandedLabels) {
+        bookmarkTree.expandPath(new TreePath(treeModel.getRoot()));
+        for (String label : expandedLabels) {
+            DefaultMutableTreeNode labelTreeNode = labelTreeNodes.get(label);
+            if (labelTreeNode != null) {
+                bookmarkTree.expandPath(new TreePath(labelTreeNode.getPath()));
+            }
+        }
     }
 
     private void expandAllNodes() {
@@ -202,7 +769,19 @@ public class BookmarkToolWindow {
                 return;
             }
 
-            BookmarkItem item = (BookmarkItem) userObject;
+            openBookmark((BookmarkItem) userObject);
+        } catch (Exception e) {
+            // 捕获所有可能的异常，避免崩溃
+            com.intellij.openapi.diagnostic.Logger.getInstance(BookmarkToolWindow.class)
+                    .warn("Error in navigateToBookmark", e);
+        }
+    }
+
+    /**
+     * 打开收藏内容查看对话框
+     */
+    private void openBookmark(BookmarkItem item) {
+        try {
             // 确保在 UI 线程中执行，并添加异常处理
             com.intellij.openapi.application.ApplicationManager.getApplication()
                     .invokeLater(() -> {
@@ -224,54 +803,145 @@ public class BookmarkToolWindow {
         } catch (Exception e) {
             // 捕获所有可能的异常，避免崩溃
             com.intellij.openapi.diagnostic.Logger.getInstance(BookmarkToolWindow.class)
-                    .warn("Error in navigateToBookmark", e);
+                    .warn("Error in openBookmark", e);
+        }
+    }
+
+    /**
+     * 选中的收藏（按 ID 去重），选中标签节点时包括该标签下的全部收藏（含尚未加载的）
+     */
+    private Map<String, BookmarkItem> getSelectedItems() {
+        Map<String, BookmarkItem> selected = new LinkedHashMap<>();
+        TreePath[] paths = bookmarkTree.getSelectionPaths();
+        if (paths == null) {
+            return selected;
+        }
+        BookmarkStateService service = BookmarkStateService.getInstance();
+        for (TreePath path : paths) {
+            Object userObject = ((DefaultMutableTreeNode) path.getLastPathComponent()).getUserObject();
+            if (userObject instanceof BookmarkItem) {
+                BookmarkItem item = (BookmarkItem) userObject;
+                selected.put(item.getId(), item);
+            } else if (userObject instanceof LabelNode) {
+                for (BookmarkItem item : service.getBookmarksByLabel(((LabelNode) userObject).getLabel())) {
+                    selected.put(item.getId(), item);
+                }
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * 只选中了一个收藏节点时返回它，否则返回 null
+     */
+    private BookmarkItem getSingleSelectedItem() {
+        TreePath[] paths = bookmarkTree.getSelectionPaths();
+        if (paths == null || paths.length != 1) {
+            return null;
         }
+        Object userObject = ((DefaultMutableTreeNode) paths[0].getLastPathComponent()).getUserObject();
+        return userObject instanceof BookmarkItem ? (BookmarkItem) userObject : null;
     }
 
+    /**
+     * 打开收藏的源文件并选中收藏的内容
+     */
+    private void jumpToSource() {
+        BookmarkItem item = getSingleSelectedItem();
+        if (item != null) {
+            BookmarkNavigator.navigate(project, item);
+        }
+    }
+
+    /**
+     * 删除选中的收藏：确认一次，一次批量删除
+     */
     private void deleteSelectedBookmark() {
-        TreePath selectionPath = bookmarkTree.getSelectionPath();
-        if (selectionPath == null) {
+        Map<String, BookmarkItem> selected = getSelectedItems();
+        if (selected.isEmpty()) {
             return;
         }
+        int result = Messages.showYesNoDialog(
+                project,
+                selected.size() == 1 ? "确定要删除这个收藏吗？" : "确定要删除选中的 " + selected.size() + " 个收藏吗？",
+                "删除收藏",
+                Messages.getQuestionIcon());
 
-        DefaultMutableTreeNode node = (DefaultMutableTreeNode) selectionPath.getLastPathComponent();
-        Object userObject = node.getUserObject();
-
-        if (userObject instanceof BookmarkItem) {
-            BookmarkItem item = (BookmarkItem) userObject;
-            int result = Messages.showYesNoDialog(
-                    project,
-                    "确定要删除这个收藏吗？",
-                    "删除收藏",
-                    Messages.getQuestionIcon());
+        if (result == Messages.YES) {
+            BookmarkStateService.getInstance().removeBookmarks(selected.keySet());
+        }
+    }
 
-            if (result == Messages.YES) {
-                BookmarkStateService.getInstance().removeBookmark(item.getId());
-                loadBookmarks(); // 重新加载
-            }
+    /**
+     * 修改选中收藏的标签：输入一次，一次批量修改
+     */
+    private void relabelSelectedBookmark() {
+        Map<String, BookmarkItem> selected = getSelectedItems();
+        if (selected.isEmpty()) {
+            return;
         }
+        BookmarkStateService service = BookmarkStateService.getInstance();
+        List<String> labels = new ArrayList<>(service.getLabels());
+        Collections.sort(labels);
+        String label = Messages.showEditableChooseDialog(
+                selected.size() == 1 ? "新标签:" : "选中的 " + selected.size() + " 个收藏的新标签:",
+                "修改标签",
+                Messages.getQuestionIcon(),
+                labels.toArray(new String[0]),
+                selected.values().iterator().next().getLabel(),
+                null);
+        if (label == null || label.trim().isEmpty()) {
+            return;
+        }
+        service.relabelBookmarks(selected.keySet(), label.trim());
     }
 
+    /**
+     * 复制选中收藏的内容，多条之间空一行，按树中的选择顺序
+     */
     private void copyBookmarkContent() {
-        TreePath selectionPath = bookmarkTree.getSelectionPath();
-        if (selectionPath == null) {
+        List<BookmarkItem> items = new ArrayList<>(getSelectedItems().values());
+        if (items.isEmpty()) {
             return;
         }
+        // 正文可能需要从磁盘读取和解压，放到后台执行
+        com.intellij.openapi.progress.ProgressManager.getInstance().run(
+                new com.intellij.openapi.progress.Task.Backgroundable(project, "读取收藏内容", true) {
+                    private String content;
 
-        DefaultMutableTreeNode node = (DefaultMutableTreeNode) selectionPath.getLastPathComponent();
-        Object userObject = node.getUserObject();
+                    @Override
+                    public void run(@NotNull com.intellij.openapi.progress.ProgressIndicator indicator) {
+                        BookmarkStateService service = BookmarkStateService.getInstance();
+                        StringBuilder text = new StringBuilder();
+                        indicator.setIndeterminate(false);
+                        for (int i = 0; i < items.size(); i++) {
+                            indicator.checkCanceled();
+                            indicator.setFraction((double) i / items.size());
+                            String itemContent = service.readContent(items.get(i));
+                            if (itemContent == null) {
+                                continue;
+                            }
+                            if (text.length() > 0) {
+                                text.append("\n\n");
+                            }
+                            text.append(itemContent);
+                        }
+                        content = text.length() > 0 ? text.toString() : null;
+                    }
 
-        if (userObject instanceof BookmarkItem) {
-            BookmarkItem item = (BookmarkItem) userObject;
-            String content = item.getContent();
-            if (content != null) {
-                java.awt.Toolkit.getDefaultToolkit()
-                        .getSystemClipboard()
-                        .setContents(new java.awt.datatransfer.StringSelection(content), null);
-                // 显示自动关闭的通知
-                showAutoCloseNotification("内容已复制到剪贴板");
-            }
-        }
+                    @Override
+                    public void onSuccess() {
+                        if (content != null) {
+                            java.awt.Toolkit.getDefaultToolkit()
+                                    .getSystemClipboard()
+                                    .setContents(new java.awt.datatransfer.StringSelection(content), null);
+                            // 显示自动关闭的通知
+                            showAutoCloseNotification(items.size() == 1
+                                    ? "内容已复制到剪贴板"
+                                    : "已复制 " + items.size() + " 个收藏的内容到剪贴板");
+                        }
+                    }
+                });
     }
 
     /**
@@ -320,6 +990,179 @@ public class BookmarkToolWindow {
         }
     }
 
+    // 显示所有项目的收藏（加载未打开项目的分片）
+    private class ShowAllProjectsAction extends com.intellij.openapi.actionSystem.ToggleAction {
+        public ShowAllProjectsAction() {
+            super("所有项目", "同时显示未打开项目的收藏", AllIcons.Nodes.Project);
+        }
+
+        @Override
+        public boolean isSelected(@NotNull com.intellij.openapi.actionSystem.AnActionEvent e) {
+            return showAllProjects;
+        }
+
+        @Override
+        public void setSelected(@NotNull com.intellij.openapi.actionSystem.AnActionEvent e, boolean state) {
+            if (state == showAllProjects) {
+                return;
+            }
+            showAllProjects = state;
+            // 分片在后台加载，加载完成后通过新增事件显示
+            BookmarkStateService.getInstance().setShowAllProjects(state);
+        }
+    }
+
+    // 存储统计操作
+    private class StorageStatsAction extends com.intellij.openapi.actionSystem.AnAction {
+        public StorageStatsAction() {
+            super("存储统计", "查看收藏正文的存储、去重、压缩和查看耗时统计", AllIcons.General.Information);
+        }
+
+        @Override
+        public void actionPerformed(com.intellij.openapi.actionSystem.AnActionEvent e) {
+            // 统计需要读取磁盘并试压缩样本，放到后台执行
+            com.intellij.openapi.progress.ProgressManager.getInstance().run(
+                    new com.intellij.openapi.progress.Task.Backgroundable(project, "统计收藏存储") {
+                        private String report;
+
+                        @Override
+                        public void run(@NotNull com.intellij.openapi.progress.ProgressIndicator indicator) {
+                            report = BookmarkStateService.getInstance().getStorageReport();
+                        }
+
+                        @Override
+                        public void onSuccess() {
+                            // 浏览器池只在 EDT 访问
+                            Messages.showInfoMessage(project, report + "\n" + BrowserPool.getInstance().getStats(),
+                                    "存储统计");
+                        }
+                    });
+        }
+    }
+
+    // 导出操作
+    private class ExportAction extends com.intellij.openapi.actionSystem.AnAction {
+        public ExportAction() {
+            super("导出", "把所有收藏（含正文）导出为 XML 文件", AllIcons.ToolbarDecorator.Export);
+        }
+
+        @Override
+        public void actionPerformed(com.intellij.openapi.actionSystem.AnActionEvent e) {
+            com.intellij.openapi.vfs.VirtualFileWrapper target = com.intellij.openapi.fileChooser.FileChooserFactory
+                    .getInstance()
+                    .createSaveFileDialog(new com.intellij.openapi.fileChooser.FileSaverDescriptor(
+                            "导出收藏", "选择导出文件", "xml"), project)
+                    .save(null, "bookmarks.xml");
+            if (target == null) {
+                return;
+            }
+            java.nio.file.Path file = target.getFile().toPath();
+            // 导出需要读取所有正文，放到后台执行
+            com.intellij.openapi.progress.ProgressManager.getInstance().run(
+                    new com.intellij.openapi.progress.Task.Backgroundable(project, "导出收藏") {
+                        private int count;
+
+                        @Override
+                        public void run(@NotNull com.intellij.openapi.progress.ProgressIndicator indicator) {
+                            try {
+                                count = BookmarkStateService.getInstance().exportXml(file);
+                            } catch (java.io.IOException ex) {
+                                throw new RuntimeException("导出收藏失败: " + ex.getMessage(), ex);
+                            }
+                        }
+
+                        @Override
+                        public void onSuccess() {
+                            Messages.showInfoMessage(project, "已导出 " + count + " 条收藏到 " + file, "导出收藏");
+                        }
+
+                        @Override
+                        public void onThrowable(@NotNull Throwable error) {
+                            Messages.showErrorDialog(project, error.getMessage(), "导出收藏");
+                        }
+                    });
+        }
+    }
+
+    // 导入操作
+    private class ImportAction extends com.intellij.openapi.actionSystem.AnAction {
+        public ImportAction() {
+            super("导入", "从导出的 XML 文件导入收藏，已存在的收藏跳过", AllIcons.ToolbarDecorator.Import);
+        }
+
+        @Override
+        public void actionPerformed(com.intellij.openapi.actionSystem.AnActionEvent e) {
+            com.intellij.openapi.vfs.VirtualFile source = com.intellij.openapi.fileChooser.FileChooser.chooseFile(
+                    com.intellij.openapi.fileChooser.FileChooserDescriptorFactory.createSingleFileDescriptor("xml"),
+                    project, null);
+            if (source == null) {
+                return;
+            }
+            java.nio.file.Path file = source.toNioPath();
+            // 在后台解析并写入正文，回到 EDT 再一次性加入收藏
+            com.intellij.openapi.progress.ProgressManager.getInstance().run(
+                    new com.intellij.openapi.progress.Task.Backgroundable(project, "导入收藏", true) {
+                        private java.util.List<BookmarkItem> items;
+                        // storeContent 持有的临时引用，无论导入是否完成都要释放
+                        private final java.util.List<String> stored = new java.util.ArrayList<>();
+
+                        @Override
+                        public void run(@NotNull com.intellij.openapi.progress.ProgressIndicator indicator) {
+                            BookmarkStateService service = BookmarkStateService.getInstance();
+                            try {
+                                items = service.readXml(file);
+                                indicator.setIndeterminate(false);
+                                for (int i = 0; i < items.size(); i++) {
+                                    indicator.checkCanceled();
+                                    indicator.setFraction((double) i / items.size());
+                                    BookmarkItem item = items.get(i);
+                                    if (!item.isContentInline()) {
+                                        continue;
+                                    }
+                                    String content = item.getInlineContent();
+                                    String ref = service.storeContent(content, 0, content.length(),
+                                            indicator::isCanceled);
+                                    stored.add(ref);
+                                    item.setContentRef(ref);
+                                }
+                            } catch (java.io.IOException ex) {
+                                throw new RuntimeException("导入收藏失败: " + ex.getMessage(), ex);
+                            }
+                        }
+
+                        @Override
+                        public void onSuccess() {
+                            int imported;
+                            try {
+                                imported = BookmarkStateService.getInstance().importBookmarks(project, items);
+                            } finally {
+                                releaseStored();
+                            }
+                            Messages.showInfoMessage(project, "已导入 " + imported + " 条收藏（跳过 "
+                                    + (items.size() - imported) + " 条已存在的收藏）", "导入收藏");
+                        }
+
+                        @Override
+                        public void onCancel() {
+                            releaseStored();
+                        }
+
+                        @Override
+                        public void onThrowable(@NotNull Throwable error) {
+                            releaseStored();
+                            Messages.showErrorDialog(project, error.getMessage(), "导入收藏");
+                        }
+
+                        private void releaseStored() {
+                            for (String ref : stored) {
+                                BookmarkStateService.getInstance().releaseStoredContent(ref);
+                            }
+                            stored.clear();
+                        }
+                    });
+        }
+    }
+
     // 清空所有操作
     private class ClearAllAction extends com.intellij.openapi.actionSystem.AnAction {
         public ClearAllAction() {
@@ -336,7 +1179,6 @@ public class BookmarkToolWindow {
 
             if (result == Messages.YES) {
                 BookmarkStateService.getInstance().clearAll();
-                loadBookmarks();
             }
         }
     }
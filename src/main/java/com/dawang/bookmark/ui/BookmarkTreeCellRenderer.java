@@ -6,15 +6,25 @@ import javax.swing.*;
 import javax.swing.tree.DefaultMutableTreeNode;
 import javax.swing.tree.DefaultTreeCellRenderer;
 import java.awt.*;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 /**
  * 收藏树形结构渲染器
+ * 收藏行的文本按修改戳缓存，绘制时直接复用，不再拼接字符串和格式化时间
  */
 public class BookmarkTreeCellRenderer extends DefaultTreeCellRenderer {
 
-    private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+    // DateTimeFormatter 不可变，可在任意线程共享
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter
+            .ofPattern("yyyy-MM-dd HH:mm:ss")
+            .withZone(ZoneId.systemDefault());
+
+    // 收藏项 -> 行文本；收藏项被回收后条目自动清除（仅在 EDT 访问）
+    private final Map<BookmarkItem, RowText> rowTexts = new WeakHashMap<>();
 
     @Override
     public Component getTreeCellRendererComponent(JTree tree, Object value, boolean sel, boolean expanded,
@@ -31,20 +41,11 @@ public class BookmarkTreeCellRenderer extends DefaultTreeCellRenderer {
             setIcon(UIManager.getIcon("Tree.closedIcon"));
         } else if (userObject instanceof BookmarkItem) {
             // 收藏项节点
-            BookmarkItem item = (BookmarkItem) userObject;
-            String preview = item.getContentPreview();
-            String time = DATE_FORMAT.format(new Date(item.getTimestamp()));
-            String displayText = preview + " - " + time;
-            // 如果有备注，显示备注
-            if (item.getNote() != null && !item.getNote().trim().isEmpty()) {
-                String note = item.getNote();
-                if (note.length() > 30) {
-                    note = note.substring(0, 30) + "...";
-                }
-                displayText += " [" + note + "]";
-            }
-            setText(displayText);
+            setText(rowText((BookmarkItem) userObject));
             setIcon(UIManager.getIcon("Tree.leafIcon"));
+        } else if (userObject instanceof LoadMoreNode) {
+            setText(userObject.toString());
+            setIcon(null);
         } else if (userObject instanceof String && "收藏".equals(userObject)) {
             // 根节点
             setText("收藏");
@@ -53,4 +54,42 @@ public class BookmarkTreeCellRenderer extends DefaultTreeCellRenderer {
 
         return this;
     }
+
+    /**
+     * 取缓存的行文本，收藏项修改过（修改戳变化）时重新计算
+     */
+    private String rowText(BookmarkItem item) {
+        long stamp = item.getModificationStamp();
+        RowText cached = rowTexts.get(item);
+        if (cached == null || cached.stamp != stamp) {
+            cached = new RowText(stamp, buildRowText(item));
+            rowTexts.put(item, cached);
+        }
+        return cached.text;
+    }
+
+    static String buildRowText(BookmarkItem item) {
+        String preview = item.getContentPreview();
+        String time = DATE_FORMAT.format(Instant.ofEpochMilli(item.getTimestamp()));
+        String displayText = preview + " - " + time;
+        // 如果有备注，显示备注
+        if (item.getNote() != null && !item.getNote().trim().isEmpty()) {
+            String note = item.getNote();
+            if (note.length() > 30) {
+                note = note.substring(0, 30) + "...";
+            }
+            displayText += " [" + note + "]";
+        }
+        return displayText;
+    }
+
+    private static class RowText {
+        final long stamp;
+        final String text;
+
+        RowText(long stamp, String text) {
+            this.stamp = stamp;
+            this.text = text;
+        }
+    }
 }
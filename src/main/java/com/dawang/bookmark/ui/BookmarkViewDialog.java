@@ -10,6 +10,8 @@ import java.awt.Toolkit;
 import java.awt.datatransfer.StringSelection;
 import java.awt.datatransfer.Transferable;
 import java.awt.event.ActionEvent;
+import java.io.StringReader;
+import java.util.concurrent.Future;
 
 import javax.swing.Action;
 import javax.swing.BorderFactory;
@@ -19,27 +21,39 @@ import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JTextArea;
+import javax.swing.text.html.HTMLDocument;
+import javax.swing.text.html.HTMLEditorKit;
 
 import org.jetbrains.annotations.Nullable;
 
 import com.dawang.bookmark.model.BookmarkItem;
+import com.dawang.bookmark.render.MarkdownRenderer;
+import com.dawang.bookmark.service.BookmarkStateService;
+import com.dawang.bookmark.storage.BlobStore;
 import com.intellij.icons.AllIcons;
 import com.intellij.notification.NotificationGroupManager;
 import com.intellij.notification.NotificationType;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ModalityState;
+import com.intellij.openapi.progress.ProcessCanceledException;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.DialogWrapper;
-import com.intellij.ui.jcef.JBCefApp;
-import com.intellij.ui.jcef.JBCefBrowser;
+import com.intellij.util.concurrency.AppExecutorUtil;
 
 /**
  * 收藏内容查看对话框
- * 使用 JCEF 浏览器组件以 Markdown 格式显示收藏内容
+ * 使用（池中复用的）JCEF 浏览器组件以 Markdown 格式显示收藏内容
  */
 public class BookmarkViewDialog extends DialogWrapper {
     private final BookmarkItem item;
     private final Project project;
-    private JBCefBrowser browser;
+    private BrowserPool.PooledBrowser browser; // 从浏览器池借用，关闭时归还
     private JPanel browserPanel; // 用于放置内容区域（JCEF 或降级方案）
+    private final long openedAt = System.nanoTime(); // 用于统计打开到首次绘制的耗时
+    private JLabel loadingLabel;
+    private Future<?> renderTask;
+    private volatile boolean closed;
+    private LargeContentViewer largeContentViewer; // 超大正文使用的只读编辑器
 
     public BookmarkViewDialog(Project project, BookmarkItem item) {
         super(project);
@@ -96,6 +110,15 @@ public class BookmarkViewDialog extends DialogWrapper {
             JLabel fileLabel = new JLabel(item.getFilePath());
             fileLabel.setForeground(Color.GRAY);
             infoPanel.add(fileLabel, gbc);
+        } else if (item.getSourceName() != null && !item.getSourceName().trim().isEmpty()) {
+            // 控制台来源显示运行配置名
+            gbc.gridx = 0;
+            gbc.gridy = 2;
+            infoPanel.add(new JLabel("控制台:"), gbc);
+            gbc.gridx = 1;
+            JLabel sourceLabel = new JLabel(item.getSourceName());
+            sourceLabel.setForeground(Color.GRAY);
+            infoPanel.add(sourceLabel, gbc);
         }
 
         // 时间
@@ -110,50 +133,24 @@ public class BookmarkViewDialog extends DialogWrapper {
         browserPanel = new JPanel(new BorderLayout());
         browserPanel.setBorder(BorderFactory.createTitledBorder("内容"));
 
-        // 获取内容，确保不为 null
-        String content = item.getContent();
-        if (content == null) {
-            content = "";
-        }
-
-        // 将 Markdown 转换为 HTML
-        String htmlContent = convertMarkdownToHtml(content);
-
         // 尝试使用 JCEF，如果失败则降级到 JEditorPane
-        boolean useJCEF = false;
         try {
-            if (JBCefApp.isSupported()) {
-                // 使用 JCEF 浏览器显示 Markdown
-                browser = new JBCefBrowser();
-                // 加载 HTML 内容到浏览器
-                browser.loadHTML(htmlContent);
+            // 先放入池中预热的 JCEF 浏览器，内容渲染好后替换 body，浏览器启动与渲染并行
+            browser = BrowserPool.getInstance().acquire();
+            if (browser != null) {
                 browserPanel.add(browser.getComponent(), BorderLayout.CENTER);
-                useJCEF = true;
             }
         } catch (Exception e) {
             // JCEF 初始化失败，使用降级方案
-            useJCEF = false;
+            browser = null;
             com.intellij.openapi.diagnostic.Logger.getInstance(BookmarkViewDialog.class)
                     .warn("JCEF browser initialization failed, using fallback", e);
         }
+        loadingLabel = new JLabel("正在加载内容...", JLabel.CENTER);
+        browserPanel.add(loadingLabel, browser != null ? BorderLayout.SOUTH : BorderLayout.CENTER);
 
-        if (!useJCEF) {
-            // JCEF 不支持或初始化失败时的降级方案
-            JEditorPane contentPane = new JEditorPane();
-            contentPane.setContentType("text/html");
-            contentPane.setEditable(false);
-            contentPane.setBackground(Color.WHITE);
-
-            contentPane.setText(htmlContent);
-            contentPane.setCaretPosition(0);
-
-            JScrollPane scrollPane = new JScrollPane(contentPane);
-            scrollPane.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED);
-            scrollPane.setHorizontalScrollBarPolicy(JScrollPane.HORIZONTAL_SCROLLBAR_AS_NEEDED);
-            scrollPane.setBorder(BorderFactory.createEmptyBorder());
-
-            browserPanel.add(scrollPane, BorderLayout.CENTER);
-        }
+        // 正文读取、Markdown 渲染和降级方案的 HTML 解析都在后台进行，标签、备注等信息立即显示
+        startRendering(browser == null);
 
         // 组合布局
         panel.add(infoPanel, BorderLayout.NORTH);
@@ -163,270 +160,105 @@ public class BookmarkViewDialog extends DialogWrapper {
     }
 
     /**
-     * 将 Markdown 文本转换为 HTML
-     * 支持基本的 Markdown 语法
+     * 在后台线程取渲染好的 HTML body（按正文哈希缓存），完成后回到 EDT 显示；对话框关闭时取消
+     *
+     * @param fallback 不使用 JCEF 时在后台把 HTML 解析为 JEditorPane 的文档
      */
-    private String convertMarkdownToHtml(String markdown) {
-        if (markdown == null || markdown.trim().isEmpty()) {
-            return "<p>（无内容）</p>";
-        }
-
-        // 按行处理
-        String[] lines = markdown.split("\n");
-        StringBuilder html = new StringBuilder();
-        boolean inCodeBlock = false;
-        boolean inList = false;
-
-        for (String line : lines) {
-            String trimmedLine = line.trim();
-
-            // 代码块处理
-            if (trimmedLine.startsWith("```")) {
-                if (inCodeBlock) {
-                    html.append("</code></pre>");
-                    inCodeBlock = false;
-                } else {
-                    if (inList) {
-                        html.append("</ul>");
-                        inList = false;
-                    }
-                    html.append("<pre><code>");
-                    inCodeBlock = true;
-                }
-                continue;
-            }
-
-            if (inCodeBlock) {
-                // 在代码块中，直接转义并添加
-                html.append(escapeHtml(line)).append("\n");
-                continue;
-            }
-
-            // 标题处理
-            if (trimmedLine.startsWith("### ")) {
-                if (inList) {
-                    html.append("</ul>");
-                    inList = false;
-                }
-                html.append("<h3>").append(escapeHtml(trimmedLine.substring(4))).append("</h3>");
-                continue;
-            } else if (trimmedLine.startsWith("## ")) {
-                if (inList) {
-                    html.append("</ul>");
-                    inList = false;
-                }
-                html.append("<h2>").append(escapeHtml(trimmedLine.substring(3))).append("</h2>");
-                continue;
-            } else if (trimmedLine.startsWith("# ")) {
-                if (inList) {
-                    html.append("</ul>");
-                    inList = false;
+    private void startRendering(boolean fallback) {
+        renderTask = AppExecutorUtil.getAppExecutorService().submit(() -> {
+            try {
+                // 超大正文不渲染 HTML，改用只读编辑器分块加载
+                long size = BookmarkStateService.getInstance().getContentSize(item);
+                if (size >= LargeContentViewer.THRESHOLD) {
+                    ApplicationManager.getApplication().invokeLater(
+                            () -> showLargeContent(size), ModalityState.any(), o -> closed);
+                    return;
                 }
-                html.append("<h1>").append(escapeHtml(trimmedLine.substring(2))).append("</h1>");
-                continue;
-            }
-
-            // 列表项处理
-            if (trimmedLine.matches("^[-*] .+")) {
-                if (!inList) {
-                    html.append("<ul>");
-                    inList = true;
+                String hash = item.getContentRef();
+                if (hash == null) {
+                    hash = BlobStore.fingerprint(item.getContent());
                 }
-                String listContent = processInlineMarkdown(trimmedLine.substring(2));
-                html.append("<li>").append(listContent).append("</li>");
-                continue;
-            } else {
-                if (inList) {
-                    html.append("</ul>");
-                    inList = false;
+                String htmlBody = BookmarkStateService.getInstance().getHtmlCache()
+                        .getBody(hash, item::getContent, () -> closed);
+                HTMLDocument document = fallback ? parseDocument(htmlBody) : null;
+                ApplicationManager.getApplication().invokeLater(
+                        () -> showContent(htmlBody, document), ModalityState.any(), o -> closed);
+            } catch (ProcessCanceledException e) {
+                // 对话框已关闭
+            } catch (Exception e) {
+                if (closed) {
+                    return; // 关闭时中断读取导致的异常
                 }
+                com.intellij.openapi.diagnostic.Logger.getInstance(BookmarkViewDialog.class)
+                        .warn("Failed to render bookmark " + item.getId(), e);
+                ApplicationManager.getApplication().invokeLater(
+                        () -> loadingLabel.setText("内容加载失败: " + e.getMessage()), ModalityState.any(), o -> closed);
             }
-
-            // 空行处理
-            if (trimmedLine.isEmpty()) {
-                html.append("<br>");
-                continue;
-            }
-
-            // 普通段落
-            String processedLine = processInlineMarkdown(line);
-            html.append("<p>").append(processedLine).append("</p>");
-        }
-
-        // 关闭未关闭的标签
-        if (inCodeBlock) {
-            html.append("</code></pre>");
-        }
-        if (inList) {
-            html.append("</ul>");
-        }
-
-        // 添加现代化的 Markdown 样式（GitHub 风格）
-        String styledHtml = "<!DOCTYPE html>\n" +
-                "<html>\n" +
-                "<head>\n" +
-                "    <meta charset=\"UTF-8\">\n" +
-                "    <meta name=\"viewport\" content=\"width=device-width, initial-scale=1.0\">\n" +
-                "    <style>\n" +
-                "        * { box-sizing: border-box; }\n" +
-                "        body {\n" +
-                "            font-family: -apple-system, BlinkMacSystemFont, 'Segoe UI', 'Helvetica Neue', Arial, 'Noto Sans', sans-serif;\n"
-                +
-                "            font-size: 16px;\n" +
-                "            line-height: 1.6;\n" +
-                "            padding: 20px;\n" +
-                "            color: #24292e;\n" +
-                "            background-color: #ffffff;\n" +
-                "            max-width: 100%;\n" +
-                "        }\n" +
-                "        pre {\n" +
-                "            background-color: #f6f8fa;\n" +
-                "            border: 1px solid #e1e4e8;\n" +
-                "            border-radius: 6px;\n" +
-                "            padding: 16px;\n" +
-                "            overflow-x: auto;\n" +
-                "            margin: 16px 0;\n" +
-                "            font-size: 85%;\n" +
-                "            line-height: 1.45;\n" +
-                "        }\n" +
-                "        code {\n" +
-                "            background-color: rgba(27, 31, 35, 0.05);\n" +
-                "            padding: 0.2em 0.4em;\n" +
-                "            border-radius: 3px;\n" +
-                "            font-family: 'SFMono-Regular', 'Consolas', 'Liberation Mono', 'Menlo', monospace;\n" +
-                "            font-size: 85%;\n" +
-                "        }\n" +
-                "        pre code {\n" +
-                "            background-color: transparent;\n" +
-                "            padding: 0;\n" +
-                "            border-radius: 0;\n" +
-                "            font-size: 100%;\n" +
-                "        }\n" +
-                "        h1 {\n" +
-                "            font-size: 2em;\n" +
-                "            border-bottom: 2px solid #eaecef;\n" +
-                "            padding-bottom: 0.3em;\n" +
-                "            margin-top: 24px;\n" +
-                "            margin-bottom: 16px;\n" +
-                "            font-weight: 600;\n" +
-                "        }\n" +
-                "        h2 {\n" +
-                "            font-size: 1.5em;\n" +
-                "            border-bottom: 1px solid #eaecef;\n" +
-                "            padding-bottom: 0.3em;\n" +
-                "            margin-top: 24px;\n" +
-                "            margin-bottom: 16px;\n" +
-                "            font-weight: 600;\n" +
-                "        }\n" +
-                "        h3 {\n" +
-                "            font-size: 1.25em;\n" +
-                "            margin-top: 24px;\n" +
-                "            margin-bottom: 16px;\n" +
-                "            font-weight: 600;\n" +
-                "        }\n" +
-                "        p {\n" +
-                "            margin: 16px 0;\n" +
-                "        }\n" +
-                "        ul, ol {\n" +
-                "            padding-left: 2em;\n" +
-                "            margin: 16px 0;\n" +
-                "        }\n" +
-                "        li {\n" +
-                "            margin: 4px 0;\n" +
-                "        }\n" +
-                "        a {\n" +
-                "            color: #0366d6;\n" +
-                "            text-decoration: none;\n" +
-                "        }\n" +
-                "        a:hover {\n" +
-                "            text-decoration: underline;\n" +
-                "        }\n" +
-                "        strong {\n" +
-                "            font-weight: 600;\n" +
-                "        }\n" +
-                "        em {\n" +
-                "            font-style: italic;\n" +
-                "        }\n" +
-                "        blockquote {\n" +
-                "            padding: 0 1em;\n" +
-                "            color: #6a737d;\n" +
-                "            border-left: 0.25em solid #dfe2e5;\n" +
-                "            margin: 0;\n" +
-                "        }\n" +
-                "        table {\n" +
-                "            border-collapse: collapse;\n" +
-                "            margin: 16px 0;\n" +
-                "        }\n" +
-                "        table th,\n" +
-                "        table td {\n" +
-                "            border: 1px solid #dfe2e5;\n" +
-                "            padding: 6px 13px;\n" +
-                "        }\n" +
-                "        table th {\n" +
-                "            background-color: #f6f8fa;\n" +
-                "            font-weight: 600;\n" +
-                "        }\n" +
-                "        hr {\n" +
-                "            height: 0.25em;\n" +
-                "            padding: 0;\n" +
-                "            margin: 24px 0;\n" +
-                "            background-color: #e1e4e8;\n" +
-                "            border: 0;\n" +
-                "        }\n" +
-                "    </style>\n" +
-                "</head>\n" +
-                "<body>\n" +
-                html.toString() +
-                "\n</body>\n" +
-                "</html>";
-
-        return styledHtml;
+        });
     }
 
     /**
-     * 处理行内 Markdown 语法（粗体、斜体、代码、链接）
+     * 未挂到界面上的 HTMLDocument 可以在后台线程构建，避免 setText 在 EDT 上同步解析大文档
      */
-    private String processInlineMarkdown(String text) {
-        // 先转义 HTML
-        String result = escapeHtml(text);
-
-        // 代码块中的内容不处理
-        // 行内代码 (`...`)
-        result = result.replaceAll("`([^`]+)`", "<code>$1</code>");
+    private static HTMLDocument parseDocument(String htmlBody) throws Exception {
+        HTMLEditorKit kit = new HTMLEditorKit();
+        HTMLDocument document = (HTMLDocument) kit.createDefaultDocument();
+        kit.read(new StringReader(MarkdownRenderer.toDocument(htmlBody)), document, 0);
+        return document;
+    }
 
-        // 粗体 (**...** 或 __...__)
-        result = result.replaceAll("\\*\\*([^*]+)\\*\\*", "<strong>$1</strong>");
-        result = result.replaceAll("__([^_]+)__", "<strong>$1</strong>");
+    private void showLargeContent(long size) {
+        browserPanel.remove(loadingLabel);
+        if (browser != null) {
+            BrowserPool.getInstance().release(browser);
+            browser = null;
+        }
+        largeContentViewer = new LargeContentViewer(project, item, size);
+        browserPanel.add(largeContentViewer.getComponent(), BorderLayout.CENTER);
+        browserPanel.revalidate();
+        browserPanel.repaint();
+        largeContentViewer.startLoading();
+    }
 
-        // 斜体 (*...* 或 _..._，但要避免与粗体冲突)
-        result = result.replaceAll("(?<!\\*)\\*([^*]+)\\*(?!\\*)", "<em>$1</em>");
-        result = result.replaceAll("(?<!_)_([^_]+)_(?!_)", "<em>$1</em>");
+    private void showContent(String htmlBody, HTMLDocument document) {
+        browserPanel.remove(loadingLabel);
+        if (browser != null) {
+            browser.show(htmlBody, openedAt);
+        } else {
+            // JCEF 不支持或初始化失败时的降级方案
+            JEditorPane contentPane = new JEditorPane();
+            contentPane.setEditorKit(new HTMLEditorKit());
+            contentPane.setEditable(false);
+            contentPane.setBackground(Color.WHITE);
 
-        // 链接 [text](url)
-        result = result.replaceAll("\\[([^\\]]+)\\]\\(([^\\)]+)\\)", "<a href=\"$2\">$1</a>");
+            contentPane.setDocument(document);
+            contentPane.setCaretPosition(0);
 
-        return result;
-    }
+            JScrollPane scrollPane = new JScrollPane(contentPane);
+            scrollPane.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED);
+            scrollPane.setHorizontalScrollBarPolicy(JScrollPane.HORIZONTAL_SCROLLBAR_AS_NEEDED);
+            scrollPane.setBorder(BorderFactory.createEmptyBorder());
 
-    /**
-     * 转义 HTML 特殊字符
-     */
-    private String escapeHtml(String text) {
-        return text.replace("&", "&amp;")
-                .replace("<", "&lt;")
-                .replace(">", "&gt;")
-                .replace("\"", "&quot;")
-                .replace("'", "&#39;");
+            browserPanel.add(scrollPane, BorderLayout.CENTER);
+        }
+        browserPanel.revalidate();
+        browserPanel.repaint();
     }
 
     /**
      * 复制原始内容到剪贴板，并给出提示
      */
     private void copyContent() {
-        String content = item.getContent() != null ? item.getContent() : "";
-        Transferable transferable = new StringSelection(content);
-        Toolkit.getDefaultToolkit().getSystemClipboard().setContents(transferable, null);
-        notifyInfo("收藏内容已复制到剪贴板");
+        // 正文未在堆上时需要读盘，在后台读取后回到 EDT 写剪贴板
+        AppExecutorUtil.getAppExecutorService().execute(() -> {
+            String loaded = BookmarkStateService.getInstance().readContent(item);
+            String content = loaded != null ? loaded : "";
+            ApplicationManager.getApplication().invokeLater(() -> {
+                Transferable transferable = new StringSelection(content);
+                Toolkit.getDefaultToolkit().getSystemClipboard().setContents(transferable, null);
+                notifyInfo("收藏内容已复制到剪贴板");
+            }, ModalityState.any());
+        });
     }
 
     /**
@@ -451,14 +283,23 @@ public class BookmarkViewDialog extends DialogWrapper {
 
     @Override
     public void dispose() {
-        // 清理浏览器资源
+        // 取消尚未完成的渲染
+        closed = true;
+        if (renderTask != null) {
+            renderTask.cancel(true);
+        }
+        if (largeContentViewer != null) {
+            largeContentViewer.dispose();
+            largeContentViewer = null;
+        }
+        // 浏览器归还到池中，供下次打开复用
         if (browser != null) {
             try {
-                browser.dispose();
+                BrowserPool.getInstance().release(browser);
             } catch (Exception e) {
-                // 忽略清理时的异常
+                // 忽略归还时的异常
                 com.intellij.openapi.diagnostic.Logger.getInstance(BookmarkViewDialog.class)
-                        .warn("Failed to dispose browser", e);
+                        .warn("Failed to release browser", e);
             }
             browser = null;
         }
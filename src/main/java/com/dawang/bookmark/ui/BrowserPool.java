@@ -0,0 +1,333 @@
+package com.dawang.bookmark.ui;
+
+import com.dawang.bookmark.render.MarkdownRenderer;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ModalityState;
+import com.intellij.ui.jcef.JBCefApp;
+import com.intellij.ui.jcef.JBCefBrowser;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.cef.browser.CefBrowser;
+import org.cef.browser.CefFrame;
+import org.cef.handler.CefDisplayHandlerAdapter;
+import org.cef.handler.CefLoadHandlerAdapter;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JCEF 浏览器池（应用级）
+ * 浏览器预先加载只含样式的空文档，显示收藏时通过脚本替换 body，不再每次打开对话框都创建浏览器；
+ * 对话框关闭后浏览器回到池中，空闲数量有上限，长时间未使用的会被释放
+ * 除统计外只在 EDT 访问
+ */
+public class BrowserPool implements Disposable {
+
+    private static final com.intellij.openapi.diagnostic.Logger LOG = com.intellij.openapi.diagnostic.Logger
+            .getInstance(BrowserPool.class);
+
+    // 池中最多保留的空闲浏览器数，可通过 -Dbookmark.browser.pool.size 调整
+    public static final int MAX_IDLE = Integer.getInteger("bookmark.browser.pool.size", 2);
+    private static final long IDLE_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(5);
+    // 超过此长度的 body 不通过脚本传递，直接加载完整文档
+    private static final int MAX_SCRIPT_CHARS = 2 * 1024 * 1024;
+    private static final String SHELL = MarkdownRenderer.toDocument("");
+    private static final String PAINT_TITLE_PREFIX = "bookmark-painted-";
+
+    // 栈顶是最近归还的浏览器
+    private final Deque<PooledBrowser> idle = new ArrayDeque<>();
+    private final ScheduledFuture<?> evictionTask;
+    private boolean disposed;
+
+    private final LatencyStats coldStats = new LatencyStats();
+    private final LatencyStats warmStats = new LatencyStats();
+
+    public BrowserPool() {
+        evictionTask = AppExecutorUtil.getAppScheduledExecutorService().scheduleWithFixedDelay(
+                () -> ApplicationManager.getApplication().invokeLater(this::evictIdle, ModalityState.any()),
+                1, 1, TimeUnit.MINUTES);
+    }
+
+    public static BrowserPool getInstance() {
+        return ApplicationManager.getApplication().getService(BrowserPool.class);
+    }
+
+    /**
+     * 池中没有空闲浏览器时预先创建一个（在 EDT 调用）
+     */
+    public void prewarm() {
+        if (disposed || !idle.isEmpty() || !JBCefApp.isSupported()) {
+            return;
+        }
+        PooledBrowser pooled = create();
+        if (pooled != null) {
+            pooled.idleSince = System.currentTimeMillis();
+            idle.push(pooled);
+        }
+    }
+
+    /**
+     * 取一个浏览器，JCEF 不可用时返回 null；取走后在下一个 EDT 周期补充预热
+     */
+    public PooledBrowser acquire() {
+        if (disposed || !JBCefApp.isSupported()) {
+            return null;
+        }
+        PooledBrowser pooled = idle.poll();
+        if (pooled == null) {
+            pooled = create();
+        }
+        ApplicationManager.getApplication().invokeLater(this::prewarm, ModalityState.any());
+        return pooled;
+    }
+
+    /**
+     * 归还浏览器：从界面上移除并清空内容，超出空闲上限时直接释放
+     */
+    public void release(PooledBrowser pooled) {
+        if (pooled == null) {
+            return;
+        }
+        JComponent component = pooled.browser.getComponent();
+        Container parent = component.getParent();
+        if (parent != null) {
+            parent.remove(component);
+        }
+        if (disposed || idle.size() >= MAX_IDLE) {
+            pooled.dispose();
+            return;
+        }
+        pooled.reset();
+        pooled.idleSince = System.currentTimeMillis();
+        idle.push(pooled);
+    }
+
+    /**
+     * 打开到首次绘制的耗时统计
+     */
+    public String getStats() {
+        return String.format("浏览器池: 空闲 %d 个（上限 %d）%n打开到首次绘制: 新建浏览器 %s; 复用预热浏览器 %s",
+                idle.size(), MAX_IDLE, coldStats, warmStats);
+    }
+
+    private PooledBrowser create() {
+        try {
+            return new PooledBrowser(this);
+        } catch (Exception e) {
+            LOG.warn("Failed to create JCEF browser", e);
+            return null;
+        }
+    }
+
+    private void evictIdle() {
+        long now = System.currentTimeMillis();
+        Iterator<PooledBrowser> it = idle.iterator();
+        while (it.hasNext()) {
+            PooledBrowser pooled = it.next();
+            if (now - pooled.idleSince >= IDLE_TIMEOUT_MS) {
+                it.remove();
+                pooled.dispose();
+            }
+        }
+    }
+
+    void recordPaint(boolean warm, long elapsedNanos) {
+        (warm ? warmStats : coldStats).record(elapsedNanos);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Bookmark view painted in " + elapsedNanos / 1_000_000 + " ms (" + (warm ? "pooled" : "new") + ")");
+        }
+    }
+
+    @Override
+    public void dispose() {
+        disposed = true;
+        evictionTask.cancel(false);
+        for (PooledBrowser pooled : idle) {
+            pooled.dispose();
+        }
+        idle.clear();
+    }
+
+    /**
+     * 池中的浏览器；show 和 release 只在 EDT 调用
+     */
+    public static class PooledBrowser {
+        private final BrowserPool pool;
+        private final JBCefBrowser browser;
+        // 空文档是否已加载完成，完成后才能通过脚本替换 body
+        private boolean shellLoaded;
+        // 当前加载的是完整文档（超长内容），归还时需要重新加载空文档
+        private boolean fullDocument;
+        private String pendingScript;
+        private long idleSince;
+        // 每次显示递增，用于识别对应的绘制通知（在 CEF 线程读取）
+        private volatile int sequence;
+        private volatile long openedAt;
+        private volatile boolean warm;
+
+        PooledBrowser(BrowserPool pool) {
+            this.pool = pool;
+            this.browser = new JBCefBrowser();
+            browser.getJBCefClient().addLoadHandler(new CefLoadHandlerAdapter() {
+                @Override
+                public void onLoadEnd(CefBrowser cefBrowser, CefFrame frame, int httpStatusCode) {
+                    if (frame.isMain()) {
+                        ApplicationManager.getApplication().invokeLater(() -> loaded(), ModalityState.any());
+                    }
+                }
+            }, browser.getCefBrowser());
+            browser.getJBCefClient().addDisplayHandler(new CefDisplayHandlerAdapter() {
+                @Override
+                public void onTitleChange(CefBrowser cefBrowser, String title) {
+                    painted(title);
+                }
+            }, browser.getCefBrowser());
+            browser.loadHTML(SHELL);
+        }
+
+        public JComponent getComponent() {
+            return browser.getComponent();
+        }
+
+        /**
+         * 显示渲染好的 body
+         *
+         * @param openedAt 对话框打开时的 System.nanoTime()，用于统计首次绘制耗时
+         */
+        public void show(String body, long openedAt) {
+            int seq = ++sequence;
+            this.openedAt = openedAt;
+            this.warm = shellLoaded && !fullDocument;
+            // 两次 requestAnimationFrame 之后内容已经绘制，通过标题变化通知回来
+            String paintMarker = "requestAnimationFrame(function(){requestAnimationFrame(function(){"
+                    + "document.title='" + PAINT_TITLE_PREFIX + seq + "';});});";
+            if (body.length() > MAX_SCRIPT_CHARS) {
+                fullDocument = true;
+                shellLoaded = false;
+                pendingScript = paintMarker;
+                browser.loadHTML(MarkdownRenderer.toDocument(body));
+                return;
+            }
+            String script = "document.body.innerHTML=" + toJsString(body) + ";window.scrollTo(0,0);" + paintMarker;
+            if (shellLoaded) {
+                execute(script);
+            } else {
+                pendingScript = script;
+            }
+        }
+
+        private void loaded() {
+            if (!fullDocument) {
+                shellLoaded = true;
+            }
+            if (pendingScript != null) {
+                String script = pendingScript;
+                pendingScript = null;
+                execute(script);
+            }
+        }
+
+        private void painted(String title) {
+            if (title == null || !title.startsWith(PAINT_TITLE_PREFIX)) {
+                return;
+            }
+            try {
+                if (Integer.parseInt(title.substring(PAINT_TITLE_PREFIX.length())) == sequence) {
+                    pool.recordPaint(warm, System.nanoTime() - openedAt);
+                }
+            } catch (NumberFormatException ignored) {
+                // 不是本类设置的标题
+            }
+        }
+
+        private void reset() {
+            sequence++;
+            pendingScript = null;
+            if (fullDocument) {
+                fullDocument = false;
+                browser.loadHTML(SHELL);
+            } else if (shellLoaded) {
+                execute("document.body.innerHTML='';document.title='';");
+            }
+        }
+
+        private void execute(String script) {
+            browser.getCefBrowser().executeJavaScript(script, browser.getCefBrowser().getURL(), 0);
+        }
+
+        private void dispose() {
+            try {
+                browser.dispose();
+            } catch (Exception e) {
+                LOG.warn("Failed to dispose browser", e);
+            }
+        }
+    }
+
+    /**
+     * 转为 JavaScript 字符串字面量
+     */
+    static String toJsString(String text) {
+        StringBuilder sb = new StringBuilder(text.length() + 16);
+        sb.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\u2028':
+                    sb.append("\\u2028");
+                    break;
+                case '\u2029':
+                    sb.append("\\u2029");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+                    break;
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    /**
+     * 耗时统计
+     */
+    private static class LatencyStats {
+        private long count;
+        private long totalNanos;
+        private long maxNanos;
+
+        synchronized void record(long nanos) {
+            count++;
+            totalNanos += nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+        }
+
+        @Override
+        public synchronized String toString() {
+            if (count == 0) {
+                return "暂无数据";
+            }
+            return String.format("%d 次, 平均 %.1f ms, 最大 %.1f ms", count, totalNanos / 1e6 / count, maxNanos / 1e6);
+        }
+    }
+}
@@ -6,10 +6,12 @@ package com.dawang.bookmark.ui;
 public class LabelNode {
     private String label;
     private int count;
+    private String text; // 显示文本，计数变化时更新
     
     public LabelNode(String label, int count) {
         this.label = label;
         this.count = count;
+        this.text = label + " (" + count + ")";
     }
     
     public String getLabel() {
@@ -20,8 +22,15 @@ public class LabelNode {
         return count;
     }
     
+    public void setCount(int count) {
+        if (this.count != count) {
+            this.count = count;
+            this.text = label + " (" + count + ")";
+        }
+    }
+    
     @Override
     public String toString() {
-        return label + " (" + count + ")";
+        return text;
     }
 }
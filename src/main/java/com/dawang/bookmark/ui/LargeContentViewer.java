@@ -0,0 +1,257 @@
+package com.dawang.bookmark.ui;
+
+import com.dawang.bookmark.model.BookmarkItem;
+import com.dawang.bookmark.service.BookmarkStateService;
+import com.dawang.bookmark.storage.ContentPool;
+import com.intellij.icons.AllIcons;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ModalityState;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.editor.EditorFactory;
+import com.intellij.openapi.editor.EditorSettings;
+import com.intellij.openapi.project.Project;
+import com.intellij.util.concurrency.AppExecutorUtil;
+
+import javax.swing.*;
+import java.awt.*;
+import java.io.Reader;
+import java.util.concurrent.Future;
+
+/**
+ * 超大正文查看器：只读编辑器（行号、自动换行、查找），正文从内容仓库分块流式读入文档，不渲染 HTML
+ * 每次最多读入 WINDOW_CHARS 个字符，读取流保持打开，用户点“加载更多”时再接着读，不一次把整个正文放进文档
+ */
+public class LargeContentViewer {
+
+    // 正文超过此大小（字节）时使用本查看器，可通过 -Dbookmark.viewer.editor.threshold 调整
+    public static final long THRESHOLD = Long.getLong("bookmark.viewer.editor.threshold", 256 * 1024);
+    private static final int CHUNK_CHARS = 512 * 1024;
+    // 每次加载的字符数，可通过 -Dbookmark.viewer.window.chars 调整
+    private static final long WINDOW_CHARS = Long.getLong("bookmark.viewer.window.chars", 4L * 1024 * 1024);
+
+    private final Project project;
+    private final BookmarkItem item;
+    private final long size;
+    private final Document document;
+    private final Editor editor;
+    private final JPanel component;
+    private final JLabel statusLabel;
+    private final JButton loadMoreButton;
+    private Future<?> loadTask;
+    // 以下读取状态只由加载任务访问，同一时间只有一个任务（“加载更多”在上一个任务结束后才可用）；
+    // reader 另外在关闭时由 EDT 关闭
+    private Reader reader;
+    private long loadedChars;
+    private boolean pendingCr;
+    // 所在对话框的模态状态，追加写入只在这个对话框的模态下执行，不在其他模态对话框之上改文档
+    private ModalityState modality;
+    private volatile boolean closed;
+
+    public LargeContentViewer(Project project, BookmarkItem item, long size) {
+        this.project = project;
+        this.item = item;
+        this.size = size;
+        document = EditorFactory.getInstance().createDocument("");
+        // 追加时在写操作内临时解除只读，加载期间用户也无法修改文档
+        document.setReadOnly(true);
+        editor = EditorFactory.getInstance().createViewer(document, project);
+        EditorSettings settings = editor.getSettings();
+        settings.setLineNumbersShown(true);
+        settings.setUseSoftWraps(true);
+        settings.setFoldingOutlineShown(false);
+
+        JButton findButton = new JButton("查找", AllIcons.Actions.Find);
+        findButton.addActionListener(e -> {
+            editor.getContentComponent().requestFocusInWindow();
+            com.intellij.find.EditorSearchSession.start(editor, project);
+        });
+        JCheckBox softWrapBox = new JCheckBox("自动换行", true);
+        softWrapBox.addActionListener(e -> settings.setUseSoftWraps(softWrapBox.isSelected()));
+        statusLabel = new JLabel();
+        loadMoreButton = new JButton("加载更多");
+        loadMoreButton.setVisible(false);
+        loadMoreButton.addActionListener(e -> loadNextWindow());
+
+        JPanel toolbar = new JPanel(new FlowLayout(FlowLayout.LEFT, 6, 2));
+        toolbar.add(findButton);
+        toolbar.add(softWrapBox);
+        toolbar.add(statusLabel);
+        toolbar.add(loadMoreButton);
+
+        component = new JPanel(new BorderLayout());
+        component.add(toolbar, BorderLayout.NORTH);
+        component.add(editor.getComponent(), BorderLayout.CENTER);
+    }
+
+    public JComponent getComponent() {
+        return component;
+    }
+
+    /**
+     * 后台逐块读取正文，每块在 EDT 上追加到文档；第一块读入后即可浏览
+     * 在 EDT 调用，组件需已加入对话框
+     */
+    public void startLoading() {
+        modality = ModalityState.stateForComponent(editor.getComponent());
+        statusLabel.setText("正在加载... 0 / " + ContentPool.formatSize(size));
+        loadNextWindow();
+    }
+
+    /**
+     * 接着上次的位置再读入最多 WINDOW_CHARS 个字符（在 EDT 调用）
+     */
+    private void loadNextWindow() {
+        loadMoreButton.setVisible(false);
+        loadTask = AppExecutorUtil.getAppExecutorService().submit(() -> {
+            char[] buffer = new char[CHUNK_CHARS];
+            long limit = loadedChars + WINDOW_CHARS;
+            try {
+                Reader in = openReader();
+                while (!closed) {
+                    int n = readFully(in, buffer, (int) Math.min(buffer.length, limit - loadedChars));
+                    if (n <= 0) {
+                        break;
+                    }
+                    loadedChars += n;
+                    // 文档只接受 \n 换行；块末尾的 \r 留到下一块，避免 \r\n 被拆成两个换行
+                    StringBuilder chunk = new StringBuilder(n + 1);
+                    if (pendingCr) {
+                        chunk.append('\r');
+                    }
+                    chunk.append(buffer, 0, n);
+                    pendingCr = chunk.charAt(chunk.length() - 1) == '\r';
+                    if (pendingCr) {
+                        chunk.setLength(chunk.length() - 1);
+                    }
+                    append(normalizeLineSeparators(chunk), Status.LOADING);
+                    if (loadedChars >= limit) {
+                        // 本次窗口已读满，留下读取流等待“加载更多”
+                        append("", Status.PAUSED);
+                        return;
+                    }
+                }
+                if (!closed) {
+                    append(pendingCr ? "\n" : "", Status.DONE);
+                }
+                closeReader();
+            } catch (Exception e) {
+                closeReader();
+                if (closed) {
+                    return; // 关闭时中断读取导致的异常
+                }
+                com.intellij.openapi.diagnostic.Logger.getInstance(LargeContentViewer.class)
+                        .warn("Failed to load bookmark content " + item.getId(), e);
+                ApplicationManager.getApplication().invokeLater(
+                        () -> statusLabel.setText("加载失败: " + e.getMessage()), modality, o -> closed);
+            }
+        });
+    }
+
+    private enum Status {
+        LOADING, PAUSED, DONE
+    }
+
+    /**
+     * 在 EDT 上追加一块并等待完成，读取速度不会超过文档追加的速度
+     */
+    private void append(String text, Status status) {
+        long chars = loadedChars;
+        ApplicationManager.getApplication().invokeAndWait(() -> {
+            if (closed) {
+                return;
+            }
+            if (!text.isEmpty()) {
+                ApplicationManager.getApplication().runWriteAction(() -> {
+                    document.setReadOnly(false);
+                    try {
+                        document.insertString(document.getTextLength(), text);
+                    } finally {
+                        document.setReadOnly(true);
+                    }
+                });
+            }
+            switch (status) {
+                case DONE:
+                    statusLabel.setText(document.getLineCount() + " 行, " + ContentPool.formatSize(size));
+                    break;
+                case PAUSED:
+                    statusLabel.setText("已加载 " + chars + " 字符 / " + ContentPool.formatSize(size));
+                    loadMoreButton.setVisible(true);
+                    break;
+                default:
+                    statusLabel.setText("正在加载... " + chars + " 字符 / " + ContentPool.formatSize(size));
+                    break;
+            }
+        }, modality);
+    }
+
+    private synchronized Reader openReader() throws java.io.IOException {
+        if (reader == null) {
+            reader = BookmarkStateService.getInstance().openContentReader(item);
+        }
+        return reader;
+    }
+
+    private synchronized void closeReader() {
+        Reader current = reader;
+        reader = null;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (java.io.IOException ignored) {
+                // 只读流，关闭失败不影响
+            }
+        }
+    }
+
+    private static int readFully(Reader reader, char[] buffer, int max) throws java.io.IOException {
+        int total = 0;
+        while (total < max) {
+            int n = reader.read(buffer, total, max - total);
+            if (n < 0) {
+                break;
+            }
+            total += n;
+        }
+        return total;
+    }
+
+    /**
+     * \r\n 和单独的 \r 转为 \n
+     */
+    static String normalizeLineSeparators(CharSequence text) {
+        StringBuilder sb = null;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\r') {
+                if (sb == null) {
+                    sb = new StringBuilder(text.length());
+                    sb.append(text, 0, i);
+                }
+                sb.append('\n');
+                if (i + 1 < text.length() && text.charAt(i + 1) == '\n') {
+                    i++;
+                }
+            } else if (sb != null) {
+                sb.append(c);
+            }
+        }
+        return sb != null ? sb.toString() : text.toString();
+    }
+
+    /**
+     * 停止加载并释放编辑器（在 EDT 调用）
+     */
+    public void dispose() {
+        closed = true;
+        if (loadTask != null) {
+            loadTask.cancel(true);
+        }
+        // 暂停等待“加载更多”时读取流仍打开；正在加载时关闭会让读取出错，加载任务随之结束
+        closeReader();
+        if (!editor.isDisposed()) {
+            EditorFactory.getInstance().releaseEditor(editor);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.dawang.bookmark.ui;
+
+/**
+ * “加载更多”节点数据类，位于已加载的收藏节点之后
+ */
+public class LoadMoreNode {
+    private int remaining;
+    private String text;
+
+    public LoadMoreNode(int remaining) {
+        setRemaining(remaining);
+    }
+
+    public int getRemaining() {
+        return remaining;
+    }
+
+    public void setRemaining(int remaining) {
+        this.remaining = remaining;
+        this.text = "加载更多... (剩余 " + remaining + " 条)";
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+}
@@ -1,7 +1,13 @@
 package com.dawang.bookmark.util;
 
+import com.intellij.execution.impl.ConsoleViewImpl;
+import com.intellij.execution.ui.ConsoleView;
+import com.intellij.execution.ui.RunContentDescriptor;
+import com.intellij.execution.ui.RunContentManager;
 import com.intellij.openapi.actionSystem.AnActionEvent;
 import com.intellij.openapi.actionSystem.CommonDataKeys;
+import com.intellij.openapi.actionSystem.LangDataKeys;
+import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.editor.Editor;
 import com.intellij.openapi.editor.SelectionModel;
 import com.intellij.openapi.vfs.VirtualFile;
@@ -13,27 +19,89 @@ import org.jetbrains.annotations.Nullable;
 public class BookmarkUtil {
     
     /**
-     * 从事件中获取选中的文本
-     * 优先从编辑器获取，如果编辑器没有选中，尝试从控制台获取
+     * 控制台的编辑器，不在控制台中时返回 null
      */
     @Nullable
-    public static String getSelectedText(AnActionEvent e) {
-        // 方法1: 从编辑器获取
-        Editor editor = e.getData(CommonDataKeys.EDITOR);
-        if (editor != null) {
-            SelectionModel selectionModel = editor.getSelectionModel();
-            String text = selectionModel.getSelectedText();
-            if (text != null && !text.trim().isEmpty()) {
-                return text;
-            }
+    public static Editor getConsoleEditor(AnActionEvent e) {
+        ConsoleView console = e.getData(LangDataKeys.CONSOLE_VIEW);
+        if (console instanceof ConsoleViewImpl) {
+            return ((ConsoleViewImpl) console).getEditor();
         }
-        
-        // 方法2: 尝试从控制台获取
-        // 控制台通常也使用 Editor，但可能需要特殊处理
-        // 这里先返回 null，后续可以扩展
-        
         return null;
     }
+
+    /**
+     * 当前控制台的运行内容，取不到时使用运行窗口中选中的内容
+     */
+    @Nullable
+    public static RunContentDescriptor getRunContent(AnActionEvent e) {
+        RunContentDescriptor descriptor = e.getData(LangDataKeys.RUN_CONTENT_DESCRIPTOR);
+        if (descriptor == null && e.getProject() != null) {
+            descriptor = RunContentManager.getInstance(e.getProject()).getSelectedContent();
+        }
+        return descriptor;
+    }
+
+    /**
+     * 控制台对应的运行配置名
+     */
+    @Nullable
+    public static String getConsoleName(AnActionEvent e) {
+        RunContentDescriptor descriptor = getRunContent(e);
+        return descriptor != null ? descriptor.getDisplayName() : null;
+    }
+
+    /**
+     * 获取选区：文档的不可变快照和选区范围，不复制选中的文本
+     * 优先从编辑器获取，编辑器没有选中时从控制台获取（焦点在控制台工具栏等位置时 EDITOR 为空）
+     * 多光标或列选择时各段选区不连续，按复制的方式取出所有光标的选中文本（以换行连接）
+     * 快照可以在后台线程读取；没有选中或选中的全是空白时返回 null
+     */
+    @Nullable
+    public static Selection getSelection(AnActionEvent e) {
+        Selection selection = getSelection(e.getData(CommonDataKeys.EDITOR));
+        return selection != null ? selection : getSelection(getConsoleEditor(e));
+    }
+
+    @Nullable
+    private static Selection getSelection(@Nullable Editor editor) {
+        if (editor == null) {
+            return null;
+        }
+        SelectionModel selectionModel = editor.getSelectionModel();
+        if (editor.getCaretModel().getCaretCount() > 1 || editor.isColumnMode()) {
+            String copied = selectionModel.getSelectedText(true);
+            if (copied == null || isBlank(copied, 0, copied.length())) {
+                return null;
+            }
+            int[] starts = selectionModel.getBlockSelectionStarts();
+            int[] ends = selectionModel.getBlockSelectionEnds();
+            return new Selection(copied, 0, copied.length(), starts[0], ends[ends.length - 1]);
+        }
+        if (!selectionModel.hasSelection()) {
+            return null;
+        }
+        Document document = editor.getDocument();
+        CharSequence text = document.getImmutableCharSequence();
+        int start = selectionModel.getSelectionStart();
+        int end = selectionModel.getSelectionEnd();
+        if (isBlank(text, start, end)) {
+            return null;
+        }
+        return new Selection(text, start, end);
+    }
+
+    /**
+     * 范围内是否只有空白（与 String.trim() 的判断一致），遇到第一个非空白字符即返回
+     */
+    public static boolean isBlank(CharSequence text, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (text.charAt(i) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
     
     /**
      * 获取当前文件路径
@@ -68,4 +136,33 @@ public class BookmarkUtil {
     public static boolean isInEditor(AnActionEvent e) {
         return e.getData(CommonDataKeys.EDITOR) != null;
     }
+
+    /**
+     * 选区：文档快照 + 选区起止位置
+     * 多光标时 text 是复制出的选中文本，sourceStart / sourceEnd 是第一段选区起点到最后一段选区终点
+     */
+    public static class Selection {
+        public final CharSequence text;
+        public final int start;
+        public final int end;
+        // 选区在文档中的位置
+        public final int sourceStart;
+        public final int sourceEnd;
+
+        public Selection(CharSequence text, int start, int end) {
+            this(text, start, end, start, end);
+        }
+
+        public Selection(CharSequence text, int start, int end, int sourceStart, int sourceEnd) {
+            this.text = text;
+            this.start = start;
+            this.end = end;
+            this.sourceStart = sourceStart;
+            this.sourceEnd = sourceEnd;
+        }
+
+        public int length() {
+            return end - start;
+        }
+    }
 }
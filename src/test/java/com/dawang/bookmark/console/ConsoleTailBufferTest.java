@@ -0,0 +1,99 @@
+package com.dawang.bookmark.console;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class ConsoleTailBufferTest {
+
+    @Test
+    public void tailReturnsTheLastLines() {
+        ConsoleTailBuffer buffer = new ConsoleTailBuffer(10);
+        buffer.append("one\ntwo\nthree\n");
+
+        assertEquals(3, buffer.lineCount());
+        assertEquals("two\nthree", buffer.tail(2));
+        assertEquals("one\ntwo\nthree", buffer.tail(100));
+        assertEquals("", buffer.tail(0));
+    }
+
+    @Test
+    public void chunksMaySplitLines() {
+        ConsoleTailBuffer buffer = new ConsoleTailBuffer(10);
+        buffer.append("hel");
+        buffer.append("lo\r\nwor");
+        buffer.append("ld");
+
+        // 未结束的当前行算作最后一行，\r 被忽略
+        assertEquals(2, buffer.lineCount());
+        assertEquals("hello\nworld", buffer.tail(5));
+        assertEquals("world", buffer.tail(1));
+    }
+
+    @Test
+    public void oldestLinesAreOverwritten() {
+        ConsoleTailBuffer buffer = new ConsoleTailBuffer(3);
+        for (int i = 1; i <= 7; i++) {
+            buffer.append("line" + i + "\n");
+        }
+
+        assertEquals(3, buffer.lineCount());
+        assertEquals(7, buffer.totalLines());
+        assertEquals("line5\nline6\nline7", buffer.tail(10));
+        assertEquals("line7", buffer.tail(1));
+    }
+
+    @Test
+    public void blankLinesArePreserved() {
+        ConsoleTailBuffer buffer = new ConsoleTailBuffer(10);
+        buffer.append("a\n\n\nb\n");
+
+        assertEquals("\n\nb", buffer.tail(3));
+        assertEquals("a\n\n\nb", buffer.tail(4));
+    }
+
+    @Test
+    public void longLinesAreTruncated() {
+        ConsoleTailBuffer buffer = new ConsoleTailBuffer(2);
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < ConsoleTailBuffer.MAX_LINE_CHARS + 100; i++) {
+            line.append('x');
+        }
+        buffer.append(line);
+        buffer.append("\nshort");
+
+        String[] lines = buffer.tail(2).split("\n");
+        assertEquals(ConsoleTailBuffer.MAX_LINE_CHARS + " ...".length(), lines[0].length());
+        assertEquals("short", lines[1]);
+    }
+
+    @Test
+    public void oldestLinesAreDroppedWhenCharBudgetIsExceeded() {
+        // 行数足够，只受字符数限制
+        ConsoleTailBuffer buffer = new ConsoleTailBuffer(100, 10);
+        buffer.append("aaaa\nbbbb\ncccc\n");
+
+        assertEquals(2, buffer.lineCount());
+        assertEquals(3, buffer.totalLines());
+        assertEquals("bbbb\ncccc", buffer.tail(10));
+
+        // 超过预算的单行也会保留
+        buffer.append("0123456789ab\n");
+        assertEquals("0123456789ab", buffer.tail(10));
+        buffer.append("dd\n");
+        assertEquals("dd", buffer.tail(10));
+    }
+
+    @Test
+    public void clearResetsEverything() {
+        ConsoleTailBuffer buffer = new ConsoleTailBuffer(4);
+        buffer.append("x\ny\npartial");
+        buffer.clear();
+
+        assertEquals(0, buffer.lineCount());
+        assertEquals(0, buffer.totalLines());
+        assertEquals("", buffer.tail(4));
+        buffer.append("z\n");
+        assertEquals("z", buffer.tail(4));
+    }
+}
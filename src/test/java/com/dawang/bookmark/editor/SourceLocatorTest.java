@@ -0,0 +1,105 @@
+package com.dawang.bookmark.editor;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class SourceLocatorTest {
+
+    private static final String SNIPPET = "int total = compute(a, b);";
+
+    @Test
+    public void storedRangeIsUsedWhenTextIsUnchanged() {
+        String text = "class A {\n    " + SNIPPET + "\n}\n";
+        int start = text.indexOf(SNIPPET);
+
+        SourceLocator.Location location = SourceLocator.locate(text, SNIPPET, start, start + SNIPPET.length());
+        assertEquals(SourceLocator.Kind.STORED, location.kind);
+        assertEquals(start, location.range.getStartOffset());
+        assertEquals(start + SNIPPET.length(), location.range.getEndOffset());
+    }
+
+    @Test
+    public void movedSnippetIsFoundExactly() {
+        String text = "// 新增的注释\n// 又一行\nclass A {\n    " + SNIPPET + "\n}\n";
+        int start = text.indexOf(SNIPPET);
+
+        SourceLocator.Location location = SourceLocator.locate(text, SNIPPET, 14, 14 + SNIPPET.length());
+        assertEquals(SourceLocator.Kind.EXACT, location.kind);
+        assertEquals(start, location.range.getStartOffset());
+        assertEquals(start + SNIPPET.length(), location.range.getEndOffset());
+    }
+
+    @Test
+    public void hintOutsideTheTextIsIgnored() {
+        String text = "x\n" + SNIPPET;
+
+        SourceLocator.Location location = SourceLocator.locate(text, SNIPPET, 500, 500 + SNIPPET.length());
+        assertEquals(SourceLocator.Kind.EXACT, location.kind);
+        assertEquals(2, location.range.getStartOffset());
+    }
+
+    @Test
+    public void reindentedSnippetIsFoundIgnoringWhitespace() {
+        String snippet = "if (ready) {\n    start();\n}";
+        String text = "void run() {\n        if (ready)  {\n            start();\n        }\n}\n";
+        int start = text.indexOf("if (ready)");
+        int end = text.indexOf("}\n}") + 1;
+
+        SourceLocator.Location location = SourceLocator.locate(text, snippet, 0, snippet.length());
+        assertEquals(SourceLocator.Kind.WHITESPACE, location.kind);
+        assertEquals(start, location.range.getStartOffset());
+        assertEquals(end, location.range.getEndOffset());
+    }
+
+    @Test
+    public void editedSnippetIsLocatedByItsLongestLine() {
+        String snippet = "int x = 1;\nString message = format(name, count);\nreturn x;";
+        String text = "header\nint x = 2;\nString message = format(name, count);\nreturn y;\n";
+        int anchor = text.indexOf("String message");
+        int expectedStart = anchor - snippet.indexOf("String message");
+
+        SourceLocator.Location location = SourceLocator.locate(text, snippet, 0, snippet.length());
+        assertEquals(SourceLocator.Kind.LINE, location.kind);
+        assertEquals(expectedStart, location.range.getStartOffset());
+        assertEquals(expectedStart + snippet.length(), location.range.getEndOffset());
+    }
+
+    @Test
+    public void missingSnippetReturnsNull() {
+        String text = "class A {\n    void other() {}\n}\n";
+
+        assertNull(SourceLocator.locate(text, SNIPPET, 0, SNIPPET.length()));
+        assertNull(SourceLocator.locate(text, "", 0, 0));
+    }
+
+    @Test
+    public void shortLinesAreNotUsedAsAnchors() {
+        // 只有 "}" 这样的短行相同，不应当定位过去
+        String snippet = "foo();\n}";
+        String text = "class A {\n    bar();\n}\n";
+
+        assertNull(SourceLocator.locate(text, snippet, 0, snippet.length()));
+    }
+
+    @Test
+    public void findNearestPrefersTheClosestMatch() {
+        String text = "abc....abc....abc";
+
+        assertEquals(0, SourceLocator.findNearest(text, "abc", 0));
+        assertEquals(7, SourceLocator.findNearest(text, "abc", 6));
+        assertEquals(7, SourceLocator.findNearest(text, "abc", 9));
+        assertEquals(14, SourceLocator.findNearest(text, "abc", 12));
+        assertEquals(14, SourceLocator.findNearest(text, "abc", 100));
+    }
+
+    @Test
+    public void findNearestHandlesEdgeCases() {
+        assertEquals(-1, SourceLocator.findNearest("abc", "abcd", 0));
+        assertEquals(-1, SourceLocator.findNearest("abc", "", 0));
+        assertEquals(-1, SourceLocator.findNearest("abcabc", "abd", 0));
+        assertEquals(0, SourceLocator.findNearest("abc", "abc", 0));
+        assertEquals(3, SourceLocator.findNearest("xyzabc", "abc", 0));
+    }
+}
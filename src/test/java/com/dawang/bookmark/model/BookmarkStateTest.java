@@ -0,0 +1,143 @@
+package com.dawang.bookmark.model;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class BookmarkStateTest {
+
+    @Test
+    public void removeKeepsOrderAndIdIndex() {
+        BookmarkState state = stateOf("a", "b", "c", "d");
+
+        assertEquals("b", state.removeAndGet("b").getId());
+        assertEquals(Arrays.asList("a", "c", "d"), ids(state));
+        assertNull(state.findBookmark("b"));
+        assertNull(state.removeAndGet("b"));
+        // 前移后的下标仍然正确
+        assertEquals("c", state.findBookmark("c").getId());
+        assertEquals("d", state.findBookmark("d").getId());
+
+        state.removeAndGet("d");
+        state.addBookmark(item("e", null, null));
+        assertEquals(Arrays.asList("a", "c", "e"), ids(state));
+        assertEquals("e", state.findBookmark("e").getId());
+    }
+
+    @Test
+    public void removeAllKeepsOrderAndIdIndex() {
+        BookmarkState state = stateOf("a", "b", "c", "d", "e");
+
+        List<BookmarkItem> removed = state.removeAll(Arrays.asList("d", "b", "missing"));
+        assertEquals(Arrays.asList("b", "d"), idsOf(removed));
+        assertEquals(Arrays.asList("a", "c", "e"), ids(state));
+        for (String id : Arrays.asList("a", "c", "e")) {
+            assertEquals(id, state.findBookmark(id).getId());
+        }
+        assertNull(state.findBookmark("b"));
+        assertTrue(state.removeAll(Collections.singletonList("missing")).isEmpty());
+    }
+
+    @Test
+    public void putReplacesInPlace() {
+        BookmarkState state = stateOf("a", "b", "c");
+        BookmarkItem replacement = item("b", "新标签", "/src/B.java");
+
+        state.putBookmark(replacement);
+        assertEquals(Arrays.asList("a", "b", "c"), ids(state));
+        assertSame(replacement, state.findBookmark("b"));
+        assertEquals(Collections.singleton(replacement), state.getBookmarksByLabel("新标签"));
+        assertEquals(Collections.singleton(replacement), state.getBookmarksByPath("/src/B.java"));
+
+        state.putBookmark(item("d", null, null));
+        assertEquals(Arrays.asList("a", "b", "c", "d"), ids(state));
+    }
+
+    @Test
+    public void duplicateIdsAreIgnored() {
+        BookmarkState state = stateOf("a");
+        BookmarkItem duplicate = item("a", "other", null);
+
+        state.addBookmark(duplicate);
+        assertEquals(1, state.getBookmarks().size());
+        assertFalse(state.getLabels().contains("other"));
+
+        List<BookmarkItem> list = new ArrayList<>(state.getBookmarks());
+        list.add(duplicate);
+        state.setBookmarks(list);
+        assertEquals(1, state.getBookmarks().size());
+    }
+
+    @Test
+    public void labelIndexFollowsChanges() {
+        BookmarkState state = new BookmarkState();
+        BookmarkItem a = item("a", "x", null);
+        BookmarkItem b = item("b", "x", null);
+        state.addBookmark(a);
+        state.addBookmark(b);
+
+        assertEquals(2, state.getLabelCount("x"));
+        state.relabel(a, "y");
+        assertEquals(1, state.getLabelCount("x"));
+        assertEquals(Collections.singleton(a), state.getBookmarksByLabel("y"));
+
+        state.removeAndGet("b");
+        assertEquals(0, state.getLabelCount("x"));
+        assertFalse(state.getLabels().contains("x"));
+        assertTrue(state.getBookmarksByLabel(null).isEmpty());
+    }
+
+    @Test
+    public void pathIndexIgnoresSeparatorsAndFollowsMoves() {
+        BookmarkState state = new BookmarkState();
+        BookmarkItem a = item("a", null, "C:\\src\\A.java");
+        state.addBookmark(a);
+
+        assertEquals(Collections.singleton(a), state.getBookmarksByPath("C:/src/A.java"));
+        assertEquals(Collections.singleton(a), state.getBookmarksByPath("C:\\src\\A.java"));
+
+        state.moveToFile(a, "/src/B.java");
+        assertTrue(state.getBookmarksByPath("C:/src/A.java").isEmpty());
+        assertEquals(Collections.singleton(a), state.getBookmarksByPath("/src/B.java"));
+
+        state.removeAll(Collections.singleton("a"));
+        assertTrue(state.getBookmarksByPath("/src/B.java").isEmpty());
+    }
+
+    private static BookmarkState stateOf(String... ids) {
+        BookmarkState state = new BookmarkState();
+        for (String id : ids) {
+            state.addBookmark(item(id, null, null));
+        }
+        return state;
+    }
+
+    private static BookmarkItem item(String id, String label, String path) {
+        BookmarkItem item = new BookmarkItem();
+        item.setId(id);
+        item.setLabel(label);
+        item.setFilePath(path);
+        return item;
+    }
+
+    private static List<String> ids(BookmarkState state) {
+        return idsOf(state.getBookmarks());
+    }
+
+    private static List<String> idsOf(List<BookmarkItem> items) {
+        List<String> ids = new ArrayList<>();
+        for (BookmarkItem item : items) {
+            ids.add(item.getId());
+        }
+        return ids;
+    }
+}
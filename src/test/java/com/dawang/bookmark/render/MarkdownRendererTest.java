@@ -0,0 +1,90 @@
+package com.dawang.bookmark.render;
+
+import com.intellij.openapi.progress.ProcessCanceledException;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MarkdownRendererTest {
+
+    @Test
+    public void emptyInputRendersPlaceholder() {
+        assertEquals("<p>（无内容）</p>", MarkdownRenderer.renderBody(null));
+        assertEquals("<p>（无内容）</p>", MarkdownRenderer.renderBody(" \n "));
+    }
+
+    @Test
+    public void headingsAndParagraphs() {
+        assertEquals("<h1>Title</h1><h2>Sub</h2><h3>Small</h3><p>#### four</p>",
+                MarkdownRenderer.renderBody("# Title\n## Sub\n### Small\n#### four"));
+        assertEquals("<p>#nospace</p>", MarkdownRenderer.renderBody("#nospace"));
+    }
+
+    @Test
+    public void blankLinesBecomeBreaksAndTrailingNewlinesAreIgnored() {
+        assertEquals("<p>a</p><br><p>b</p>", MarkdownRenderer.renderBody("a\n\nb\n\n\n"));
+    }
+
+    @Test
+    public void listItemsAreGroupedAndClosed() {
+        assertEquals("<ul><li>one</li><li>two</li></ul><p>after</p>",
+                MarkdownRenderer.renderBody("- one\n* two\nafter"));
+        assertEquals("<ul><li>last</li></ul>", MarkdownRenderer.renderBody("- last"));
+    }
+
+    @Test
+    public void codeBlocksAreEscapedAndNotParsed() {
+        assertEquals("<pre><code>if (a &lt; b) **x**\n  indented\n</code></pre>",
+                MarkdownRenderer.renderBody("```java\nif (a < b) **x**\n  indented\n```"));
+        // 未闭合的代码块在末尾关闭
+        assertEquals("<ul><li>item</li></ul><pre><code>code\n</code></pre>",
+                MarkdownRenderer.renderBody("- item\n```\ncode"));
+    }
+
+    @Test
+    public void inlineMarkup() {
+        assertEquals("<p>use <code>a &amp;&amp; b</code> here</p>",
+                MarkdownRenderer.renderBody("use `a && b` here"));
+        assertEquals("<p><strong>bold</strong> and <em>it</em> and <strong>b2</strong> and <em>i2</em></p>",
+                MarkdownRenderer.renderBody("**bold** and *it* and __b2__ and _i2_"));
+        assertEquals("<p><a href=\"https://example.com/?a=1&amp;b=2\">the <em>site</em></a></p>",
+                MarkdownRenderer.renderBody("[the *site*](https://example.com/?a=1&b=2)"));
+    }
+
+    @Test
+    public void underscoresInsideWordsAreNotEmphasis() {
+        assertEquals("<p>snake_case_name</p>", MarkdownRenderer.renderBody("snake_case_name"));
+    }
+
+    @Test
+    public void htmlIsEscaped() {
+        assertEquals("<p>&lt;script&gt;alert(&quot;x&quot;)&lt;/script&gt; &#39;q&#39;</p>",
+                MarkdownRenderer.renderBody("<script>alert(\"x\")</script> 'q'"));
+        assertEquals("<h1>&lt;b&gt;</h1>", MarkdownRenderer.renderBody("# <b>"));
+    }
+
+    @Test
+    public void unmatchedMarkersStayLiteral() {
+        assertEquals("<p>2 * 3 = 6 and [link without target]</p>",
+                MarkdownRenderer.renderBody("2 * 3 = 6 and [link without target]"));
+        assertEquals("<p>`open</p>", MarkdownRenderer.renderBody("`open"));
+    }
+
+    @Test
+    public void documentWrapsBody() {
+        String document = MarkdownRenderer.render("# T");
+        assertTrue(document.startsWith("<!DOCTYPE html>"));
+        assertTrue(document.contains("<body>\n<h1>T</h1>\n</body>"));
+        assertTrue(document.endsWith("</html>"));
+    }
+
+    @Test(expected = ProcessCanceledException.class)
+    public void cancellationIsChecked() {
+        StringBuilder markdown = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            markdown.append("line ").append(i).append('\n');
+        }
+        MarkdownRenderer.renderBody(markdown.toString(), () -> true);
+    }
+}
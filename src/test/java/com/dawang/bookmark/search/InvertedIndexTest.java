@@ -0,0 +1,136 @@
+package com.dawang.bookmark.search;
+
+import com.dawang.bookmark.model.BookmarkItem;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class InvertedIndexTest {
+
+    private InvertedIndex index;
+
+    @Before
+    public void setUp() {
+        index = new InvertedIndex();
+    }
+
+    @Test
+    public void allTermsMustMatch() {
+        add("1", "java", "throw new NullPointerException()");
+        add("2", "java", "catch IOException e");
+        add("3", "notes", "null check before throw");
+
+        assertEquals(Arrays.asList("1", "3"), sorted(ids(index.search("throw ", 10))));
+        assertEquals(Arrays.asList("1"), ids(index.search("throw exception ", 10)));
+        assertTrue(index.search("missing ", 10).isEmpty());
+    }
+
+    @Test
+    public void lastWordIsMatchedAsPrefix() {
+        add("1", "java", "throw new NullPointerException()");
+        add("2", "java", "IllegalArgumentException");
+
+        assertEquals(Arrays.asList("1"), ids(index.search("NullPointerExc", 10)));
+        assertEquals(Arrays.asList("1"), ids(index.search("nullpoint", 10)));
+        assertEquals(Arrays.asList("2"), ids(index.search("illegalarg", 10)));
+        // 后面有空白时不再按前缀匹配
+        assertTrue(index.search("nullpoint ", 10).isEmpty());
+    }
+
+    @Test
+    public void subPartsOfEarlierWordsMatchExactly() {
+        add("1", "java", "NullPointerException handler");
+
+        assertEquals(Arrays.asList("1"), ids(index.search("pointer hand", 10)));
+        assertTrue(index.search("point hand", 10).isEmpty());
+    }
+
+    @Test
+    public void singleCjkCharacterMatchesBigramsStartingWithIt() {
+        add("1", "日志", "查看日志文件");
+        add("2", "其他", "今天的天气");
+
+        assertEquals(Arrays.asList("1"), ids(index.search("日", 10)));
+        assertEquals(Arrays.asList("1"), ids(index.search("日志", 10)));
+        assertEquals(Arrays.asList("2"), ids(index.search("天", 10)));
+    }
+
+    @Test
+    public void labelWeighsMoreThanContent() {
+        add("content", "misc", "deploy script for staging");
+        add("label", "deploy", "script for staging");
+
+        List<String> result = ids(index.search("deploy ", 10));
+        assertEquals(Arrays.asList("label", "content"), result);
+    }
+
+    @Test
+    public void shorterDocumentsRankHigherForTheSameTerm() {
+        add("long", "misc", "timeout " + filler(200));
+        add("short", "misc", "timeout retry");
+
+        assertEquals(Arrays.asList("short", "long"), ids(index.search("timeout ", 10)));
+    }
+
+    @Test
+    public void limitKeepsTheBestScores() {
+        for (int i = 0; i < 20; i++) {
+            add("filler" + i, "misc", "cache " + filler(50));
+        }
+        add("best", "cache", "cache");
+
+        List<String> result = ids(index.search("cache ", 3));
+        assertEquals(3, result.size());
+        assertEquals("best", result.get(0));
+    }
+
+    @Test
+    public void removeAndReplaceUpdatePostings() {
+        add("1", "java", "alpha beta");
+        add("2", "java", "alpha gamma");
+
+        index.remove("1");
+        assertEquals(Arrays.asList("2"), ids(index.search("alpha ", 10)));
+        assertTrue(index.search("beta ", 10).isEmpty());
+
+        add("2", "java", "delta");
+        assertTrue(index.search("alpha ", 10).isEmpty());
+        assertEquals(Arrays.asList("2"), ids(index.search("delta ", 10)));
+        assertEquals(1, index.size());
+    }
+
+    private void add(String id, String label, String content) {
+        BookmarkItem item = new BookmarkItem();
+        item.setId(id);
+        item.setLabel(label);
+        index.add(item, content);
+    }
+
+    private static String filler(int words) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            builder.append("word").append(i).append(' ');
+        }
+        return builder.toString();
+    }
+
+    private static List<String> ids(List<BookmarkItem> items) {
+        List<String> ids = new ArrayList<>();
+        for (BookmarkItem item : items) {
+            ids.add(item.getId());
+        }
+        return ids;
+    }
+
+    private static List<String> sorted(List<String> ids) {
+        List<String> copy = new ArrayList<>(ids);
+        copy.sort(null);
+        return copy;
+    }
+}
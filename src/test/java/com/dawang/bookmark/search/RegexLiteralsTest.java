@@ -0,0 +1,80 @@
+package com.dawang.bookmark.search;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RegexLiteralsTest {
+
+    @Test
+    public void plainTextIsOneLiteral() {
+        assertEquals(Collections.singletonList("connection refused"), RegexLiterals.extract("connection refused"));
+    }
+
+    @Test
+    public void wildcardsAndAnchorsSplitLiterals() {
+        assertEquals(Arrays.asList("foo", "bar"), RegexLiterals.extract("^foo.*bar$"));
+        assertEquals(Arrays.asList("error"), RegexLiterals.extract("\\d+error"));
+        assertEquals(Arrays.asList("def"), RegexLiterals.extract("[abc]def"));
+        assertEquals(Arrays.asList("id", "end"), RegexLiterals.extract("id[^]\\]x]end"));
+    }
+
+    @Test
+    public void optionalCharactersAreDropped() {
+        assertEquals(Arrays.asList("colo", "r"), RegexLiterals.extract("colou?r"));
+        assertEquals(Arrays.asList("a", "c"), RegexLiterals.extract("ab{0,2}c"));
+        assertEquals(Arrays.asList("ab", "c"), RegexLiterals.extract("ab{2}c"));
+        assertEquals(Arrays.asList("x", "yz"), RegexLiterals.extract("x(abc)?yz"));
+    }
+
+    @Test
+    public void escapesAndQuotingAreLiteral() {
+        assertEquals(Arrays.asList("foo.bar"), RegexLiterals.extract("foo\\.bar"));
+        assertEquals(Arrays.asList("a.b*c"), RegexLiterals.extract("\\Qa.b*c\\E"));
+    }
+
+    @Test
+    public void escapesWithArgumentsAreSkippedWhole() {
+        assertEquals(Arrays.asList("BC"), RegexLiterals.extract("\\x41BC"));
+        assertEquals(Arrays.asList("BC"), RegexLiterals.extract("\\x{41}BC"));
+        assertEquals(Arrays.asList("BCD"), RegexLiterals.extract("\\u0041BCD"));
+        assertEquals(Arrays.asList("BC"), RegexLiterals.extract("\\0101BC"));
+        assertEquals(Arrays.asList("7BC"), RegexLiterals.extract("\\0777BC"));
+        assertEquals(Arrays.asList("BC"), RegexLiterals.extract("\\cABC"));
+        assertEquals(Arrays.asList("(a)", "BC"), RegexLiterals.extract("(?<n>a)\\(a\\)\\k<n>BC"));
+        assertEquals(Arrays.asList("BC"), RegexLiterals.extract("\\p{Lu}BC"));
+        assertEquals(Arrays.asList("BC"), RegexLiterals.extract("\\PLBC"));
+        assertEquals(Arrays.asList("x", "BC"), RegexLiterals.extract("x[\\x{5D}]BC"));
+    }
+
+    @Test
+    public void alternationAndCommentModeGiveUp() {
+        assertTrue(RegexLiterals.extract("foo|bar").isEmpty());
+        assertTrue(RegexLiterals.extract("(?x) foo # comment").isEmpty());
+    }
+
+    @Test
+    public void everyMatchContainsEveryLiteral() {
+        String[] regexes = {"colou?r", "ab{0,2}c", "x(abc)?yz", "^foo.*bar$", "\\d+error", "foo\\.bar",
+                "\\x41BC", "\\x{41}BC", "\\u0041BCD", "\\0101BC", "\\cABC", "\\p{Lu}BC", "(A)\\1BC"};
+        String[] inputs = {"color", "colour", "ac", "abbc", "xyz", "xabcyz", "foo and bar", "42error", "foo.bar",
+                "ABCD", "\u0001BC", "AABC"};
+        for (String regex : regexes) {
+            List<String> literals = RegexLiterals.extract(regex);
+            Pattern pattern = Pattern.compile(regex);
+            for (String input : inputs) {
+                if (pattern.matcher(input).find()) {
+                    for (String literal : literals) {
+                        assertTrue(regex + " matched " + input + " without " + literal, input.contains(literal));
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.dawang.bookmark.search;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TokenizerTest {
+
+    @Test
+    public void wordsAreLowercased() {
+        assertEquals(Arrays.asList("hello", "world"), tokens("Hello, WORLD!"));
+    }
+
+    @Test
+    public void camelCaseAndUnderscoreWordsAlsoEmitParts() {
+        assertEquals(Arrays.asList("nullpointerexception", "null", "pointer", "exception"),
+                tokens("NullPointerException"));
+        assertEquals(Arrays.asList("max_retry_count", "max", "retry", "count"), tokens("MAX_RETRY_COUNT"));
+        assertEquals(Arrays.asList("httpserver", "http", "server"), tokens("HTTPServer"));
+    }
+
+    @Test
+    public void shortPartsAreDropped() {
+        // "a" 和 "2" 不足两个字符，不单独成词
+        assertEquals(Arrays.asList("utf8decoder", "utf", "decoder"), tokens("utf8Decoder"));
+        assertEquals(Arrays.asList("getaname", "get", "name"), tokens("getAName"));
+    }
+
+    @Test
+    public void cjkRunsBecomeBigrams() {
+        assertEquals(Arrays.asList("日志", "志文", "文件"), tokens("日志文件"));
+    }
+
+    @Test
+    public void singleCjkCharacterIsAUnigram() {
+        assertEquals(Arrays.asList("日"), tokens("日"));
+        assertEquals(Arrays.asList("error", "日", "log"), tokens("error 日 log"));
+    }
+
+    @Test
+    public void mixedScriptsSplitAtBoundaries() {
+        List<String> tokens = tokens("读取config文件");
+        assertEquals(Arrays.asList("读取", "config", "文件"), tokens);
+    }
+
+    @Test
+    public void nullAndBlankProduceNothing() {
+        assertTrue(tokens(null).isEmpty());
+        assertTrue(tokens("  \n\t ").isEmpty());
+    }
+
+    private static List<String> tokens(String text) {
+        List<String> tokens = new ArrayList<>();
+        Tokenizer.tokenize(text, tokens::add);
+        return tokens;
+    }
+}
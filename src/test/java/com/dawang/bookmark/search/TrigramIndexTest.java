@@ -0,0 +1,122 @@
+package com.dawang.bookmark.search;
+
+import com.dawang.bookmark.model.BookmarkItem;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TrigramIndexTest {
+
+    private TrigramIndex index;
+
+    @Before
+    public void setUp() {
+        index = new TrigramIndex();
+    }
+
+    @Test
+    public void trigramsAreDistinctSortedAndLowercase() {
+        long[] upper = TrigramIndex.trigrams("ABCABC");
+        long[] lower = TrigramIndex.trigrams("abcabc");
+
+        assertArrayEquals(lower, upper);
+        // abc, bca, cab
+        assertEquals(3, lower.length);
+        for (int i = 1; i < lower.length; i++) {
+            assertTrue(lower[i - 1] < lower[i]);
+        }
+        assertEquals(0, TrigramIndex.trigrams("ab").length);
+    }
+
+    @Test
+    public void candidatesContainAllLiteralTrigrams() {
+        add("1", "h1", "java.lang.NullPointerException at Foo.bar");
+        add("2", "h2", "IllegalStateException: not ready");
+        add("3", "h3", "nothing relevant here");
+
+        assertEquals(Arrays.asList("h1"), hashes(index.candidates(Collections.singletonList("pointer"))));
+        assertEquals(Arrays.asList("h1", "h2"), hashes(index.candidates(Collections.singletonList("exception"))));
+        assertEquals(Arrays.asList("h2"),
+                hashes(index.candidates(Arrays.asList("exception", "ready"))));
+        assertTrue(index.candidates(Collections.singletonList("missing")).isEmpty());
+    }
+
+    @Test
+    public void shortLiteralsReturnEveryBody() {
+        add("1", "h1", "alpha");
+        add("2", "h2", "beta");
+
+        assertEquals(2, index.candidates(Collections.singletonList("ab")).size());
+        assertEquals(2, index.candidates(Collections.emptyList()).size());
+    }
+
+    @Test
+    public void identicalBodiesAreIndexedOnce() {
+        add("1", "same", "shared content body");
+        add("2", "same", null);
+
+        assertEquals(1, index.bodyCount());
+        List<TrigramIndex.Candidate> candidates = index.candidates(Collections.singletonList("shared"));
+        assertEquals(1, candidates.size());
+        assertEquals(2, candidates.get(0).items.size());
+
+        index.remove("1");
+        assertEquals(1, index.bodyCount());
+        index.remove("2");
+        assertEquals(0, index.bodyCount());
+        assertTrue(index.candidates(Collections.singletonList("shared")).isEmpty());
+    }
+
+    @Test
+    public void removedBodiesArePurgedFromPostings() {
+        StringBuilder large = new StringBuilder();
+        for (int i = 0; i < 200_000; i++) {
+            large.append("line ").append(i).append('\n');
+        }
+        for (int i = 0; i < 8; i++) {
+            add("item" + i, "h" + i, large + "unique" + i);
+        }
+        add("keep", "keep", "unique keep");
+
+        for (int i = 0; i < 8; i++) {
+            index.remove("item" + i);
+        }
+
+        assertEquals(1, index.bodyCount());
+        assertEquals("unique keep".length(), index.indexedChars());
+        assertEquals(TrigramIndex.trigrams("unique keep").length, index.trigramCount());
+        assertEquals(Arrays.asList("keep"), hashes(index.candidates(Collections.singletonList("unique"))));
+    }
+
+    @Test
+    public void changingTheBodyMovesTheItem() {
+        add("1", "old", "first version");
+        add("1", "new", "second version");
+
+        assertEquals(1, index.bodyCount());
+        assertTrue(index.candidates(Collections.singletonList("first")).isEmpty());
+        assertEquals(Arrays.asList("new"), hashes(index.candidates(Collections.singletonList("second"))));
+    }
+
+    private void add(String id, String hash, String content) {
+        BookmarkItem item = new BookmarkItem();
+        item.setId(id);
+        index.add(TrigramIndex.prepare(item, hash, content));
+    }
+
+    private static List<String> hashes(List<TrigramIndex.Candidate> candidates) {
+        List<String> hashes = new ArrayList<>();
+        for (TrigramIndex.Candidate candidate : candidates) {
+            hashes.add(candidate.hash);
+        }
+        return hashes;
+    }
+}
@@ -0,0 +1,161 @@
+package com.dawang.bookmark.storage;
+
+import com.dawang.bookmark.model.BookmarkItem;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class BinaryStateCodecTest {
+
+    @Test
+    public void roundTripKeepsAllFields() throws IOException {
+        BookmarkItem item = new BookmarkItem();
+        item.setId("id-1");
+        item.setLabel("标签 🔖");
+        item.setNote("备注\n第二行");
+        item.setPreview("预览");
+        item.setContentRef(BlobStore.fingerprint("int a = 1;"));
+        item.setTimestamp(1234567890123L);
+        item.setFilePath("/项目/src/A.java");
+        item.setStartOffset(12);
+        item.setEndOffset(22);
+        item.setSourceType("EDITOR");
+        item.setSourceName("A.java");
+
+        BookmarkItem read = roundTrip(Collections.singletonList(item)).get(0);
+        assertEquals("id-1", read.getId());
+        assertEquals("标签 🔖", read.getLabel());
+        assertEquals("备注\n第二行", read.getNote());
+        assertEquals("预览", read.getPreview());
+        assertEquals(item.getContentRef(), read.getContentRef());
+        assertEquals(1234567890123L, read.getTimestamp());
+        assertEquals("/项目/src/A.java", read.getFilePath());
+        assertEquals(12, read.getStartOffset());
+        assertEquals(22, read.getEndOffset());
+        assertEquals("EDITOR", read.getSourceType());
+        assertEquals("A.java", read.getSourceName());
+    }
+
+    @Test
+    public void inlineContentWithoutRefRoundTrips() throws IOException {
+        // 旧版未迁移到 BlobStore 的收藏，正文内联保存
+        BookmarkItem item = item("1", "a", null);
+        item.setInlineContent("内联正文");
+
+        BookmarkItem read = roundTrip(Collections.singletonList(item)).get(0);
+        assertEquals("内联正文", read.getInlineContent());
+        assertNull(read.getContentRef());
+    }
+
+    @Test
+    public void nullFieldsStayNull() throws IOException {
+        BookmarkItem item = new BookmarkItem();
+        item.setId("id-1");
+
+        BookmarkItem read = roundTrip(Collections.singletonList(item)).get(0);
+        assertEquals("id-1", read.getId());
+        assertNull(read.getLabel());
+        assertNull(read.getNote());
+        assertNull(read.getPreview());
+        assertNull(read.getInlineContent());
+        assertNull(read.getContentRef());
+        assertNull(read.getFilePath());
+        assertNull(read.getSourceType());
+        assertNull(read.getSourceName());
+    }
+
+    @Test
+    public void contentRefThatIsNotLowercaseSha256IsKeptVerbatim() throws IOException {
+        String upper = BlobStore.fingerprint("x").toUpperCase();
+        List<BookmarkItem> items = Arrays.asList(item("1", "a", "legacy-ref"), item("2", "a", upper));
+
+        List<BookmarkItem> read = roundTrip(items);
+        assertEquals("legacy-ref", read.get(0).getContentRef());
+        assertEquals(upper, read.get(1).getContentRef());
+    }
+
+    @Test
+    public void repeatedValuesShareOneInstance() throws IOException {
+        List<BookmarkItem> items = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            BookmarkItem item = item(String.valueOf(i), "同一个标签", null);
+            item.setFilePath("/src/A.java");
+            items.add(item);
+        }
+
+        List<BookmarkItem> read = roundTrip(items);
+        assertSame(read.get(0).getLabel(), read.get(2).getLabel());
+        assertSame(read.get(0).getFilePath(), read.get(1).getFilePath());
+    }
+
+    @Test
+    public void emptyListRoundTrips() throws IOException {
+        assertTrue(roundTrip(Collections.emptyList()).isEmpty());
+    }
+
+    @Test
+    public void manyItemsAreDecodedInOrder() throws IOException {
+        // 超过两个并行块，走并行解码
+        List<BookmarkItem> items = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            BookmarkItem item = item("id-" + i, "label-" + (i % 7), BlobStore.fingerprint(String.valueOf(i)));
+            item.setStartOffset(i);
+            items.add(item);
+        }
+
+        List<BookmarkItem> read = roundTrip(items);
+        assertEquals(items.size(), read.size());
+        for (int i = 0; i < items.size(); i++) {
+            assertEquals("id-" + i, read.get(i).getId());
+            assertEquals("label-" + (i % 7), read.get(i).getLabel());
+            assertEquals(items.get(i).getContentRef(), read.get(i).getContentRef());
+            assertEquals(i, read.get(i).getStartOffset());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void corruptedBytesAreRejected() throws IOException {
+        byte[] bytes = encode(Collections.singletonList(item("1", "a", null)));
+        bytes[bytes.length / 2] ^= 0x55;
+        BinaryStateCodec.read(bytes);
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedBytesAreRejected() throws IOException {
+        byte[] bytes = encode(Collections.singletonList(item("1", "a", null)));
+        BinaryStateCodec.read(Arrays.copyOf(bytes, bytes.length - 5));
+    }
+
+    @Test(expected = IOException.class)
+    public void tooShortInputIsRejected() throws IOException {
+        BinaryStateCodec.read(new byte[8]);
+    }
+
+    private static BookmarkItem item(String id, String label, String contentRef) {
+        BookmarkItem item = new BookmarkItem();
+        item.setId(id);
+        item.setLabel(label);
+        item.setContentRef(contentRef);
+        return item;
+    }
+
+    private static List<BookmarkItem> roundTrip(List<BookmarkItem> items) throws IOException {
+        return BinaryStateCodec.read(encode(items));
+    }
+
+    private static byte[] encode(List<BookmarkItem> items) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryStateCodec.write(items, out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,175 @@
+package com.dawang.bookmark.storage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BlobStoreTest {
+
+    private static final int THRESHOLD = 1024;
+
+    private Path root;
+    private BlobStore store;
+
+    @Before
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("blob-store-test");
+        store = new BlobStore(root, THRESHOLD, 6);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void smallContentIsStoredUncompressed() throws IOException {
+        String content = "hello 世界";
+        String hash = store.put(content);
+
+        assertEquals(BlobStore.fingerprint(content), hash);
+        assertTrue(Files.exists(store.pathOf(hash)));
+        assertEquals(content, store.get(hash));
+        assertEquals(content.getBytes(StandardCharsets.UTF_8).length, store.rawSize(hash));
+        assertEquals(store.rawSize(hash), store.storedSize(hash));
+    }
+
+    @Test
+    public void largeContentRoundTripsThroughCompression() throws IOException {
+        String content = repeat("public void method() { return; } // 注释\n", 200);
+        String hash = store.put(content);
+
+        assertFalse(Files.exists(store.pathOf(hash)));
+        assertTrue(Files.exists(store.pathOf(hash).resolveSibling(hash + ".z")));
+        assertEquals(content, store.get(hash));
+        assertArrayEquals(content.getBytes(StandardCharsets.UTF_8), store.getBytes(hash));
+        assertEquals(content.getBytes(StandardCharsets.UTF_8).length, store.rawSize(hash));
+        assertTrue(store.storedSize(hash) < store.rawSize(hash));
+        assertEquals(content, readAll(store.openReader(hash)));
+    }
+
+    @Test
+    public void streamedPutMatchesStringPut() throws IOException {
+        String small = "prefix|small body|suffix";
+        String large = "prefix|" + repeat("streamed 内容 line\n", 500) + "|suffix";
+        for (String text : new String[]{small, large}) {
+            int start = text.indexOf('|') + 1;
+            int end = text.lastIndexOf('|');
+            String hash = store.put(text, start, end, () -> false);
+
+            String body = text.substring(start, end);
+            assertEquals(BlobStore.fingerprint(body), hash);
+            assertEquals(body, store.get(hash));
+            assertEquals(body.getBytes(StandardCharsets.UTF_8).length, store.rawSize(hash));
+        }
+    }
+
+    @Test
+    public void incompressibleContentIsStoredRawByBothPaths() throws IOException {
+        // 阈值很低时，短的正文压缩后（加上文件头）反而更大
+        BlobStore small = new BlobStore(root.resolve("small"), 16, 6);
+        String first = "abcdefghijklmnopqrstuvwxyz0123456789";
+        String second = "ABCDEFGHIJKLMNOPQRSTUVWXYZ-+*/=!?#";
+
+        String streamed = small.put("[" + first + "]", 1, first.length() + 1, () -> false);
+        String whole = small.put(second);
+        for (String hash : new String[]{streamed, whole}) {
+            assertTrue(Files.exists(small.pathOf(hash)));
+            assertFalse(Files.exists(small.pathOf(hash).resolveSibling(hash + ".z")));
+            assertEquals(small.rawSize(hash), small.storedSize(hash));
+        }
+        assertEquals(BlobStore.fingerprint(first), streamed);
+        assertEquals(first, small.get(streamed));
+    }
+
+    @Test
+    public void sameContentIsStoredOnce() throws IOException {
+        String content = repeat("duplicate ", 300);
+        String first = store.put(content);
+        String second = store.put(content, 0, content.length(), () -> false);
+
+        assertEquals(first, second);
+        try (Stream<Path> files = Files.walk(root)) {
+            assertEquals(1, files.filter(Files::isRegularFile).count());
+        }
+    }
+
+    @Test
+    public void deleteRemovesBothForms() throws IOException {
+        String small = store.put("small");
+        String large = store.put(repeat("large ", 500));
+
+        store.delete(small);
+        store.delete(large);
+
+        assertFalse(store.exists(small));
+        assertFalse(store.exists(large));
+        assertNull(store.get(small));
+        assertNull(store.openReader(large));
+    }
+
+    @Test
+    public void invalidHashesAreRejected() {
+        assertFalse(BlobStore.isValidHash(null));
+        assertFalse(BlobStore.isValidHash("../../etc/passwd"));
+        assertFalse(BlobStore.isValidHash(repeat("A", 64)));
+        assertTrue(BlobStore.isValidHash(repeat("0f", 32)));
+        assertFalse(store.exists("../x"));
+    }
+
+    @Test(expected = IOException.class)
+    public void readingAnInvalidHashThrows() throws IOException {
+        store.get("../" + repeat("0", 61));
+    }
+
+    @Test
+    public void corruptedCompressedDataIsReported() {
+        byte[] compressed = BlobStore.compress(repeat("x", 4096).getBytes(StandardCharsets.UTF_8), 6);
+        byte[] truncated = Arrays.copyOf(compressed, compressed.length / 2);
+        try {
+            BlobStore.decompress(ByteBuffer.wrap(truncated));
+            fail("truncated data was accepted");
+        } catch (IOException expected) {
+            // 截断的数据应被识别
+        }
+    }
+
+    private static String repeat(String s, int count) {
+        StringBuilder builder = new StringBuilder(s.length() * count);
+        for (int i = 0; i < count; i++) {
+            builder.append(s);
+        }
+        return builder.toString();
+    }
+
+    private static String readAll(Reader reader) throws IOException {
+        try (Reader in = reader) {
+            StringBuilder builder = new StringBuilder();
+            char[] buffer = new char[4096];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                builder.append(buffer, 0, n);
+            }
+            return builder.toString();
+        }
+    }
+}
@@ -0,0 +1,335 @@
+package com.dawang.bookmark.storage;
+
+import com.dawang.bookmark.model.BookmarkItem;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class StateJournalTest {
+
+    private Path dir;
+    private Path file;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("state-journal-test");
+        file = dir.resolve("journal.log");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void recordsAreReplayedInOrder() throws IOException {
+        StateJournal journal = open(new Collector());
+        journal.put(item("1", "first"));
+        journal.put(item("2", "second"));
+        journal.put(item("1", "renamed"));
+        journal.remove("2");
+        journal.put(item("3", "third"));
+        journal.close();
+
+        Collector replayed = new Collector();
+        open(replayed).close();
+        assertEquals(Arrays.asList("1", "3"), replayed.ids());
+        assertEquals("renamed", replayed.items.get("1").getLabel());
+    }
+
+    @Test
+    public void clearDropsEarlierRecords() throws IOException {
+        StateJournal journal = open(new Collector());
+        journal.put(item("1", "a"));
+        journal.clear();
+        journal.put(item("2", "b"));
+        journal.close();
+
+        Collector replayed = new Collector();
+        StateJournal.read(file, replayed);
+        assertEquals(Arrays.asList("2"), replayed.ids());
+    }
+
+    @Test
+    public void recordsReachTheFileOnlyOnFlush() throws IOException {
+        StateJournal journal = open(new Collector());
+        long empty = Files.size(file);
+        journal.put(item("1", "a"));
+        assertEquals(empty, Files.size(file));
+        assertTrue(journal.size() > empty);
+
+        long written = journal.flush();
+        assertEquals(empty + written, Files.size(file));
+        assertEquals(0, journal.flush());
+        journal.close();
+    }
+
+    @Test
+    public void tornTailIsTruncatedOnOpen() throws IOException {
+        StateJournal journal = open(new Collector());
+        journal.put(item("1", "a"));
+        journal.put(item("2", "b"));
+        journal.close();
+        long valid = Files.size(file);
+        // 崩溃时只写了一半的记录：长度声明 100 字节，实际只有 3 字节
+        Files.write(file, new byte[]{0, 0, 0, 100, 1, 2, 3, 4, 9, 9, 9}, StandardOpenOption.APPEND);
+
+        Collector replayed = new Collector();
+        journal = open(replayed);
+        assertEquals(Arrays.asList("1", "2"), replayed.ids());
+        assertEquals(valid, Files.size(file));
+
+        // 截断后追加的记录能正常读出
+        journal.put(item("3", "c"));
+        journal.close();
+        Collector again = new Collector();
+        StateJournal.read(file, again);
+        assertEquals(Arrays.asList("1", "2", "3"), again.ids());
+    }
+
+    @Test
+    public void corruptedRecordIsSetAsideInsteadOfTruncated() throws IOException {
+        StateJournal journal = open(new Collector());
+        journal.put(item("1", "a"));
+        journal.flush();
+        long firstEnd = Files.size(file);
+        journal.put(item("2", "b"));
+        journal.put(item("3", "c"));
+        journal.close();
+        // 破坏第二条记录的载荷，CRC 不再匹配；之后还有完整的第三条
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[(int) firstEnd + 12] ^= 0x55;
+        Files.write(file, bytes);
+
+        Collector replayed = new Collector();
+        journal = open(replayed);
+        assertEquals(Arrays.asList("1"), replayed.ids());
+        assertTrue(journal.hasSetAside());
+        journal.close();
+        // 原文件原样保留，当前日志重新开始
+        assertArrayEquals(bytes, Files.readAllBytes(setAsideFile("journal.log.corrupted-")));
+        Collector current = new Collector();
+        StateJournal.read(file, current);
+        assertTrue(current.items.isEmpty());
+    }
+
+    @Test
+    public void corruptedLastRecordIsTruncated() throws IOException {
+        StateJournal journal = open(new Collector());
+        journal.put(item("1", "a"));
+        journal.flush();
+        long firstEnd = Files.size(file);
+        journal.put(item("2", "b"));
+        journal.close();
+        // 最后一条的内容没有落盘，视为不完整尾部
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length - 1] ^= 0x55;
+        Files.write(file, bytes);
+
+        Collector replayed = new Collector();
+        journal = open(replayed);
+        assertEquals(Arrays.asList("1"), replayed.ids());
+        assertFalse(journal.hasSetAside());
+        journal.close();
+        assertEquals(firstEnd, Files.size(file));
+    }
+
+    @Test
+    public void unknownHeaderIsSetAside() throws IOException {
+        byte[] foreign = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12};
+        Files.write(file, foreign);
+
+        Collector replayed = new Collector();
+        StateJournal journal = open(replayed);
+        assertTrue(replayed.items.isEmpty());
+        assertTrue(journal.hasSetAside());
+        journal.put(item("1", "a"));
+        journal.close();
+
+        assertArrayEquals(foreign, Files.readAllBytes(setAsideFile("journal.log.corrupted-")));
+        Collector again = new Collector();
+        StateJournal.read(file, again);
+        assertEquals(Arrays.asList("1"), again.ids());
+    }
+
+    @Test
+    public void corruptedRotatedJournalIsSetAside() throws IOException {
+        StateJournal journal = open(new Collector());
+        journal.put(item("1", "a"));
+        journal.put(item("2", "b"));
+        journal.rotate();
+        journal.close();
+        Path rotated = dir.resolve("journal.log.old");
+        byte[] bytes = Files.readAllBytes(rotated);
+        bytes[12] ^= 0x55;
+        Files.write(rotated, bytes);
+
+        Collector replayed = new Collector();
+        journal = open(replayed);
+        assertTrue(replayed.items.isEmpty());
+        assertFalse(journal.hasRotated());
+        assertTrue(journal.hasSetAside());
+        journal.close();
+        assertArrayEquals(bytes, Files.readAllBytes(setAsideFile("journal.log.old.corrupted-")));
+    }
+
+    @Test
+    public void rotatedJournalIsReplayedBeforeTheCurrentOne() throws IOException {
+        StateJournal journal = open(new Collector());
+        journal.put(item("1", "old"));
+        journal.put(item("2", "kept"));
+        journal.rotate();
+        assertTrue(journal.hasRotated());
+        journal.put(item("1", "new"));
+        journal.remove("2");
+        journal.close();
+
+        // 压缩没有完成（快照未写入）时重启：.old 先于当前日志重放
+        Collector replayed = new Collector();
+        journal = open(replayed);
+        assertTrue(journal.hasRotated());
+        assertEquals(Arrays.asList("1"), replayed.ids());
+        assertEquals("new", replayed.items.get("1").getLabel());
+
+        journal.completeCompaction(0);
+        assertFalse(journal.hasRotated());
+        journal.close();
+        Collector current = new Collector();
+        StateJournal.read(file, current);
+        assertEquals("new", current.items.get("1").getLabel());
+    }
+
+    @Test
+    public void secondRotationAppendsToTheExistingOld() throws IOException {
+        StateJournal journal = open(new Collector());
+        journal.put(item("1", "a"));
+        journal.rotate();
+        journal.put(item("2", "b"));
+        journal.rotate();
+        journal.put(item("3", "c"));
+        journal.close();
+
+        Collector replayed = new Collector();
+        StateJournal.read(file, replayed);
+        assertEquals(Arrays.asList("1", "2", "3"), replayed.ids());
+    }
+
+    @Test
+    public void readDoesNotTruncate() throws IOException {
+        StateJournal journal = open(new Collector());
+        journal.put(item("1", "a"));
+        journal.close();
+        Files.write(file, new byte[]{0, 0, 0, 100, 1, 2}, StandardOpenOption.APPEND);
+        long torn = Files.size(file);
+
+        Collector replayed = new Collector();
+        StateJournal.read(file, replayed);
+        assertEquals(Arrays.asList("1"), replayed.ids());
+        assertEquals(torn, Files.size(file));
+
+        Collector missing = new Collector();
+        StateJournal.read(dir.resolve("missing.log"), missing);
+        assertTrue(missing.items.isEmpty());
+    }
+
+    @Test
+    public void allFieldsRoundTrip() throws IOException {
+        BookmarkItem item = item("1", "标签");
+        item.setInlineContent("内联正文\n第二行");
+        item.setPreview("预览");
+        item.setNote(null);
+        item.setTimestamp(1234567890123L);
+        item.setFilePath("/tmp/a.java");
+        item.setStartOffset(10);
+        item.setEndOffset(42);
+        item.setSourceType("EDITOR");
+        item.setSourceName("main");
+        StateJournal journal = open(new Collector());
+        journal.put(item);
+        journal.close();
+
+        Collector replayed = new Collector();
+        StateJournal.read(file, replayed);
+        BookmarkItem read = replayed.items.get("1");
+        assertEquals(item.getInlineContent(), read.getInlineContent());
+        assertEquals(item.getContentRef(), read.getContentRef());
+        assertEquals("预览", read.getPreview());
+        assertEquals("标签", read.getLabel());
+        assertEquals(null, read.getNote());
+        assertEquals(1234567890123L, read.getTimestamp());
+        assertEquals("/tmp/a.java", read.getFilePath());
+        assertEquals(10, read.getStartOffset());
+        assertEquals(42, read.getEndOffset());
+        assertEquals("EDITOR", read.getSourceType());
+        assertEquals("main", read.getSourceName());
+    }
+
+    private Path setAsideFile(String prefix) throws IOException {
+        try (Stream<Path> paths = Files.list(dir)) {
+            return paths.filter(path -> path.getFileName().toString().startsWith(prefix)).findFirst()
+                    .orElseThrow(() -> new AssertionError("no " + prefix + "* file"));
+        }
+    }
+
+    private StateJournal open(Collector collector) throws IOException {
+        StateJournal journal = new StateJournal(file);
+        journal.open(collector);
+        return journal;
+    }
+
+    private static BookmarkItem item(String id, String label) {
+        BookmarkItem item = new BookmarkItem();
+        item.setId(id);
+        item.setLabel(label);
+        item.setContentRef(BlobStore.fingerprint(id));
+        return item;
+    }
+
+    /**
+     * 按 ID 覆盖、删除、清空，和 StateShard 的重放一致
+     */
+    private static class Collector implements StateJournal.Replayer {
+        final Map<String, BookmarkItem> items = new LinkedHashMap<>();
+
+        @Override
+        public void put(BookmarkItem item) {
+            items.remove(item.getId());
+            items.put(item.getId(), item);
+        }
+
+        @Override
+        public void remove(String id) {
+            items.remove(id);
+        }
+
+        @Override
+        public void clear() {
+            items.clear();
+        }
+
+        List<String> ids() {
+            List<String> ids = new ArrayList<>(items.keySet());
+            ids.sort(null);
+            return ids;
+        }
+    }
+}